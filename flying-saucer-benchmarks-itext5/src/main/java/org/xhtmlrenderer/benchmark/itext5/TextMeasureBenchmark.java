@@ -0,0 +1,91 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark.itext5;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.benchmark.Corpus;
+import org.xhtmlrenderer.pdf.ITextFSFont;
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+import org.xhtmlrenderer.pdf.ITextTextRenderer;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.BaseFont;
+
+/**
+ * The iText 5 counterpart of
+ * {@link org.xhtmlrenderer.benchmark.TextMeasureBenchmark}: measures the
+ * width of the corpus words through {@link ITextTextRenderer} against
+ * asking the font for each word with
+ * {@link BaseFont#getWidthPoint(String, float)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class TextMeasureBenchmark {
+    @Param({ "Helvetica/Cp1252", "Times-Roman/Cp1250", "Courier/Cp1257" })
+    public String font;
+
+    private String[] _words;
+    private BaseFont _baseFont;
+    private ITextFSFont _fsFont;
+    private ITextTextRenderer _renderer;
+
+    @Setup
+    public void setUp() throws DocumentException, IOException {
+        _words = Corpus.getWords();
+        int slash = font.indexOf('/');
+        _baseFont = BaseFont.createFont(
+                font.substring(0, slash), font.substring(slash + 1), false);
+        _fsFont = new ITextFSFont(new FontDescription(_baseFont), 12f);
+        _renderer = new ITextTextRenderer();
+    }
+
+    @Benchmark
+    public float fontWidthPoint() {
+        float result = 0;
+        for (int i = 0; i < _words.length; i++) {
+            result += _baseFont.getWidthPoint(_words[i], 12f);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public float rendererWidth() {
+        float result = 0;
+        for (int i = 0; i < _words.length; i++) {
+            result += _renderer.getLogicalGlyphsWidth(null, _fsFont, _words[i]);
+        }
+        return result;
+    }
+}
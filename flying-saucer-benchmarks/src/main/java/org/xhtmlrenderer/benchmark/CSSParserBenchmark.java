@@ -0,0 +1,98 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+
+/**
+ * Measures {@link CSSParser} on the user agent stylesheet and on the
+ * stylesheet embedded in the corpus documents.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CSSParserBenchmark {
+    private static final String USER_AGENT_STYLESHEET = "/resources/css/XhtmlNamespaceHandler.css";
+
+    @Param({ "user-agent", "corpus" })
+    public String stylesheet;
+
+    private String _text;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("user-agent".equals(stylesheet)) {
+            _text = readResource(USER_AGENT_STYLESHEET);
+        } else {
+            _text = Corpus.getStylesheet();
+        }
+    }
+
+    @Benchmark
+    public Stylesheet parse() throws IOException {
+        CSSParser parser = new CSSParser(new CSSErrorHandler() {
+            public void error(String uri, String message) {
+                throw new IllegalStateException(uri + ": " + message);
+            }
+        });
+        return parser.parseStylesheet(stylesheet, StylesheetInfo.AUTHOR, new StringReader(_text));
+    }
+
+    private static String readResource(String name) throws IOException {
+        InputStream in = CSSParserBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing resource " + name);
+        }
+        try {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            StringBuffer result = new StringBuffer();
+            char[] buf = new char[4096];
+            int i;
+            while ((i = reader.read(buf)) != -1) {
+                result.append(buf, 0, i);
+            }
+            return result.toString();
+        } finally {
+            in.close();
+        }
+    }
+}
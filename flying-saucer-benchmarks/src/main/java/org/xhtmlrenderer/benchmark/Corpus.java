@@ -0,0 +1,316 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.resource.XMLDocumentResource;
+
+/**
+ * Generates the documents the benchmarks run against. Documents are built
+ * from a fixed seed so every run, on every machine, measures exactly the
+ * same input.
+ * <ul>
+ * <li><b>small</b> - a one page letter style document</li>
+ * <li><b>large</b> - about a hundred pages of mixed headings, paragraphs,
+ * lists and tables</li>
+ * <li><b>table</b> - dozens of large tables with headers and spanning
+ * cells</li>
+ * <li><b>text</b> - long runs of justified paragraphs with little
+ * inline markup</li>
+ * </ul>
+ */
+public class Corpus {
+    public static final String SMALL = "small";
+    public static final String LARGE = "large";
+    public static final String TABLE = "table";
+    public static final String TEXT = "text";
+
+    public static final String BASE_URL = "http://localhost/benchmark/";
+
+    private static final long SEED = 0x5a7ce2L;
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "a", "to", "in", "is", "you", "that", "it",
+        "he", "was", "for", "on", "are", "as", "with", "his", "they", "at",
+        "be", "this", "have", "from", "or", "one", "had", "by", "word", "but",
+        "not", "what", "all", "were", "we", "when", "your", "can", "said", "there",
+        "renderer", "document", "layout", "stylesheet", "cascade", "pagination",
+        "typography", "measurement", "table", "paragraph", "inline", "baseline",
+        "margin", "border", "padding", "selector", "declaration", "viewport",
+        "internationalization", "characteristically", "incomprehensible",
+    };
+
+    private Corpus() {
+    }
+
+    /**
+     * Returns the markup of the named corpus document.
+     */
+    public static String getMarkup(String name) {
+        DocumentWriter w = new DocumentWriter(new Random(SEED));
+        w.startDocument(name);
+        if (SMALL.equals(name)) {
+            w.small();
+        } else if (LARGE.equals(name)) {
+            w.large();
+        } else if (TABLE.equals(name)) {
+            w.tables();
+        } else if (TEXT.equals(name)) {
+            w.text();
+        } else {
+            throw new IllegalArgumentException("Unknown corpus document: " + name);
+        }
+        w.endDocument();
+        return w.toString();
+    }
+
+    /**
+     * Parses the named corpus document.
+     */
+    public static Document getDocument(String name) {
+        return XMLDocumentResource.load(
+                getURL(name), new StringReader(getMarkup(name))).getDocument();
+    }
+
+    public static String getURL(String name) {
+        return BASE_URL + name + ".xhtml";
+    }
+
+    /**
+     * Returns the words the corpus text is made of.
+     */
+    public static String[] getWords() {
+        return (String[]) WORDS.clone();
+    }
+
+    /**
+     * Returns the stylesheet embedded in every corpus document. It exercises
+     * type, class, id, attribute, descendant, child and sibling selectors as
+     * well as the first-child pseudo-class.
+     */
+    public static String getStylesheet() {
+        StringBuffer css = new StringBuffer();
+        css.append("@page { size: A4; margin: 2cm; @bottom-center { content: counter(page); } }\n");
+        css.append("body { font-family: serif; font-size: 11pt; line-height: 1.4; margin: 0; }\n");
+        css.append("h1 { font-size: 20pt; margin: 0 0 12pt 0; border-bottom: 2px solid #333; }\n");
+        css.append("h2 { font-size: 15pt; margin: 14pt 0 6pt 0; page-break-after: avoid; }\n");
+        css.append("p { margin: 0 0 6pt 0; text-align: justify; }\n");
+        css.append("div.section > p:first-child { text-indent: 0; font-style: italic; }\n");
+        css.append("div.section p + p { text-indent: 1.5em; }\n");
+        css.append("p.note { font-size: 9pt; color: #555; border-left: 3px solid #999; padding-left: 6pt; }\n");
+        css.append("span.keyword { font-weight: bold; }\n");
+        css.append("span.code { font-family: monospace; background-color: #eee; }\n");
+        css.append("em { font-style: italic; }\n");
+        css.append("strong { font-weight: bold; }\n");
+        css.append("a { color: #036; text-decoration: underline; }\n");
+        css.append("a[href^=\"#\"] { color: #063; }\n");
+        css.append("ul, ol { margin: 0 0 6pt 0; padding-left: 18pt; }\n");
+        css.append("li { margin: 0 0 2pt 0; }\n");
+        css.append("ul li:first-child { font-weight: bold; }\n");
+        css.append("table { border-collapse: collapse; width: 100%; margin: 6pt 0; -fs-table-paginate: paginate; }\n");
+        css.append("thead { display: table-header-group; }\n");
+        css.append("th { background-color: #ddd; font-weight: bold; text-align: left; }\n");
+        css.append("th, td { border: 1px solid #888; padding: 2pt 4pt; vertical-align: top; }\n");
+        css.append("tr.odd td { background-color: #f4f4f4; }\n");
+        css.append("td.number { text-align: right; font-family: monospace; }\n");
+        css.append("table.wide td[colspan] { text-align: center; }\n");
+        css.append("#footer { margin-top: 12pt; font-size: 8pt; }\n");
+        for (int i = 0; i < 20; i++) {
+            css.append("div.section.s").append(i).append(" h2 { color: #")
+                .append(Integer.toHexString(0x100000 + i * 0x030303)).append("; }\n");
+        }
+        return css.toString();
+    }
+
+    private static class DocumentWriter {
+        private final StringBuffer _out = new StringBuffer();
+        private final Random _random;
+
+        public DocumentWriter(Random random) {
+            _random = random;
+        }
+
+        public void startDocument(String title) {
+            _out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            _out.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n<head>\n<title>");
+            _out.append(title);
+            _out.append("</title>\n<style type=\"text/css\">\n");
+            _out.append(getStylesheet());
+            _out.append("</style>\n</head>\n<body>\n");
+        }
+
+        public void endDocument() {
+            _out.append("<div id=\"footer\">Generated benchmark document</div>\n");
+            _out.append("</body>\n</html>\n");
+        }
+
+        public void small() {
+            heading("h1", 4);
+            for (int i = 0; i < 5; i++) {
+                paragraph(40, true);
+            }
+            list(5);
+            table(6, 4, false);
+            note();
+        }
+
+        public void large() {
+            heading("h1", 6);
+            for (int i = 0; i < 60; i++) {
+                startSection(i);
+                heading("h2", 5);
+                for (int j = 0; j < 6; j++) {
+                    paragraph(60 + _random.nextInt(60), true);
+                }
+                list(3 + _random.nextInt(5));
+                if (i % 5 == 0) {
+                    table(10, 5, false);
+                }
+                if (i % 3 == 0) {
+                    note();
+                }
+                _out.append("</div>\n");
+            }
+        }
+
+        public void tables() {
+            heading("h1", 4);
+            for (int i = 0; i < 40; i++) {
+                heading("h2", 3);
+                table(30, 6, true);
+            }
+        }
+
+        public void text() {
+            heading("h1", 5);
+            for (int i = 0; i < 400; i++) {
+                paragraph(120 + _random.nextInt(80), false);
+            }
+        }
+
+        private void startSection(int i) {
+            _out.append("<div class=\"section s").append(i % 20).append("\" id=\"section").append(i).append("\">\n");
+        }
+
+        private void heading(String tag, int words) {
+            _out.append('<').append(tag).append('>');
+            words(words);
+            _out.append("</").append(tag).append(">\n");
+        }
+
+        private void paragraph(int words, boolean inline) {
+            _out.append("<p>");
+            for (int i = 0; i < words; i++) {
+                if (i > 0) {
+                    _out.append(' ');
+                }
+                int kind = inline ? _random.nextInt(20) : 19;
+                String word = word();
+                switch (kind) {
+                case 0:
+                    _out.append("<em>").append(word).append("</em>");
+                    break;
+                case 1:
+                    _out.append("<strong>").append(word).append("</strong>");
+                    break;
+                case 2:
+                    _out.append("<span class=\"keyword\">").append(word).append("</span>");
+                    break;
+                case 3:
+                    _out.append("<span class=\"code\">").append(word).append("()</span>");
+                    break;
+                case 4:
+                    _out.append("<a href=\"#section").append(_random.nextInt(60)).append("\">")
+                        .append(word).append("</a>");
+                    break;
+                default:
+                    _out.append(word);
+                }
+            }
+            _out.append(".</p>\n");
+        }
+
+        private void note() {
+            _out.append("<p class=\"note\">");
+            words(25);
+            _out.append("</p>\n");
+        }
+
+        private void list(int items) {
+            _out.append("<ul>\n");
+            for (int i = 0; i < items; i++) {
+                _out.append("<li>");
+                words(4 + _random.nextInt(10));
+                _out.append("</li>\n");
+            }
+            _out.append("</ul>\n");
+        }
+
+        private void table(int rows, int cols, boolean spans) {
+            _out.append(spans ? "<table class=\"wide\">\n" : "<table>\n");
+            _out.append("<thead><tr>");
+            for (int c = 0; c < cols; c++) {
+                _out.append("<th>");
+                words(2);
+                _out.append("</th>");
+            }
+            _out.append("</tr></thead>\n<tbody>\n");
+            for (int r = 0; r < rows; r++) {
+                _out.append(r % 2 == 1 ? "<tr class=\"odd\">" : "<tr>");
+                if (spans && r % 7 == 3) {
+                    _out.append("<td colspan=\"").append(cols).append("\">");
+                    words(8);
+                    _out.append("</td>");
+                } else {
+                    for (int c = 0; c < cols; c++) {
+                        if (c == cols - 1) {
+                            _out.append("<td class=\"number\">")
+                                .append(_random.nextInt(100000)).append("</td>");
+                        } else {
+                            _out.append("<td>");
+                            words(1 + _random.nextInt(6));
+                            _out.append("</td>");
+                        }
+                    }
+                }
+                _out.append("</tr>\n");
+            }
+            _out.append("</tbody>\n</table>\n");
+        }
+
+        private void words(int count) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    _out.append(' ');
+                }
+                _out.append(word());
+            }
+        }
+
+        private String word() {
+            return WORDS[_random.nextInt(WORDS.length)];
+        }
+
+        public String toString() {
+            return _out.toString();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.RenderingContext;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DOutputDevice;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+
+/**
+ * Sets up a {@link SharedContext} the same way
+ * {@link org.xhtmlrenderer.swing.Java2DRenderer} does, so the individual
+ * stages of continuous (non-paged) layout can be measured on their own.
+ */
+class Java2DFixture {
+    public static final int WIDTH = 1024;
+    public static final int HEIGHT = 1000;
+
+    private final SharedContext _sharedContext;
+    private final Graphics2D _graphics;
+    private Document _doc;
+
+    public Java2DFixture() {
+        _sharedContext = new SharedContext(new NaiveUserAgent());
+        _sharedContext.setFontResolver(new AWTFontResolver());
+        _sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        _sharedContext.setTextRenderer(new Java2DTextRenderer());
+        _sharedContext.setDPI(72);
+        _sharedContext.setDotsPerPixel(1);
+        _sharedContext.setPrint(false);
+        _sharedContext.setInteractive(false);
+
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        _graphics = scratch.createGraphics();
+    }
+
+    public SharedContext getSharedContext() {
+        return _sharedContext;
+    }
+
+    public void setDocument(Document doc, String url) {
+        _doc = doc;
+        _sharedContext.reset();
+        _sharedContext.setBaseURL(url);
+        _sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        _sharedContext.getCss().setDocumentContext(
+                _sharedContext, _sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+    }
+
+    /**
+     * Drops the computed styles of the current document, so the next layout
+     * has to derive them again. Cascaded styles stay with the matcher.
+     */
+    public void clearStyles() {
+        _sharedContext.reset();
+    }
+
+    public LayoutContext newLayoutContext() {
+        _sharedContext.set_TempCanvas(new Rectangle(0, 0, WIDTH, HEIGHT));
+        LayoutContext result = _sharedContext.newLayoutContextInstance();
+        result.setFontContext(new Java2DFontContext(_graphics));
+        _sharedContext.getTextRenderer().setup(result.getFontContext());
+        return result;
+    }
+
+    /**
+     * Builds the complete box tree of the current document without laying
+     * it out, returning the number of block boxes created.
+     */
+    public int buildBoxes(LayoutContext c) {
+        BlockBox root = BoxBuilder.createRootBox(c, _doc);
+        return ensureChildren(c, root);
+    }
+
+    public BlockBox layout(LayoutContext c) {
+        BlockBox root = BoxBuilder.createRootBox(c, _doc);
+        root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, WIDTH, HEIGHT)));
+        root.layout(c);
+        return root;
+    }
+
+    /**
+     * Paints one screen of a laid out document, the part starting
+     * <code>y</code> pixels down, the way a scrolled panel repaints.
+     */
+    public void paint(BlockBox root, Graphics2D g, int y) {
+        Graphics2D screen = (Graphics2D) g.create();
+        try {
+            screen.clipRect(0, 0, WIDTH, HEIGHT);
+            screen.translate(0, -y);
+
+            RenderingContext c = _sharedContext.newRenderingContextInstance();
+            c.setFontContext(new Java2DFontContext(screen));
+            c.setOutputDevice(new Java2DOutputDevice(screen));
+            _sharedContext.getTextRenderer().setup(c.getFontContext());
+
+            root.getLayer().paint(c);
+        } finally {
+            screen.dispose();
+        }
+    }
+
+    private static int ensureChildren(LayoutContext c, BlockBox box) {
+        box.ensureChildren(c);
+        int count = 1;
+        for (int i = 0; i < box.getChildCount(); i++) {
+            Box child = box.getChild(i);
+            if (child instanceof BlockBox) {
+                count += ensureChildren(c, (BlockBox) child);
+            }
+        }
+        return count;
+    }
+}
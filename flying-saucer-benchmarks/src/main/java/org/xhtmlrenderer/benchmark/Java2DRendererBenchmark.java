@@ -0,0 +1,78 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.swing.Java2DRenderer;
+
+/**
+ * Measures rendering to images: {@link Java2DRenderer} laying out and
+ * painting the first screen of a document, and {@link ITextRenderer}
+ * painting the first page of an already paginated document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class Java2DRendererBenchmark {
+    @Param({ Corpus.SMALL, Corpus.LARGE, Corpus.TABLE, Corpus.TEXT })
+    public String corpus;
+
+    private Document _doc;
+    private Java2DRenderer _renderer;
+    private ITextRenderer _pagedRenderer;
+
+    @Setup
+    public void setUp() {
+        _doc = Corpus.getDocument(corpus);
+        _renderer = new Java2DRenderer(_doc, Corpus.getURL(corpus),
+                Java2DFixture.WIDTH, Java2DFixture.HEIGHT);
+
+        _pagedRenderer = new ITextRenderer();
+        _pagedRenderer.setDocument(_doc, Corpus.getURL(corpus));
+        _pagedRenderer.layout();
+    }
+
+    @Benchmark
+    public BufferedImage renderScreen() {
+        _renderer.reset(_doc, Corpus.getURL(corpus), Java2DFixture.WIDTH, Java2DFixture.HEIGHT);
+        return _renderer.getImage();
+    }
+
+    @Benchmark
+    public BufferedImage renderPage() {
+        return _pagedRenderer.createPageImage(0, 1.0f);
+    }
+}
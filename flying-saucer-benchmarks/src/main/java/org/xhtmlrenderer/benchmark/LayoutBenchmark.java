@@ -0,0 +1,75 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.render.BlockBox;
+
+/**
+ * Measures continuous (non-paged) layout at a fixed viewport width. The
+ * <i>large</i> corpus is dominated by block layout, <i>text</i> by line
+ * breaking and inline layout and <i>table</i> by table layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+    @Param({ Corpus.SMALL, Corpus.LARGE, Corpus.TABLE, Corpus.TEXT })
+    public String corpus;
+
+    private Java2DFixture _fixture;
+
+    @Setup
+    public void setUp() {
+        _fixture = new Java2DFixture();
+        _fixture.setDocument(Corpus.getDocument(corpus), Corpus.getURL(corpus));
+    }
+
+    /**
+     * Lays the document out with the computed styles already cached, as on
+     * a relayout after a resize.
+     */
+    @Benchmark
+    public BlockBox layout() {
+        return _fixture.layout(_fixture.newLayoutContext());
+    }
+
+    /**
+     * Lays the document out from scratch, as on the first layout.
+     */
+    @Benchmark
+    public BlockBox layoutWithStyles() {
+        _fixture.clearStyles();
+        return _fixture.layout(_fixture.newLayoutContext());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xhtmlrenderer.context.StandardAttributeResolver;
+import org.xhtmlrenderer.context.StylesheetFactoryImpl;
+import org.xhtmlrenderer.css.extend.lib.DOMTreeResolver;
+import org.xhtmlrenderer.css.newmatch.Matcher;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+/**
+ * Measures selector matching and the cascade: a new {@link Matcher} is
+ * created from the already parsed stylesheets and asked for the cascaded
+ * style of every element of the document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MatcherBenchmark {
+    @Param({ Corpus.SMALL, Corpus.LARGE, Corpus.TABLE, Corpus.TEXT })
+    public String corpus;
+
+    private List _elements;
+    private List _stylesheets;
+    private StylesheetFactoryImpl _factory;
+    private StandardAttributeResolver _attributeResolver;
+
+    @Setup
+    public void setUp() {
+        Document doc = Corpus.getDocument(corpus);
+        UserAgentCallback uac = new NaiveUserAgent();
+        NamespaceHandler nsh = new XhtmlNamespaceHandler();
+        _factory = new StylesheetFactoryImpl(uac);
+        _attributeResolver = new StandardAttributeResolver(nsh, uac, new NullUserInterface());
+
+        StylesheetInfo info = new StylesheetInfo();
+        info.setUri(Corpus.getURL(corpus));
+        info.setOrigin(StylesheetInfo.AUTHOR);
+        info.setMedia("all");
+        info.setType("text/css");
+
+        _stylesheets = new ArrayList();
+        _stylesheets.add(nsh.getDefaultStylesheet(_factory).getStylesheet());
+        _stylesheets.add(_factory.parse(new StringReader(Corpus.getStylesheet()), info));
+
+        _elements = new ArrayList();
+        collectElements(doc.getDocumentElement(), _elements);
+    }
+
+    @Benchmark
+    public void cascade(Blackhole bh) {
+        Matcher matcher = new Matcher(
+                new DOMTreeResolver(),
+                _attributeResolver, _factory, _stylesheets, "print");
+        for (Iterator i = _elements.iterator(); i.hasNext(); ) {
+            bh.consume(matcher.getCascadedStyle(i.next(), false));
+        }
+    }
+
+    private static void collectElements(Element e, List result) {
+        result.add(e);
+        for (Iterator i = e.getChildNodes().iterator(); i.hasNext(); ) {
+            Node child = (Node) i.next();
+            if (child instanceof Element) {
+                collectElements((Element) child, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.extend.UserInterface;
+
+/**
+ * A user interface without a pointer or focus, as seen by batch rendering.
+ */
+class NullUserInterface implements UserInterface {
+    public boolean isHover(Element e) {
+        return false;
+    }
+
+    public boolean isActive(Element e) {
+        return false;
+    }
+
+    public boolean isFocus(Element e) {
+        return false;
+    }
+}
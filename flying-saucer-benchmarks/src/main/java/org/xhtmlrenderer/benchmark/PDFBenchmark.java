@@ -0,0 +1,101 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.Level;
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import com.lowagie.text.DocumentException;
+
+/**
+ * Measures PDF output with {@link ITextRenderer}, both on its own for an
+ * already laid out document and together with the layout that precedes it.
+ * The PDF is written to a stream which only counts the bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PDFBenchmark {
+    @Param({ Corpus.SMALL, Corpus.LARGE, Corpus.TABLE, Corpus.TEXT })
+    public String corpus;
+
+    private Document _doc;
+    private ITextRenderer _renderer;
+
+    @Setup
+    public void setUp() {
+        _doc = Corpus.getDocument(corpus);
+        _renderer = new ITextRenderer();
+    }
+
+    @Setup(Level.Invocation)
+    public void layout() {
+        _renderer.setDocument(_doc, Corpus.getURL(corpus));
+        _renderer.layout();
+    }
+
+    @Benchmark
+    public long write() throws DocumentException {
+        CountingOutputStream out = new CountingOutputStream();
+        _renderer.createPDF(out);
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long layoutAndWrite() throws DocumentException {
+        _renderer.setDocument(_doc, Corpus.getURL(corpus));
+        _renderer.layout();
+        CountingOutputStream out = new CountingOutputStream();
+        _renderer.createPDF(out);
+        return out.getCount();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long _count;
+
+        public void write(int b) {
+            _count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            _count += len;
+        }
+
+        public long getCount() {
+            return _count;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.pdf.ITextBatchRenderer;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.PDFCompression;
+import org.xml.sax.InputSource;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfStream;
+
+/**
+ * Measures the size and time of PDF output with each {@link PDFCompression}
+ * setting, for one laid out document and for a run of documents merged
+ * into one PDF. The bytes written per operation are reported as the
+ * <code>bytes</code> counter next to the time. The full settings also merge
+ * identical resources.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PDFCompressionBenchmark {
+    private static final int MERGED_DOCUMENTS = 5;
+
+    @Param({ Corpus.LARGE, Corpus.TABLE })
+    public String corpus;
+
+    @Param({ "none", "default", "best", "full", "best-full" })
+    public String compression;
+
+    private Document _doc;
+    private ITextRenderer _renderer;
+    private PDFCompression _pdfCompression;
+    private String _batch;
+
+    /**
+     * The size of the output, per operation.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Output {
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        _doc = Corpus.getDocument(corpus);
+        _renderer = new ITextRenderer();
+        _pdfCompression = createCompression(compression);
+        _renderer.setPDFCompression(_pdfCompression);
+
+        String markup = Corpus.getMarkup(corpus);
+        markup = markup.substring(markup.indexOf("?>") + 2);
+        StringBuffer batch = new StringBuffer("<documents>");
+        for (int i = 0; i < MERGED_DOCUMENTS; i++) {
+            batch.append(markup);
+        }
+        batch.append("</documents>");
+        _batch = batch.toString();
+    }
+
+    private static PDFCompression createCompression(String name) {
+        if ("none".equals(name)) {
+            return new PDFCompression(PdfStream.NO_COMPRESSION, false);
+        } else if ("default".equals(name)) {
+            return new PDFCompression();
+        } else if ("best".equals(name)) {
+            return new PDFCompression(PdfStream.BEST_COMPRESSION, false);
+        } else if ("full".equals(name)) {
+            return new PDFCompression(PdfStream.DEFAULT_COMPRESSION, true, true);
+        } else if ("best-full".equals(name)) {
+            return new PDFCompression(PdfStream.BEST_COMPRESSION, true, true);
+        }
+        throw new IllegalArgumentException("Unknown compression: " + name);
+    }
+
+    @Setup(Level.Invocation)
+    public void layout() {
+        _renderer.reset();
+        _renderer.setDocument(_doc, Corpus.getURL(corpus));
+        _renderer.layout();
+    }
+
+    @Benchmark
+    public void write(Output output) throws DocumentException {
+        CountingOutputStream out = new CountingOutputStream();
+        _renderer.createPDF(out);
+        output.bytes += out.getCount();
+    }
+
+    @Benchmark
+    public void writeMerged(Output output) throws DocumentException, IOException {
+        ITextBatchRenderer batch = new ITextBatchRenderer(1);
+        batch.setBaseURL(Corpus.getURL(corpus));
+        batch.setPDFCompression(_pdfCompression);
+        CountingOutputStream out = new CountingOutputStream();
+        batch.renderMerged(new InputSource(new StringReader(_batch)), out);
+        output.bytes += out.getCount();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long _count;
+
+        public void write(int b) {
+            _count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            _count += len;
+        }
+
+        public long getCount() {
+            return _count;
+        }
+    }
+}
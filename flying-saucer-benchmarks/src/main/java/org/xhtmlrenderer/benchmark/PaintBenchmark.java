@@ -0,0 +1,83 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.render.BlockBox;
+
+/**
+ * Measures painting an already laid out document one screen at a time, as
+ * when scrolling through it, which is dominated by collecting the boxes
+ * that intersect each screen. Run with <code>-prof gc</code> to see the
+ * allocation rate of the collect and paint loops.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PaintBenchmark {
+    @Param({ Corpus.LARGE, Corpus.TABLE, Corpus.TEXT })
+    public String corpus;
+
+    private Java2DFixture _fixture;
+    private BlockBox _root;
+    private Graphics2D _graphics;
+
+    @Setup
+    public void setUp() {
+        _fixture = new Java2DFixture();
+        _fixture.setDocument(Corpus.getDocument(corpus), Corpus.getURL(corpus));
+        _root = _fixture.layout(_fixture.newLayoutContext());
+
+        BufferedImage screen = new BufferedImage(
+                Java2DFixture.WIDTH, Java2DFixture.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        _graphics = screen.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        _graphics.dispose();
+    }
+
+    @Benchmark
+    public int paintAllScreens() {
+        int screens = 0;
+        for (int y = 0; y < _root.getHeight(); y += Java2DFixture.HEIGHT) {
+            _fixture.paint(_root, _graphics, y);
+            screens++;
+        }
+        return screens;
+    }
+}
@@ -128,7 +128,12 @@ public class ContentFunctionFactory {
     private static class PagesCounterFunction extends PageNumberFunction implements ContentFunction {
         public String calculate(RenderingContext c, FSFunction function, InlineText text) {
             int value = c.getRootLayer().getRelativePageCount(c);
-            return CounterFunction.createCounterText(getListStyleType(function), value);
+            String result = CounterFunction.createCounterText(getListStyleType(function), value);
+            if (! c.getRootLayer().isRelativePageCountComplete(c)) {
+                // Only the first pages were laid out
+                result += "+";
+            }
+            return result;
         }
 
         public boolean canHandle(LayoutContext c, FSFunction function) {
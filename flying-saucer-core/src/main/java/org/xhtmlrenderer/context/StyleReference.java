@@ -38,6 +38,8 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.event.MetricsListener;
+import org.xhtmlrenderer.extend.AbstractUserAgent;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
@@ -98,6 +100,14 @@ public class StyleReference {
      * @param ui
      */
     public void setDocumentContext(SharedContext context, NamespaceHandler nsh, Document doc, UserInterface ui) {
+        // Restyling the same document (e.g. on relayout) reuses its resources
+        if (doc != _doc && _uac instanceof AbstractUserAgent) {
+            long start = System.nanoTime();
+            ((AbstractUserAgent) _uac).prefetchResources(doc);
+            context.phaseCompleted(MetricsListener.PHASE_PREFETCH, start);
+        }
+
+        long start = System.nanoTime();
         _context = context;
         _nsh = nsh;
         _doc = doc;
@@ -111,6 +121,7 @@ public class StyleReference {
                 _stylesheetFactory, 
                 readAndParseAll(infos, _context.getMedia()), 
                 _context.getMedia());
+        _context.phaseCompleted(MetricsListener.PHASE_STYLESHEET_LOAD, start);
     }
     
     private List readAndParseAll(List infos, String medium) {
@@ -121,6 +132,8 @@ public class StyleReference {
                 Stylesheet sheet = info.getStylesheet();
                 
                 if (sheet == null) {
+                    _context.count(_stylesheetFactory.containsStylesheet(info.getUri()) ?
+                            MetricsListener.COUNT_STYLESHEET_CACHE_HIT : MetricsListener.COUNT_STYLESHEET_CACHE_MISS, 1);
                     sheet = _stylesheetFactory.getStylesheet(info);
                 }
                 
@@ -22,10 +22,7 @@ package org.xhtmlrenderer.css.newmatch;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.w3c.dom.css.CSSPrimitiveValue;
 import org.xhtmlrenderer.css.constants.CSSName;
@@ -56,11 +53,16 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo;
  * @author Patrick Wright
  */
 public class CascadedStyle {
+    private static final PropertyDeclaration[] NO_PROPERTIES = new PropertyDeclaration[0];
+
     /**
-     * Map of PropertyDeclarations, keyed by {@link CSSName}
+     * The cascaded PropertyDeclarations, one for each property declared,
+     * in order of {@link CSSName#FS_ID}
      */
-    private Map<CSSName, PropertyDeclaration> cascadedProperties;
-    
+    private final PropertyDeclaration[] cascadedProperties;
+
+    private final int hash;
+
     private String fingerprint;
     
     /**
@@ -143,39 +145,57 @@ public class CascadedStyle {
      *             specificity.
      */
     CascadedStyle(Iterator<PropertyDeclaration> iter) {
-        this();
-
-        addProperties(iter);
+        this(null, iter);
     }
 
-    private void addProperties(Iterator<PropertyDeclaration> iter) {
-        //do a bucket-sort on importance and origin
-        //properties should already be in order of specificity
-        List[] buckets = new List[PropertyDeclaration.IMPORTANCE_AND_ORIGIN_COUNT];
-        for (int i = 0; i < buckets.length; i++) {
-            buckets[i] = new LinkedList();
+    private CascadedStyle(CascadedStyle startingPoint, Iterator props) {
+        PropertyDeclaration[] byId = cascade(props);
+        if (startingPoint != null) {
+            PropertyDeclaration[] start = startingPoint.cascadedProperties;
+            for (int i = 0; i < start.length; i++) {
+                int id = start[i].getCSSName().FS_ID;
+                if (byId[id] == null) {
+                    byId[id] = start[i];
+                }
+            }
         }
 
-        while (iter.hasNext()) {
-            PropertyDeclaration prop = (PropertyDeclaration) iter.next();
-            buckets[prop.getImportanceAndOrigin()].add(prop);
+        int count = 0;
+        for (int i = 0; i < byId.length; i++) {
+            if (byId[i] != null) {
+                count++;
+            }
         }
-
-        for (int i = 0; i < buckets.length; i++) {
-            for (java.util.Iterator it = buckets[i].iterator(); it.hasNext();) {
-                PropertyDeclaration prop = (PropertyDeclaration) it.next();
-                cascadedProperties.put(prop.getCSSName(), prop);
+        cascadedProperties = count == 0 ? NO_PROPERTIES : new PropertyDeclaration[count];
+        int h = 0;
+        for (int i = 0, j = 0; j < count; i++) {
+            if (byId[i] != null) {
+                cascadedProperties[j++] = byId[i];
+                h = h * 31 + byId[i].getFingerprint().hashCode();
             }
         }
-    }
-    
-    private CascadedStyle(CascadedStyle startingPoint, Iterator props) {
-        // Note that we need a map here that sorts by key order,
-        cascadedProperties = new TreeMap(startingPoint.cascadedProperties);
-        
-        addProperties(props);
+        hash = h;
     }
 
+    /**
+     * Resolves the cascade of the given declarations into an array indexed
+     * by {@link CSSName#FS_ID}. Of the declarations of a property, the one of
+     * greatest importance and origin wins, and of those the last one, as the
+     * declarations are in order of specificity.
+     */
+    private static PropertyDeclaration[] cascade(Iterator iter) {
+        PropertyDeclaration[] result = new PropertyDeclaration[CSSName.countCSSNames()];
+        while (iter.hasNext()) {
+            PropertyDeclaration prop = (PropertyDeclaration) iter.next();
+            int id = prop.getCSSName().FS_ID;
+            PropertyDeclaration current = result[id];
+            if (current == null ||
+                    prop.getImportanceAndOrigin() >= current.getImportanceAndOrigin()) {
+                result[id] = prop;
+            }
+        }
+        return result;
+    }
 
     /**
      * Default constructor with no initialization. Don't use this to instantiate
@@ -183,8 +203,8 @@ public class CascadedStyle {
      * properties.
      */
     private CascadedStyle() {
-        // Note that we need a map here that sorts by key order,
-        cascadedProperties = new TreeMap();
+        cascadedProperties = NO_PROPERTIES;
+        hash = 0;
     }
 
     /**
@@ -200,7 +220,7 @@ public class CascadedStyle {
      * @return True if the property is defined in this set.
      */
     public boolean hasProperty(CSSName cssName) {
-        return cascadedProperties.get( cssName ) != null;
+        return propertyByName(cssName) != null;
     }
 
 
@@ -215,9 +235,21 @@ public class CascadedStyle {
      *         if not found.
      */
     public PropertyDeclaration propertyByName(CSSName cssName) {
-        PropertyDeclaration prop = (PropertyDeclaration)cascadedProperties.get(cssName);
-
-        return prop;
+        int low = 0;
+        int high = cascadedProperties.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            PropertyDeclaration prop = cascadedProperties[mid];
+            int id = prop.getCSSName().FS_ID;
+            if (id < cssName.FS_ID) {
+                low = mid + 1;
+            } else if (id > cssName.FS_ID) {
+                high = mid - 1;
+            } else {
+                return prop;
+            }
+        }
+        return null;
     }
 
     /**
@@ -242,27 +274,58 @@ public class CascadedStyle {
      * @return Iterator over a set of properly cascaded PropertyDeclarations.
      */
     public Iterator<PropertyDeclaration> getCascadedPropertyDeclarations() {
-        return cascadedProperties.values().iterator();
+        return Arrays.asList(cascadedProperties).iterator();
     }
 
-    public int countAssigned() { return cascadedProperties.size(); }
+    public int countAssigned() { return cascadedProperties.length; }
 
     public String getFingerprint() {
         if (this.fingerprint == null) {
-            if (cascadedProperties.isEmpty()) {
+            if (cascadedProperties.length == 0) {
                 return "";
             }
             // Size estimate for the string builder,
-            int capacity = Math.min(cascadedProperties.size() * 10, 32);
+            int capacity = Math.min(cascadedProperties.length * 10, 32);
             StringBuilder sb = new StringBuilder(capacity);
-            Iterator iter = cascadedProperties.values().iterator();
-            while (iter.hasNext()) {
-                sb.append(((PropertyDeclaration)iter.next()).getFingerprint());
+            for (int i = 0; i < cascadedProperties.length; i++) {
+                sb.append(cascadedProperties[i].getFingerprint());
             }
             this.fingerprint = sb.toString();
         }
         return this.fingerprint;
     }
+
+    /**
+     * Styles are equal when they declare the same values for the same
+     * properties, which makes them usable as keys for the styles derived
+     * from them without building their fingerprint.
+     */
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (! (o instanceof CascadedStyle)) {
+            return false;
+        }
+        CascadedStyle other = (CascadedStyle) o;
+        if (hash != other.hash ||
+                cascadedProperties.length != other.cascadedProperties.length) {
+            return false;
+        }
+        for (int i = 0; i < cascadedProperties.length; i++) {
+            PropertyDeclaration a = cascadedProperties[i];
+            PropertyDeclaration b = other.cascadedProperties[i];
+            if (a != b && (a.getCSSName() != b.getCSSName() ||
+                    ! a.getFingerprint().equals(b.getFingerprint()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
 }// end class
 
 /*
@@ -22,8 +22,8 @@ package org.xhtmlrenderer.css.style;
 
 import java.awt.Cursor;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -48,6 +48,7 @@ import org.xhtmlrenderer.css.style.derived.RectPropertySet;
 import org.xhtmlrenderer.css.value.FontSpecification;
 import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 import org.xhtmlrenderer.util.XRRuntimeException;
 
@@ -92,22 +93,100 @@ public class CalculatedStyle {
     private BackgroundSize _backgroundSize;
 
     /**
-     * Cache child styles of this style that have the same cascaded properties
+     * The most child styles kept by each style; see
+     * <code>xr.css.child-style-cache.max-size</code>.
      */
-    private final Map<String, CalculatedStyle> _childCache = new HashMap();
-    /*private java.util.HashMap _childCache = new java.util.LinkedHashMap(5, 0.75f, true) {
-        private static final int MAX_ENTRIES = 10;
+    private static final int CHILD_CACHE_SIZE =
+            Configuration.valueAsInt("xr.css.child-style-cache.max-size", 64);
 
-        protected boolean removeEldestEntry(Map.Entry eldest) {
-            return size() > MAX_ENTRIES;
+    /**
+     * Cache child styles of this style that have the same cascaded properties,
+     * least recently used first out. Created with the first child, as most
+     * styles belong to leaf elements. Guarded by this style, as table cells
+     * may be laid out on several threads.
+     */
+    private Map<CascadedStyle, CalculatedStyle> _childCache;
+
+    /**
+     * Where each property's value is kept, by CSSName ID: the index into
+     * _inherited for properties that inherit, the complement (~) of the
+     * index into _own for the rest.
+     */
+    private static final int[] SLOTS;
+
+    /**
+     * The initial values of the inherited and other properties, which is what
+     * a style that declares none of them holds. Properties whose initial value
+     * is another property's value (such as <code>border-top-color</code>,
+     * initially the <code>color</code>) hold
+     * {@link IdentValue#FS_INITIAL_VALUE} in place of it; see
+     * {@link #OWN_REFERENCES}.
+     */
+    private static final FSDerivedValue[] INITIAL_INHERITED;
+    private static final FSDerivedValue[] INITIAL_OWN;
+
+    /**
+     * The property whose value each non-inherited property takes initially,
+     * or null if it has an initial value of its own.
+     */
+    private static final CSSName[] OWN_REFERENCES;
+
+    static {
+        int count = CSSName.countCSSPrimitiveNames();
+        List inherited = new ArrayList();
+        List own = new ArrayList();
+        SLOTS = new int[count];
+        for (int i = 0; i < count; i++) {
+            CSSName name = CSSName.getByID(i);
+            if (CSSName.propertyInherits(name)) {
+                SLOTS[i] = inherited.size();
+                inherited.add(name);
+            } else {
+                SLOTS[i] = ~own.size();
+                own.add(name);
+            }
+        }
+        if (inherited.size() > 64) {
+            throw new XRRuntimeException("Too many inherited properties to track in a long");
+        }
+
+        INITIAL_INHERITED = new FSDerivedValue[inherited.size()];
+        for (int i = 0; i < INITIAL_INHERITED.length; i++) {
+            CSSName name = (CSSName) inherited.get(i);
+            if (getInitialReference(name) != null) {
+                throw new XRRuntimeException("Inherited property '" + name +
+                        "' can't take its initial value from another property");
+            }
+            INITIAL_INHERITED[i] = CSSName.initialDerivedValue(name);
         }
-    };*/
+
+        INITIAL_OWN = new FSDerivedValue[own.size()];
+        OWN_REFERENCES = new CSSName[own.size()];
+        for (int i = 0; i < INITIAL_OWN.length; i++) {
+            CSSName name = (CSSName) own.get(i);
+            OWN_REFERENCES[i] = getInitialReference(name);
+            INITIAL_OWN[i] = OWN_REFERENCES[i] != null ?
+                    IdentValue.FS_INITIAL_VALUE : CSSName.initialDerivedValue(name);
+        }
+    }
+
+    /**
+     * The values of the inherited properties. Shared with the parent style
+     * when this style declares none of them.
+     */
+    private FSDerivedValue[] _inherited;
+
+    /**
+     * The values of the properties that don't inherit. Shared with every
+     * other style that declares none of them.
+     */
+    private FSDerivedValue[] _own;
 
     /**
-     * Our main array of property values defined in this style, keyed
-     * by the CSSName assigned ID.
+     * The inherited properties declared for this style, one bit per index
+     * into _inherited
      */
-    private final FSDerivedValue[] _derivedValuesById;
+    private long _declaredInherited;
 
     /**
      * The derived Font for this style
@@ -120,7 +199,8 @@ public class CalculatedStyle {
      * this for class instantiation externally.
      */
     protected CalculatedStyle() {
-        _derivedValuesById = new FSDerivedValue[CSSName.countCSSPrimitiveNames()];
+        _inherited = INITIAL_INHERITED;
+        _own = INITIAL_OWN;
     }
 
 
@@ -132,7 +212,6 @@ public class CalculatedStyle {
      * @param matched PARAM
      */
     private CalculatedStyle(CalculatedStyle parent, CascadedStyle matched) {
-        this();
         _parent = parent;
 
         derive(matched);
@@ -177,21 +256,41 @@ public class CalculatedStyle {
      * @param matched the CascadedStyle to apply
      * @return The derived child style
      */
-    public CalculatedStyle deriveStyle(CascadedStyle matched) {
-        String fingerprint = matched.getFingerprint();
-        CalculatedStyle cs = (CalculatedStyle) _childCache.get(fingerprint);
+    public synchronized CalculatedStyle deriveStyle(CascadedStyle matched) {
+        if (_childCache == null) {
+            _childCache = new ChildCache();
+        }
+        CalculatedStyle cs = (CalculatedStyle) _childCache.get(matched);
 
         if (cs == null) {
             cs = new CalculatedStyle(this, matched);
-            _childCache.put(fingerprint, cs);
+            _childCache.put(matched, cs);
         }
         return cs;
     }
 
+    /**
+     * Returns whether {@link #deriveStyle(CascadedStyle)} would return a
+     * style kept from before rather than derive a new one.
+     */
+    public synchronized boolean isChildStyleCached(CascadedStyle matched) {
+        return _childCache != null && _childCache.containsKey(matched);
+    }
+
+    /**
+     * Returns the number of child styles this style keeps.
+     */
+    public synchronized int getChildStyleCount() {
+        return _childCache == null ? 0 : _childCache.size();
+    }
+
     public int countAssigned() {
         int c = 0;
-        for (int i = 0; i < _derivedValuesById.length; i++) {
-            if (_derivedValuesById[i] != null) c++;
+        for (int i = 0; i < _inherited.length; i++) {
+            if (_inherited[i] != null) c++;
+        }
+        for (int i = 0; i < _own.length; i++) {
+            if (_own[i] != null) c++;
         }
         return c;
     }
@@ -235,9 +334,21 @@ public class CalculatedStyle {
         return valueByName(cssName).asStringArray();
     }
 
+    /**
+     * Sets the value of a property this style doesn't declare. This must be
+     * done before any child styles are derived, as they take their inherited
+     * values from this style when they are created.
+     */
     public void setDefaultValue(CSSName cssName, FSDerivedValue fsDerivedValue) {
-        if (_derivedValuesById[cssName.FS_ID] == null) {
-            _derivedValuesById[cssName.FS_ID] = fsDerivedValue;
+        int slot = SLOTS[cssName.FS_ID];
+        if (slot >= 0) {
+            if ((_declaredInherited & (1L << slot)) == 0) {
+                _inherited = (FSDerivedValue[]) _inherited.clone();
+                _inherited[slot] = fsDerivedValue;
+            }
+        } else if (_own[~slot] == INITIAL_OWN[~slot]) {
+            _own = (FSDerivedValue[]) _own.clone();
+            _own[~slot] = fsDerivedValue;
         }
     }
 
@@ -542,38 +653,32 @@ public class CalculatedStyle {
      * @return See desc.
      */
     public FSDerivedValue valueByName(CSSName cssName) {
-        FSDerivedValue val = _derivedValuesById[cssName.FS_ID];
-
-        boolean needInitialValue = val == IdentValue.FS_INITIAL_VALUE;
-
-        // but the property may not be defined for this Element
-        if (val == null || needInitialValue) {
-            // if it is inheritable (like color) and we are not root, ask our parent
-            // for the value
-            if (! needInitialValue && CSSName.propertyInherits(cssName)
-                    && _parent != null
-                    //
-                    && (val = _parent.valueByName(cssName)) != null) {
-                // Do nothing, val is already set
-            } else {
-                // otherwise, use the initial value (defined by the CSS2 Spec)
-                String initialValue = CSSName.initialValue(cssName);
-                if (initialValue == null) {
-                    throw new XRRuntimeException("Property '" + cssName + "' has no initial values assigned. " +
-                            "Check CSSName declarations.");
-                }
-                if (initialValue.charAt(0) == '=') {
-                    CSSName ref = CSSName.getByPropertyName(initialValue.substring(1));
-                    val = valueByName(ref);
-                } else {
-                    val = CSSName.initialDerivedValue(cssName);
-                }
-            }
-            _derivedValuesById[cssName.FS_ID] = val;
+        int slot = SLOTS[cssName.FS_ID];
+        if (slot >= 0) {
+            return _inherited[slot];
+        }
+
+        FSDerivedValue val = _own[~slot];
+        if (val == IdentValue.FS_INITIAL_VALUE) {
+            // Initially the value of another property of this style
+            val = valueByName(OWN_REFERENCES[~slot]);
         }
         return val;
     }
 
+    private static CSSName getInitialReference(CSSName cssName) {
+        String initialValue = CSSName.initialValue(cssName);
+        if (initialValue == null) {
+            throw new XRRuntimeException("Property '" + cssName + "' has no initial values assigned. " +
+                    "Check CSSName declarations.");
+        }
+        if (initialValue.charAt(0) == '=') {
+            return CSSName.getByPropertyName(initialValue.substring(1));
+        } else {
+            return null;
+        }
+    }
+
     /**
      * <p/>
      * <p/>
@@ -591,20 +696,45 @@ public class CalculatedStyle {
      * either of these assumptions. When this method exits, the derived property
      * list for this class will be populated with the properties defined for
      * this element, properly cascaded.</p>
+     * <p/>
+     * Properties the element doesn't declare are resolved here too, taking
+     * the parent's value or the initial one, so that looking a value up
+     * later is a matter of reading it from an array. Until a property of a
+     * kind (inherited or not) is declared, the array of the parent or of the
+     * initial values is shared rather than copied.
      *
      * @param matched PARAM
      */
     private void derive(CascadedStyle matched) {
-        if (matched == null) {
-            return;
-        }//nothing to derive
-
-        Iterator mProps = matched.getCascadedPropertyDeclarations();
-        while (mProps.hasNext()) {
-            PropertyDeclaration pd = (PropertyDeclaration) mProps.next();
-            FSDerivedValue val = deriveValue(pd.getCSSName(), pd.getValue());
-            _derivedValuesById[pd.getCSSName().FS_ID] = val;
+        FSDerivedValue[] inherited = _parent._inherited;
+        FSDerivedValue[] own = INITIAL_OWN;
+
+        if (matched != null) {
+            Iterator mProps = matched.getCascadedPropertyDeclarations();
+            while (mProps.hasNext()) {
+                PropertyDeclaration pd = (PropertyDeclaration) mProps.next();
+                CSSName name = pd.getCSSName();
+                FSDerivedValue val = deriveValue(name, pd.getValue());
+                int slot = SLOTS[name.FS_ID];
+                if (slot >= 0) {
+                    if (inherited == _parent._inherited) {
+                        inherited = (FSDerivedValue[]) inherited.clone();
+                    }
+                    inherited[slot] = val == IdentValue.FS_INITIAL_VALUE ?
+                            INITIAL_INHERITED[slot] : val;
+                    _declaredInherited |= 1L << slot;
+                } else {
+                    if (own == INITIAL_OWN) {
+                        own = (FSDerivedValue[]) own.clone();
+                    }
+                    own[~slot] = val == IdentValue.FS_INITIAL_VALUE ?
+                            INITIAL_OWN[~slot] : val;
+                }
+            }
         }
+
+        _inherited = inherited;
+        _own = own;
     }
 
     private FSDerivedValue deriveValue(CSSName cssName, org.w3c.dom.css.CSSPrimitiveValue value) {
@@ -613,9 +743,9 @@ public class CalculatedStyle {
 
     private String genStyleKey() {
         StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < _derivedValuesById.length; i++) {
+        for (int i = 0; i < SLOTS.length; i++) {
             CSSName name = CSSName.getByID(i);
-            FSDerivedValue val = _derivedValuesById[i];
+            FSDerivedValue val = valueByName(name);
             if (val != null) {
                 sb.append(name.toString());
             } else {
@@ -1244,9 +1374,25 @@ public class CalculatedStyle {
         return isInlineBlock() || isFloated() || isAbsolute() || isFixed();
     }
 
+    /**
+     * Dumps the values this style doesn't take from its parent or from the
+     * initial values, followed by those of its ancestors.
+     */
     public StringBuilder dump(StringBuilder b, String ident) {
-        for (int i = 0; i < CSSName.countCSSPrimitiveNames(); ++i) {
-            FSDerivedValue val = _derivedValuesById[i];
+        for (int i = 0; i < SLOTS.length; ++i) {
+            int slot = SLOTS[i];
+            FSDerivedValue val;
+            if (slot >= 0) {
+                val = _inherited[slot];
+                if (_parent == null ? val == INITIAL_INHERITED[slot] : val == _parent._inherited[slot]) {
+                    continue;
+                }
+            } else {
+                val = _own[~slot];
+                if (val == INITIAL_OWN[~slot]) {
+                    continue;
+                }
+            }
             if (val != null) {
                 b.append(ident);
                 b.append(CSSName.getByID(i));
@@ -1261,6 +1407,16 @@ public class CalculatedStyle {
         return b;
     }
 
+    private static class ChildCache extends LinkedHashMap<CascadedStyle, CalculatedStyle> {
+        ChildCache() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<CascadedStyle, CalculatedStyle> eldest) {
+            return size() > CHILD_CACHE_SIZE;
+        }
+    }
+
 }// end class
 
 /*
@@ -30,6 +30,14 @@ import org.xml.sax.ext.LexicalHandler;
 /**
  * A SAX handler that forms a Flying Saucer DOM object hierarchy given
  * information provided to this object from the SAX methods implemented.
+ * <p>
+ * A progressive handler lets the document be read on another thread while
+ * it is parsed. The document, the root element and its children are
+ * appended to as they are parsed, but elements further down are only added
+ * once they end, so each child of the body of an XHTML document shows up
+ * whole. Nodes are added by {@link #appendParsedNodes()} on the thread
+ * reading the document, so the document can be read between calls while
+ * parsing goes on.
  *
  * @author Tobias Downer
  */
@@ -46,13 +54,32 @@ public class FSSAXHandler implements ContentHandler, LexicalHandler {
     private boolean currentTextInc = false;
 
     private static final boolean PRINT_DEBUG = false;
-    
+
+    // With progressive parsing, elements down to this depth (the root
+    // element and its children) are added to as they are parsed, and
+    // elements below it once they end
+    private static final int OPEN_DEPTH = 2;
+
+    private final boolean progressive;
+    // Parents and the nodes waiting to be appended to them
+    private final List<Node> pendingNodes = new ArrayList();
+    private volatile boolean cancelled;
 
     /**
      * Constructor.
      */
     public FSSAXHandler() {
+        this(false);
+    }
+
+    /**
+     * @param progressive whether the document is read while it is parsed,
+     *        in which case nodes are added to it by
+     *        {@link #appendParsedNodes()}
+     */
+    public FSSAXHandler(boolean progressive) {
         this.document = new DocumentImpl();
+        this.progressive = progressive;
     }
 
     /**
@@ -70,8 +97,51 @@ public class FSSAXHandler implements ContentHandler, LexicalHandler {
      * @param node 
      */
     private void addToTop(Node node) {
-        ElementImpl cur = elementStack.get(elementStack.size() - 1);
-        cur.appendChild(node);
+        int depth = elementStack.size() - 1;
+        ElementImpl cur = elementStack.get(depth);
+        if (! progressive || depth > OPEN_DEPTH) {
+            cur.appendChild(node);
+        } else if (! (node instanceof Element)) {
+            publish(cur, node);
+        }
+        // Elements are published once their attributes are added, or
+        // below the open depth when they end
+    }
+
+    private void publish(ElementImpl parent, Node node) {
+        synchronized (pendingNodes) {
+            pendingNodes.add(parent);
+            pendingNodes.add(node);
+        }
+    }
+
+    /**
+     * With progressive parsing, appends the nodes parsed since the last call
+     * to the document. Must be called on the thread reading the document.
+     *
+     * @return whether any nodes were appended
+     */
+    public boolean appendParsedNodes() {
+        synchronized (pendingNodes) {
+            int sz = pendingNodes.size();
+            for (int i = 0; i < sz; i += 2) {
+                ((ElementImpl) pendingNodes.get(i)).appendChild(pendingNodes.get(i + 1));
+            }
+            pendingNodes.clear();
+            return sz > 0;
+        }
+    }
+
+    /**
+     * Makes parsing stop with an exception at the next element, for a
+     * document no longer needed.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
     }
 
     /**
@@ -131,6 +201,9 @@ public class FSSAXHandler implements ContentHandler, LexicalHandler {
     @Override
     public void startElement(String uri, String localName, String qName, org.xml.sax.Attributes atts) throws SAXException {
         if (PRINT_DEBUG) System.out.println("startElement(" + uri + ", " + localName + ", " + qName + ", " + atts + ")");
+        if (cancelled) {
+            throw new SAXException("Parsing cancelled");
+        }
         addTextNode();
         ElementImpl element = new ElementImpl(document, uri, localName, qName);
         addToTop(element);
@@ -155,13 +228,21 @@ public class FSSAXHandler implements ContentHandler, LexicalHandler {
             }
         }
 
+        int depth = elementStack.size() - 2;
+        if (progressive && depth < OPEN_DEPTH) {
+            publish(elementStack.get(depth), element);
+        }
     }
 
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
         if (PRINT_DEBUG) System.out.println("endElement(" + uri + ", " + localName + ", " + qName + ")");
         addTextNode();
-        elementStack.remove(elementStack.size() - 1);
+        int depth = elementStack.size() - 1;
+        ElementImpl element = elementStack.remove(depth);
+        if (progressive && depth == OPEN_DEPTH + 1) {
+            publish(elementStack.get(depth - 1), element);
+        }
     }
 
     private void addTextNode() {
@@ -0,0 +1,111 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.event;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link MetricsListener} which totals the durations and counts it
+ * receives. Typically one collector is installed per document (or per
+ * template) and read once rendering has finished, e.g. to export the numbers
+ * to a metrics system. Thread-safe.
+ */
+public class MetricsCollector implements MetricsListener {
+    private final Map _nanos = new TreeMap();
+    private final Map _invocations = new TreeMap();
+    private final Map _counts = new TreeMap();
+
+    public synchronized void phaseCompleted(String phase, long nanos) {
+        add(_nanos, phase, nanos);
+        add(_invocations, phase, 1);
+    }
+
+    public synchronized void count(String counter, long amount) {
+        add(_counts, counter, amount);
+    }
+
+    private static void add(Map map, String key, long amount) {
+        long[] value = (long[]) map.get(key);
+        if (value == null) {
+            value = new long[1];
+            map.put(key, value);
+        }
+        value[0] += amount;
+    }
+
+    private static long get(Map map, String key) {
+        long[] value = (long[]) map.get(key);
+        return value == null ? 0 : value[0];
+    }
+
+    /**
+     * Returns the total time spent in the given phase, in nanoseconds.
+     */
+    public synchronized long getNanos(String phase) {
+        return get(_nanos, phase);
+    }
+
+    /**
+     * Returns the number of times the given phase was reported.
+     */
+    public synchronized long getInvocations(String phase) {
+        return get(_invocations, phase);
+    }
+
+    /**
+     * Returns the current value of the given counter.
+     */
+    public synchronized long getCount(String counter) {
+        return get(_counts, counter);
+    }
+
+    /**
+     * Returns the hit rate (0 to 1) for a pair of hit and miss counters, or
+     * -1 if neither was counted.
+     */
+    public synchronized float getHitRate(String hitCounter, String missCounter) {
+        long hits = get(_counts, hitCounter);
+        long total = hits + get(_counts, missCounter);
+        return total == 0 ? -1 : (float) hits / total;
+    }
+
+    /**
+     * Clears all timings and counters.
+     */
+    public synchronized void reset() {
+        _nanos.clear();
+        _invocations.clear();
+        _counts.clear();
+    }
+
+    public synchronized String toString() {
+        StringBuffer result = new StringBuffer();
+        for (Iterator i = _nanos.keySet().iterator(); i.hasNext(); ) {
+            String phase = (String) i.next();
+            result.append(phase).append(": ").append(get(_nanos, phase) / 1000000).append("ms (");
+            result.append(get(_invocations, phase)).append("x)\n");
+        }
+        for (Iterator i = _counts.keySet().iterator(); i.hasNext(); ) {
+            String counter = (String) i.next();
+            result.append(counter).append(": ").append(get(_counts, counter)).append('\n');
+        }
+        return result.toString();
+    }
+}
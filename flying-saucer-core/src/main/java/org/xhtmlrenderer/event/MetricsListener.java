@@ -0,0 +1,99 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.event;
+
+/**
+ * Implementations of this interface receive timings and counts from the
+ * rendering pipeline. A listener is installed with
+ * {@link org.xhtmlrenderer.layout.SharedContext#setMetricsListener(MetricsListener)}
+ * and is called on the thread doing the layout or rendering, so
+ * implementations should return quickly and must be thread-safe if one
+ * listener is shared between renderers.
+ * <p/>
+ * Phases may nest: boxes are built lazily during layout and styles are
+ * cascaded while boxes are built, so {@link #PHASE_LAYOUT} includes
+ * {@link #PHASE_BOX_BUILDING}, which in turn includes {@link #PHASE_CASCADE}.
+ *
+ * @see MetricsCollector
+ */
+public interface MetricsListener {
+    /** Parsing the document source into a DOM. */
+    public static final String PHASE_PARSE = "parse";
+    /** Fetching the resources of a document ahead of time, if turned on in the user agent. */
+    public static final String PHASE_PREFETCH = "prefetch";
+    /** Loading and parsing the stylesheets of a document and indexing their selectors. */
+    public static final String PHASE_STYLESHEET_LOAD = "stylesheet-load";
+    /** Matching selectors against a single element and cascading the result. */
+    public static final String PHASE_CASCADE = "cascade";
+    /** Creating the box tree (reported once per top level box building run). */
+    public static final String PHASE_BOX_BUILDING = "box-building";
+    /** Laying out the box tree. */
+    public static final String PHASE_LAYOUT = "layout";
+    /** Trimming empty pages and laying out page margin boxes. */
+    public static final String PHASE_PAGINATION = "pagination";
+    /** Painting the box tree (or a single page of it). */
+    public static final String PHASE_PAINT = "paint";
+    /** Writing out the finished PDF document. */
+    public static final String PHASE_PDF_WRITE = "pdf-write";
+
+    /** Number of elements whose style was cascaded. */
+    public static final String COUNT_ELEMENTS_STYLED = "elements-styled";
+    /** Calculated style lookups answered from the per-document style map. */
+    public static final String COUNT_STYLE_CACHE_HIT = "style-cache-hit";
+    /** Calculated style lookups which needed a cascade. */
+    public static final String COUNT_STYLE_CACHE_MISS = "style-cache-miss";
+    /** Cascaded styles whose calculated style was kept by the parent element's style. */
+    public static final String COUNT_CHILD_STYLE_CACHE_HIT = "child-style-cache-hit";
+    /** Cascaded styles which needed a new calculated style. */
+    public static final String COUNT_CHILD_STYLE_CACHE_MISS = "child-style-cache-miss";
+    /** Stylesheets found in the stylesheet cache. */
+    public static final String COUNT_STYLESHEET_CACHE_HIT = "stylesheet-cache-hit";
+    /** Stylesheets which had to be loaded and parsed. */
+    public static final String COUNT_STYLESHEET_CACHE_MISS = "stylesheet-cache-miss";
+    /** Images found in the user agent's image cache. */
+    public static final String COUNT_IMAGE_CACHE_HIT = "image-cache-hit";
+    /** Images which had to be loaded and decoded. */
+    public static final String COUNT_IMAGE_CACHE_MISS = "image-cache-miss";
+    /** Block boxes laid out again to honor page break rules. */
+    public static final String COUNT_RELAYOUT = "relayout";
+    /** Runs of block boxes laid out again to honor page-break-before/after: avoid. */
+    public static final String COUNT_RELAYOUT_RUN = "relayout-run";
+    /**
+     * Block boxes, or the lines of a block, moved to their new position
+     * instead of being laid out again to honor page break rules.
+     */
+    public static final String COUNT_RELAYOUT_AVOIDED = "relayout-avoided";
+    /** Pages produced by pagination. */
+    public static final String COUNT_PAGES = "pages";
+
+    /**
+     * Called when a phase of the pipeline completes.
+     *
+     * @param phase one of the <code>PHASE_</code> constants
+     * @param nanos elapsed time, as measured by {@link System#nanoTime()}
+     */
+    void phaseCompleted(String phase, long nanos);
+
+    /**
+     * Called when a counter should be incremented.
+     *
+     * @param counter one of the <code>COUNT_</code> constants
+     * @param amount the amount to add
+     */
+    void count(String counter, long amount);
+}
@@ -19,11 +19,15 @@
 
 package org.xhtmlrenderer.extend;
 
+import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -33,6 +37,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -53,10 +58,15 @@ import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.parser.Parser;
 import org.xhtmlrenderer.parser.XHTMLJavaSAXParser;
 import org.xhtmlrenderer.resource.CSSResource;
+import org.xhtmlrenderer.resource.CachedResource;
+import org.xhtmlrenderer.resource.DiskResourceCache;
 import org.xhtmlrenderer.resource.DocumentResource;
+import org.xhtmlrenderer.resource.HttpResourceLoader;
 import org.xhtmlrenderer.resource.ImageResource;
+import org.xhtmlrenderer.resource.ResourceCache;
 import org.xhtmlrenderer.swing.AWTFSImage;
 import org.xhtmlrenderer.swing.ImageProgressListener;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.XRLog;
 import org.xhtmlrenderer.util.XRRuntimeException;
@@ -72,6 +82,9 @@ import org.xhtmlrenderer.util.XRRuntimeException;
 public abstract class AbstractUserAgent implements UserAgentCallback {
 
     private static final int DEFAULT_IMAGE_CACHE_SIZE = 16;
+    // How far into an image its size is looked for, while keeping what
+    // was read to decode the image from
+    private static final int IMAGE_HEADER_LIMIT = 256 * 1024;
 
     private final Object URL_LOCK = new Object();
 
@@ -89,10 +102,20 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
     private Parser _documentParser;
 
     private boolean deferredImageLoading = false;
+    private boolean imageSubsampling = Configuration.isTrue("xr.image.subsample", false);
     private final List<ImageProgressListener> imageProgressListeners = new ArrayList();
     private final int backgroundImageLoadWorkersCount;
     private ExecutorService imageLoaderThreadPool = null;
 
+    private int prefetchThreadsCount = Configuration.valueAsInt("xr.load.prefetch.threads", 0);
+    private ExecutorService prefetchThreadPool = null;
+    // Resources fetched ahead of time, by resolved URI
+    private final Map<String, PrefetchedResource> _prefetched =
+            Collections.synchronizedMap(new HashMap<String, PrefetchedResource>());
+
+    // Loads HTTP resources through the resource cache, null if there is none
+    private volatile HttpResourceLoader _resourceLoader;
+
     /**
      * Creates a new instance of NaiveUserAgent with a max image cache of 16 images.
      */
@@ -130,6 +153,41 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
             }
         });
         this._documentParser = new XHTMLJavaSAXParser();
+
+        String cacheDir = Configuration.valueFor("xr.load.cache.dir", "");
+        if (cacheDir.length() > 0) {
+            long maxSize = Configuration.valueAsLong("xr.load.cache.max-size", 100);
+            setResourceCache(DiskResourceCache.getInstance(new File(cacheDir), maxSize * 1024 * 1024));
+        }
+    }
+
+    /**
+     * Sets the cache HTTP resources are loaded through, or <code>null</code>
+     * to fetch them every time. Stylesheets, images, fonts and PDF images
+     * all go through the cache; fresh resources are served from it without
+     * a request and stale ones are revalidated with a conditional GET. See
+     * {@link HttpResourceLoader}.
+     * <p>
+     * A {@link DiskResourceCache} is set up by default if
+     * <code>xr.load.cache.dir</code> is configured, shared by all user
+     * agents. One cache may be shared by many user agents.
+     */
+    public void setResourceCache(ResourceCache cache) {
+        _resourceLoader = cache == null ? null : new HttpResourceLoader(cache);
+    }
+
+    public ResourceCache getResourceCache() {
+        HttpResourceLoader loader = _resourceLoader;
+        return loader == null ? null : loader.getCache();
+    }
+
+    /**
+     * Returns the loader for <code>uri</code> if it should go through the
+     * resource cache, otherwise <code>null</code>.
+     */
+    private HttpResourceLoader getResourceLoader(String uri) {
+        HttpResourceLoader loader = _resourceLoader;
+        return loader != null && HttpResourceLoader.isCacheable(uri) ? loader : null;
     }
 
     /**
@@ -173,6 +231,22 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
         deferredImageLoading = enabled;
     }
 
+    /**
+     * When image subsampling is enabled, images sized by CSS are decoded at
+     * the lowest resolution that still covers the size they are drawn at
+     * (see {@link #loadImage(String, int, int)}), rather than at full
+     * resolution. This saves memory for large images drawn small, at the
+     * cost of detail if they are later drawn larger, e.g. when zooming.
+     * <p>
+     * Image subsampling is disabled by default, unless
+     * <code>xr.image.subsample</code> is set.
+     *
+     * @param enabled
+     */
+    public void setImageSubsamplingEnabled(boolean enabled) {
+        imageSubsampling = enabled;
+    }
+
     /**
      * Registers an ImageProgressListener that is notified whenever the load
      * progress of a deferred image changes. See
@@ -270,22 +344,136 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
         }
     }
 
+    /**
+     * Blocks while loading an image that will be drawn no larger than the
+     * given size, in pixels. If image subsampling is enabled, the image is
+     * decoded at the lowest resolution that still covers that size, but is
+     * drawn at its full size by default. Either dimension may be -1 if it
+     * isn't known. Throws IOException if loading the image failed.
+     *
+     * @see #setImageSubsamplingEnabled(boolean)
+     * @see ImageUtil#readImage(InputStream, int, int, Dimension)
+     */
+    public FSImage loadImage(String uri, int width, int height) throws IOException {
+        InputStream is = resolveAndOpenStream(uri);
+        if (is == null) {
+            throw new IOException("Failed to open stream");
+        }
+        return loadImage(is, width, height);
+    }
+
+    private FSImage loadImage(InputStream is, int width, int height) throws IOException {
+        try {
+            if (! imageSubsampling) {
+                width = -1;
+                height = -1;
+            }
+            Dimension size = new Dimension();
+            BufferedImage img = ImageUtil.readImage(is, width, height, size);
+            if (img == null) {
+                throw new IOException("No ImageIO reader for image");
+            }
+            if (img.getWidth() == size.width && img.getHeight() == size.height) {
+                return AWTFSImage.createImage(img);
+            }
+            return AWTFSImage.createImage(img, size.width, size.height);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads the size of an image, in pixels, from its header without
+     * decoding it.
+     *
+     * @return the size, or <code>null</code> if it could not be read
+     */
+    public Dimension loadImageSize(String uri) {
+        InputStream is = resolveAndOpenStream(uri);
+        if (is == null) {
+            return null;
+        }
+        try {
+            return ImageUtil.readImageSize(is);
+        } catch (IOException e) {
+            XRLog.load(Level.FINE, "Unable to read size of image " + uri + ": " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Opens an image and reads its size from the header into the image
+     * resource. The stream returned is back at the start of the image, so
+     * the image can be decoded without fetching it again.
+     *
+     * @return the open image, or <code>null</code> if it has to be opened
+     *         again to be decoded
+     */
+    private InputStream openImageForSize(String uri, ImageResource ir) {
+        InputStream is = resolveAndOpenStream(uri);
+        if (is == null) {
+            return null;
+        }
+        is = new BufferedInputStream(is);
+        is.mark(IMAGE_HEADER_LIMIT);
+        try {
+            ir.setIntrinsicSize(ImageUtil.readImageSize(is));
+            is.reset();
+            return is;
+        } catch (IOException e) {
+            XRLog.load(Level.FINE, "Unable to read size of image " + uri + ": " + e.getMessage());
+            try {
+                is.close();
+            } catch (IOException e1) {
+                // ignore
+            }
+            return null;
+        }
+    }
+
     /**
      * A Runnable that loads the given image resource in the background.
      */
     protected class LoadImageRunnable implements Runnable {
         private final ImageResource imageResource;
+        private final InputStream stream;
+        private final int width;
+        private final int height;
 
         public LoadImageRunnable(ImageResource imageResource) {
+            this(imageResource, -1, -1);
+        }
+
+        public LoadImageRunnable(ImageResource imageResource, int width, int height) {
+            this(imageResource, null, width, height);
+        }
+
+        /**
+         * @param stream the image, already opened, or <code>null</code> to
+         *        open it when loading
+         */
+        protected LoadImageRunnable(ImageResource imageResource, InputStream stream, int width, int height) {
             this.imageResource = imageResource;
+            this.stream = stream;
+            this.width = width;
+            this.height = height;
         }
 
         @Override
         public void run() {
             String uri = imageResource.getImageUri();
             try {
-                BufferedImage img = loadImage(uri);
-                imageResource.setImage(AWTFSImage.createImage(img));
+                if (stream != null) {
+                    imageResource.setImage(loadImage(stream, width, height));
+                } else {
+                    imageResource.setImage(loadImage(uri, width, height));
+                }
             } catch (FileNotFoundException e) {
                 XRLog.exception("Can't read image file; image at URI '" + uri + "' not found");
                 imageResource.setImage(ImageResource.NOT_FOUND_IMG);
@@ -306,6 +494,20 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
      * @param ir
      */
     public void loadInBackground(ImageResource ir) {
+        loadInBackground(ir, -1, -1);
+    }
+
+    /**
+     * Dispatches the loading of the given image, which will be drawn no
+     * larger than the given size, to the background image loader thread.
+     *
+     * @see #loadImage(String, int, int)
+     */
+    public void loadInBackground(ImageResource ir, int width, int height) {
+        loadInBackground(new LoadImageRunnable(ir, width, height));
+    }
+
+    private void loadInBackground(LoadImageRunnable loader) {
         if (imageLoaderThreadPool == null) {
             imageLoaderThreadPool =
                 Executors.newFixedThreadPool(backgroundImageLoadWorkersCount,
@@ -322,7 +524,137 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
             );
         }
         // Dispatch the image load operation to the thread pool,
-        imageLoaderThreadPool.execute(new LoadImageRunnable(ir));
+        imageLoaderThreadPool.execute(loader);
+    }
+
+    /**
+     * Sets the number of threads used to fetch the resources of a document
+     * ahead of time. Zero, the default unless configured with
+     * <code>xr.load.prefetch.threads</code>, turns prefetching off.
+     *
+     * @param count the maximum number of resources fetched concurrently
+     * @see #prefetchResources(Document)
+     */
+    public synchronized void setPrefetchThreadsCount(int count) {
+        if (count != prefetchThreadsCount && prefetchThreadPool != null) {
+            prefetchThreadPool.shutdown();
+            prefetchThreadPool = null;
+        }
+        prefetchThreadsCount = count;
+    }
+
+    public synchronized int getPrefetchThreadsCount() {
+        return prefetchThreadsCount;
+    }
+
+    /**
+     * Fetches the stylesheets, images and fonts the document refers to
+     * concurrently and keeps them in memory until the next document is
+     * prefetched, so that loading them later, one at a time, doesn't wait
+     * on the network. This is called once a document has been parsed and
+     * before it is styled; it does nothing unless
+     * {@link #setPrefetchThreadsCount(int) prefetching} is turned on.
+     * <p>
+     * Resources are fetched as bytes only; they are parsed or decoded, and
+     * go into the image and stylesheet caches, when they are first used.
+     *
+     * @param doc the parsed document; relative references are resolved
+     * against the current base URL
+     */
+    public void prefetchResources(Document doc) {
+        ExecutorService pool;
+        synchronized (this) {
+            if (prefetchThreadsCount <= 0) {
+                return;
+            }
+            if (prefetchThreadPool == null) {
+                prefetchThreadPool =
+                    Executors.newFixedThreadPool(prefetchThreadsCount,
+                        new ThreadFactory() {
+                            private final AtomicInteger threadNumber = new AtomicInteger(1);
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r);
+                                t.setName("Resource Prefetch-" + threadNumber.getAndIncrement());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        }
+                );
+            }
+            pool = prefetchThreadPool;
+        }
+
+        clearPrefetchedResources();
+        long timeout = Configuration.valueAsLong("xr.load.prefetch.timeout", 30000L);
+        long st = System.currentTimeMillis();
+        int count = new ResourcePrefetcher(this, pool, timeout).prefetch(doc);
+        XRLog.load("Prefetched " + count + " resources in ~" + (System.currentTimeMillis() - st) + "ms");
+    }
+
+    /**
+     * Releases the resources kept by the last call to
+     * {@link #prefetchResources(Document)}.
+     */
+    public void clearPrefetchedResources() {
+        _prefetched.clear();
+    }
+
+    /**
+     * Fetches a single resource for {@link ResourcePrefetcher} through
+     * {@link #resolveAndOpenStream(String)} and keeps it for that method and
+     * {@link #resolveAndOpenReader(String)}. Called from the prefetch
+     * threads.
+     *
+     * @param uri an absolute URI
+     * @return the content, or <code>null</code> if it could not be fetched
+     */
+    byte[] prefetch(String uri) {
+        InputStream is = resolveAndOpenStream(uri);
+        if (is == null) {
+            return null;
+        }
+        // Kept for the charset of stylesheets, when the stream knows it
+        String contentType = is instanceof ContentTypeInputStream ?
+                ((ContentTypeInputStream) is).getContentType() : null;
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buf = new byte[10240];
+            int i;
+            while ((i = is.read(buf)) != -1) {
+                result.write(buf, 0, i);
+            }
+            byte[] data = result.toByteArray();
+            _prefetched.put(uri, new PrefetchedResource(data, contentType));
+            return data;
+        } catch (IOException e) {
+            XRLog.load(Level.FINE, "Unable to prefetch " + uri + ": " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns a Reader for a resource fetched by {@link #prefetch(String)},
+     * decoded with the charset of the content type it was served with.
+     *
+     * @param uri an absolute URI
+     * @return the reader, or <code>null</code> if the resource was not
+     *         prefetched
+     */
+    Reader openPrefetchedReader(String uri) throws IOException {
+        PrefetchedResource prefetched = uri == null ? null : _prefetched.get(uri);
+        if (prefetched == null) {
+            return null;
+        }
+        return inputStreamToReader(uri,
+                prefetched.contentType == null ? "" : prefetched.contentType,
+                new ByteArrayInputStream(prefetched.data));
     }
 
     /**
@@ -369,6 +701,23 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
         Reader reader = null;
         uri = resolveURI(uri);
         try {
+            Reader prefetched = openPrefetchedReader(uri);
+            if (prefetched != null) {
+                return prefetched;
+            }
+        } catch (java.io.IOException e) {
+            XRLog.exception("IO problem for " + uri, e);
+            return null;
+        }
+        try {
+            HttpResourceLoader loader = getResourceLoader(uri);
+            if (loader != null) {
+                CachedResource resource = loader.load(uri);
+                String contentType = resource.getContentType();
+                return inputStreamToReader(
+                        uri, contentType == null ? "" : contentType, resource.openStream());
+            }
+
             URL url = new URL(uri);
             URLConnection urlConnection = url.openConnection();
             urlConnection.connect();
@@ -398,8 +747,20 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
     protected InputStream resolveAndOpenStream(String uri) {
         InputStream is = null;
         uri = resolveURI(uri);
+        PrefetchedResource prefetched = uri == null ? null : _prefetched.get(uri);
+        if (prefetched != null) {
+            return new ByteArrayInputStream(prefetched.data);
+        }
         try {
-            is = new URL(uri).openStream();
+            HttpResourceLoader loader = getResourceLoader(uri);
+            if (loader != null) {
+                CachedResource resource = loader.load(uri);
+                return new ContentTypeInputStream(resource.openStream(), resource.getContentType());
+            }
+            URLConnection urlConnection = new URL(uri).openConnection();
+            urlConnection.connect();
+            is = new ContentTypeInputStream(
+                    urlConnection.getInputStream(), urlConnection.getContentType());
         } catch (java.net.MalformedURLException e) {
             XRLog.exception("bad URL given: " + uri, e);
         } catch (java.io.FileNotFoundException e) {
@@ -449,6 +810,33 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
      */
     @Override
     public ImageResource getImageResource(String uri) {
+        return getImageResource(uri, -1, -1, false);
+    }
+
+    /**
+     * Retrieves an image that will be drawn no larger than the given size,
+     * in pixels, such as the box size of a replaced element. If image
+     * subsampling is enabled, large images are decoded at reduced resolution
+     * (see {@link #loadImage(String, int, int)}) but keep their full
+     * intrinsic size. A cached image is shared if it has enough resolution, and
+     * replaced by one decoded at a higher resolution otherwise. Either
+     * dimension may be -1 if it isn't known.
+     * <p>
+     * When deferred image loading is enabled and a dimension is unknown, the
+     * image header is read straight away, so that the image can be laid out
+     * at its intrinsic size before it has been decoded. The image is then
+     * decoded in the background from the same stream.
+     *
+     * @param uri Location of the image source.
+     * @param width the width the image will be drawn at, or -1
+     * @param height the height the image will be drawn at, or -1
+     * @return An ImageResource containing the image.
+     */
+    public ImageResource getImageResource(String uri, int width, int height) {
+        return getImageResource(uri, width, height, true);
+    }
+
+    private ImageResource getImageResource(String uri, int width, int height, boolean probeSize) {
         ImageResource ir;
         if (ImageUtil.isEmbeddedBase64Image(uri)) {
             BufferedImage image = ImageUtil.loadEmbeddedBase64Image(uri);
@@ -457,23 +845,33 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
             uri = resolveURI(uri);
             ir = (ImageResource) _imageCache.get(uri);
             //TODO: check that cached image is still valid
+            if (ir != null && ! hasResolution(ir.getImage(), width, height)) {
+                ir = null;
+            }
             if (ir == null) {
                 // Deferred image loading,
                 if (deferredImageLoading) {
 
                     // Deferred image resource,
                     ir = new ImageResource(uri, ImageResource.LOADING_IMG);
+                    InputStream is = null;
+                    if (probeSize && (width == -1 || height == -1)) {
+                        is = openImageForSize(uri, ir);
+                    }
 
                     // Loads the given image resource in the background,
-                    loadInBackground(ir);
+                    loadInBackground(new LoadImageRunnable(ir, is, width, height));
 
                 }
                 // Do not defer image loading,
                 else {
                     try {
 
-                        BufferedImage bufferedImage = loadImage(uri);
-                        ir = createImageResource(uri, bufferedImage);
+                        if (! imageSubsampling || (width == -1 && height == -1)) {
+                            ir = createImageResource(uri, loadImage(uri));
+                        } else {
+                            ir = new ImageResource(uri, loadImage(uri, width, height));
+                        }
 
                     } catch (FileNotFoundException e) {
                         XRLog.exception("Can't read image file; image at URI '" + uri + "' not found");
@@ -493,6 +891,22 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
         return ir;
     }
 
+    /**
+     * Returns true if an image was decoded with enough resolution to be
+     * drawn at the given size without upscaling.
+     */
+    private static boolean hasResolution(FSImage image, int width, int height) {
+        if (! (image instanceof AWTFSImage)) {
+            return true;
+        }
+        BufferedImage bitmap = ((AWTFSImage) image).getImage();
+        if (width <= 0 && height <= 0) {
+            return bitmap.getWidth() >= image.getWidth() && bitmap.getHeight() >= image.getHeight();
+        }
+        return (width <= 0 || bitmap.getWidth() >= Math.min(width, image.getWidth())) &&
+                (height <= 0 || bitmap.getHeight() >= Math.min(height, image.getHeight()));
+    }
+
     /**
      * Factory method to generate ImageResources from a given Image. May be overridden in subclass. 
      *
@@ -624,6 +1038,20 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
 
     @Override
     public byte[] getBinaryResource(String uri) {
+        String resolved = resolveURI(uri);
+        if (resolved != null && ! _prefetched.containsKey(resolved)) {
+            // Copy straight out of the cache
+            HttpResourceLoader loader = getResourceLoader(resolved);
+            if (loader != null) {
+                try {
+                    return loader.load(resolved).getBytes();
+                } catch (IOException e) {
+                    XRLog.exception("IO problem for " + resolved, e);
+                    return null;
+                }
+            }
+        }
+
         InputStream is = resolveAndOpenStream(uri);
         if (is==null) return null;
         try {
@@ -727,4 +1155,34 @@ public abstract class AbstractUserAgent implements UserAgentCallback {
         }
     }
 
+    /**
+     * A resource kept by {@link #prefetch(String)}.
+     */
+    private static class PrefetchedResource {
+        final byte[] data;
+        final String contentType;
+
+        PrefetchedResource(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * A stream opened by {@link #resolveAndOpenStream(String)} which knows
+     * the content type the resource was served with, so that prefetching it
+     * can keep the charset of stylesheets.
+     */
+    private static class ContentTypeInputStream extends FilterInputStream {
+        private final String _contentType;
+
+        ContentTypeInputStream(InputStream in, String contentType) {
+            super(in);
+            _contentType = contentType;
+        }
+
+        String getContentType() {
+            return _contentType;
+        }
+    }
 }
@@ -0,0 +1,265 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.extend;
+
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * Finds the resources a document refers to and fetches them concurrently
+ * through {@link AbstractUserAgent#prefetch(String)}, so that they are
+ * already in memory when style loading, box building and replaced element
+ * creation ask for them one at a time.
+ * <p>
+ * Stylesheets (<code>link</code> elements and <code>@import</code> rules),
+ * images (<code>img</code> elements) and everything referenced with
+ * <code>url()</code> in stylesheets, <code>style</code> elements and
+ * <code>style</code> attributes are fetched. Stylesheets are scanned once
+ * they arrive, so their imports, background images and fonts are fetched
+ * in a following round.
+ */
+class ResourcePrefetcher {
+    private static final int MAX_ROUNDS = 4;
+
+    private static final Pattern CSS_IMPORT = Pattern.compile(
+            "@import\\s+(?:url\\(\\s*)?(['\"]?)([^'\"()\\s;]+)\\1", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CSS_URL = Pattern.compile(
+            "url\\(\\s*(['\"]?)([^'\"()]+)\\1\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private final AbstractUserAgent _userAgent;
+    private final ExecutorService _executor;
+    private final long _timeout;
+
+    private final Set _seen = new HashSet();
+
+    /**
+     * @param timeout the longest time, in milliseconds, to wait for all
+     * resources to arrive; resources still outstanding are left to be
+     * loaded on demand
+     */
+    public ResourcePrefetcher(AbstractUserAgent userAgent, ExecutorService executor, long timeout) {
+        _userAgent = userAgent;
+        _executor = executor;
+        _timeout = timeout;
+    }
+
+    /**
+     * Fetches the resources of <code>doc</code>, returning the number
+     * fetched successfully.
+     */
+    public int prefetch(Document doc) {
+        List pending = new ArrayList();
+        Element root = doc.getDocumentElement();
+        if (root != null) {
+            collect(root, pending);
+        }
+
+        long deadline = System.currentTimeMillis() + _timeout;
+        int result = 0;
+        for (int round = 0; round < MAX_ROUNDS && ! pending.isEmpty(); round++) {
+            List tasks = new ArrayList(pending.size());
+            for (Iterator i = pending.iterator(); i.hasNext(); ) {
+                tasks.add(new Fetch((Reference) i.next()));
+            }
+            pending = new ArrayList();
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+
+            List futures;
+            try {
+                futures = _executor.invokeAll(tasks, remaining, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                Reference ref = ((Fetch) tasks.get(i)).ref;
+                String css;
+                try {
+                    css = (String) ((Future) futures.get(i)).get();
+                } catch (CancellationException e) {
+                    XRLog.load(Level.FINE, "Gave up prefetching " + ref.uri);
+                    continue;
+                } catch (ExecutionException e) {
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return result;
+                }
+                result++;
+                if (css != null) {
+                    collectFromCSS(css, ref.uri, pending);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void collect(Element e, List result) {
+        String name = e.getNodeName();
+        int colon = name.indexOf(':');
+        if (colon != -1) {
+            name = name.substring(colon + 1);
+        }
+        name = name.toLowerCase(Locale.ENGLISH);
+
+        if (name.equals("link")) {
+            String rel = e.getAttribute("rel").toLowerCase(Locale.ENGLISH);
+            if (rel.indexOf("stylesheet") != -1 && rel.indexOf("alternate") == -1) {
+                add(resolve(null, e.getAttribute("href")), true, result);
+            }
+        } else if (name.equals("img")) {
+            add(resolve(null, e.getAttribute("src")), false, result);
+        } else if (name.equals("style")) {
+            collectFromCSS(e.getTextContent(), null, result);
+        }
+
+        String style = e.getAttribute("style");
+        if (style.length() > 0) {
+            collectFromCSS(style, null, result);
+        }
+
+        for (Iterator i = e.getChildNodes().iterator(); i.hasNext(); ) {
+            Node child = (Node) i.next();
+            if (child instanceof Element) {
+                collect((Element) child, result);
+            }
+        }
+    }
+
+    /**
+     * Collects the references in a stylesheet. Relative references are
+     * resolved against the stylesheet's URI, or against the document if the
+     * stylesheet is embedded (<code>baseUri</code> is <code>null</code>).
+     */
+    private void collectFromCSS(String css, String baseUri, List result) {
+        Set imports = new HashSet();
+        Matcher m = CSS_IMPORT.matcher(css);
+        while (m.find()) {
+            String uri = resolve(baseUri, m.group(2));
+            imports.add(uri);
+            add(uri, true, result);
+        }
+
+        m = CSS_URL.matcher(css);
+        while (m.find()) {
+            String uri = resolve(baseUri, m.group(2));
+            if (! imports.contains(uri)) {
+                add(uri, false, result);
+            }
+        }
+    }
+
+    private String resolve(String baseUri, String uri) {
+        uri = uri.trim();
+        // An empty or fragment-only reference resolves to the base URI itself
+        if (uri.length() == 0 || uri.startsWith("#")) {
+            return null;
+        }
+        if (baseUri == null) {
+            return _userAgent.resolveURI(uri);
+        }
+        try {
+            return new URL(new URL(baseUri), uri).toExternalForm();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private void add(String uri, boolean stylesheet, List result) {
+        if (uri == null || uri.startsWith("data:")) {
+            return;
+        }
+        if (_seen.add(uri)) {
+            result.add(new Reference(uri, stylesheet));
+        }
+    }
+
+    private static class Reference {
+        final String uri;
+        final boolean stylesheet;
+
+        Reference(String uri, boolean stylesheet) {
+            this.uri = uri;
+            this.stylesheet = stylesheet;
+        }
+    }
+
+    /**
+     * Fetches one resource, returning its text if it is a stylesheet so it
+     * can be scanned in turn.
+     */
+    private class Fetch implements Callable {
+        final Reference ref;
+
+        Fetch(Reference ref) {
+            this.ref = ref;
+        }
+
+        public Object call() throws Exception {
+            byte[] data = _userAgent.prefetch(ref.uri);
+            if (data == null) {
+                throw new Exception("Unable to prefetch " + ref.uri);
+            }
+            if (ref.stylesheet) {
+                // Decoded with the charset the stylesheet was served with
+                Reader reader = _userAgent.openPrefetchedReader(ref.uri);
+                if (reader == null) {
+                    return null;
+                }
+                try {
+                    StringBuffer css = new StringBuffer(data.length);
+                    char[] buf = new char[4096];
+                    int i;
+                    while ((i = reader.read(buf)) != -1) {
+                        css.append(buf, 0, i);
+                    }
+                    return css.toString();
+                } finally {
+                    reader.close();
+                }
+            }
+            return null;
+        }
+    }
+}
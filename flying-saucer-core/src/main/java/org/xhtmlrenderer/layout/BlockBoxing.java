@@ -28,8 +28,14 @@ import java.util.RandomAccess;
 
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.event.MetricsListener;
+import org.xhtmlrenderer.newtable.TableCellBox;
+import org.xhtmlrenderer.newtable.TableSectionBox;
+import org.xhtmlrenderer.render.AnonymousBlockBox;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
 import org.xhtmlrenderer.render.LineBox;
 import org.xhtmlrenderer.render.PageBox;
 
@@ -40,7 +46,9 @@ import org.xhtmlrenderer.render.PageBox;
  * If we're in a paged media environment, the various page break related
  * properties are also handled here.  If a rule is violated, the affected run
  * of boxes will be layed out again.  If the rule still cannot be satisfied,
- * the rule will be dropped.
+ * the rule will be dropped.  Boxes of the run whose layout cannot depend on
+ * where page breaks fall are moved into place instead of being laid out
+ * again.
  */
 public class BlockBoxing {
     private static final int NO_PAGE_TRIM = -1;
@@ -69,6 +77,12 @@ public class BlockBoxing {
             BlockBox child = (BlockBox) i.next();
             offset++;
 
+            if (isPastLayoutLimit(c, block, childOffset) &&
+                    mayStopBefore(c, block, offset, relayoutDataList, previousChildBox, child)) {
+                stopLayout(c, block, offset);
+                break;
+            }
+
             RelayoutData relayoutData = null;
 
             boolean mayCheckKeepTogether = false;
@@ -88,8 +102,7 @@ public class BlockBoxing {
             }
 
             layoutBlockChild(
-                    c, block, child, false, childOffset, NO_PAGE_TRIM,
-                    relayoutData == null ? null : relayoutData.getLayoutState());
+                    c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData);
 
             if (c.isPrint()) {
                 boolean needPageClear = child.isNeedPageClear();
@@ -100,14 +113,16 @@ public class BlockBoxing {
                     if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
                         c.restoreStateForRelayout(relayoutData.getLayoutState());
                         child.reset(c);
+                        c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT, 1);
                         layoutBlockChild(
-                                c, block, child, true, childOffset, pageCount, relayoutData.getLayoutState());
+                                c, block, child, true, childOffset, pageCount, relayoutData);
 
                         if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
                             c.restoreStateForRelayout(relayoutData.getLayoutState());
                             child.reset(c);
+                            c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT, 1);
                             layoutBlockChild(
-                                    c, block, child, false, childOffset, pageCount, relayoutData.getLayoutState());
+                                    c, block, child, false, childOffset, pageCount, relayoutData);
                         }
                     }
                 }
@@ -153,6 +168,106 @@ public class BlockBoxing {
         }
     }
 
+    /**
+     * Returns whether a child starting at <code>childOffset</code> would
+     * start after the last page to lay out or, on screen, below the height
+     * to lay out.
+     */
+    private static boolean isPastLayoutLimit(LayoutContext c, BlockBox block, int childOffset) {
+        if (! c.isPrint()) {
+            int maxHeight = c.getMaxHeight();
+            return maxHeight > 0 && block.getAbsY() + childOffset >= maxHeight;
+        }
+        int maxPages = c.getMaxPages();
+        if (maxPages <= 0) {
+            return false;
+        }
+        List pages = c.getRootLayer().getPages();
+        return pages.size() >= maxPages &&
+                block.getAbsY() + childOffset >= ((PageBox) pages.get(maxPages - 1)).getBottom();
+    }
+
+    /**
+     * Returns whether layout may stop before <code>child</code> without
+     * changing the content before it. Layout goes on inside table cells,
+     * floats, inline blocks and positioned boxes, whose position isn't
+     * final yet, inside relatively positioned boxes, which may hold
+     * positioned content placed against their full height, inside boxes
+     * whose position depends on their height through page-break-avoid rules
+     * or that follow a run of such boxes, before a row spanned into by an
+     * earlier cell or a repeated table footer, and inside a run of
+     * page-break-avoid boxes.
+     */
+    private static boolean mayStopBefore(LayoutContext c, BlockBox block, int offset,
+            RelayoutDataList relayoutDataList, BlockBox previous, BlockBox child) {
+        if (c.getNoPageBreak() > 0) {
+            return false;
+        }
+        for (Box b = block; b != null; b = b.getParent()) {
+            if (b instanceof LineBox || b instanceof TableCellBox) {
+                return false;
+            }
+            CalculatedStyle style = b.getStyle();
+            if (style.isFloated() || style.isPositioned() ||
+                    style.isInlineBlock() || style.isRunning()) {
+                return false;
+            }
+            if (! c.isPrint()) {
+                continue;
+            }
+            // Cutting the box short would change where these rules put it
+            if (style.isAvoidPageBreakInside() || style.isKeepWithInline() ||
+                    isInPageBreakAvoidRun(b)) {
+                return false;
+            }
+            // A run is laid out again after the box following it
+            Box sibling = b.getPreviousSibling();
+            if (sibling != null && isInPageBreakAvoidRun(sibling)) {
+                return false;
+            }
+        }
+        if (block instanceof TableSectionBox && ((TableSectionBox) block).isSpannedInto(offset)) {
+            return false;
+        }
+        if (child instanceof TableSectionBox && ((TableSectionBox) child).isFooter()) {
+            return false;
+        }
+        if (previous != null && c.isPrint()) {
+            if (relayoutDataList.get(offset - 1).isInRun() ||
+                    previous.getStyle().isIdent(CSSName.PAGE_BREAK_AFTER, IdentValue.AVOID) ||
+                    child.getStyle().isIdent(CSSName.PAGE_BREAK_BEFORE, IdentValue.AVOID)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInPageBreakAvoidRun(Box box) {
+        if (box.getStyle().isIdent(CSSName.PAGE_BREAK_BEFORE, IdentValue.AVOID) ||
+                box.getStyle().isIdent(CSSName.PAGE_BREAK_AFTER, IdentValue.AVOID)) {
+            return true;
+        }
+        Box previous = box.getPreviousSibling();
+        Box next = box.getNextSibling();
+        return (previous != null &&
+                    previous.getStyle().isIdent(CSSName.PAGE_BREAK_AFTER, IdentValue.AVOID)) ||
+                (next != null &&
+                    next.getStyle().isIdent(CSSName.PAGE_BREAK_BEFORE, IdentValue.AVOID));
+    }
+
+    /**
+     * Drops the children of <code>block</code> from <code>offset</code> on,
+     * which haven't been laid out, and marks the layout as stopped.
+     */
+    private static void stopLayout(LayoutContext c, BlockBox block, int offset) {
+        Layer layer = c.getRootLayer();
+        if (layer.getFirstDroppedBox() == null) {
+            layer.setFirstDroppedBox(block.getChild(offset));
+        }
+        block.dropChildren(offset);
+        layer.setIncomplete(true);
+    }
+
     private static RelayoutRunResult processPageBreakAvoidRun(final LayoutContext c, final BlockBox block,
                                                               List localChildren, int offset,
                                                               RelayoutDataList relayoutDataList, RelayoutData relayoutData,
@@ -175,11 +290,11 @@ public class BlockBoxing {
                 int runStart = relayoutDataList.getRunStart(runEnd);
                 if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
                     result.setChanged(true);
-                    block.resetChildren(c, runStart, offset);
+                    c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT_RUN, 1);
                     result.setChildOffset(relayoutRun(c, localChildren, block,
                             relayoutDataList, runStart, offset, true));
                     if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
-                        block.resetChildren(c, runStart, offset);
+                        c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT_RUN, 1);
                         result.setChildOffset(relayoutRun(c, localChildren, block,
                                 relayoutDataList, runStart, offset, false));
                     }
@@ -229,6 +344,16 @@ public class BlockBoxing {
         // reset height of parent as it is used for Y-setting of children
         block.setHeight(childOffset);
 
+        // Boxes which may only be moved into place keep their layout, the
+        // others are reset before any box is laid out again
+        int[][] extents = new int[end - start + 1][];
+        for (int i = start; i <= end; i++) {
+            BlockBox child = (BlockBox) localChildren.get(i);
+            extents[i - start] = getMovableExtent(c, localChildren, i, relayoutDataList.get(i));
+            if (extents[i - start] == null) {
+                child.reset(c);
+            }
+        }
 
         for (int i = start; i <= end; i++) {
             BlockBox child = (BlockBox) localChildren.get(i);
@@ -240,35 +365,22 @@ public class BlockBoxing {
             //TODO:handle run-ins. For now, treat them as blocks
 
             c.restoreStateForRelayout(relayoutData.getLayoutState());
+            int delta = childOffset - relayoutData.getChildOffset();
             relayoutData.setChildOffset(childOffset);
-            boolean mayCheckKeepTogether = false;
-            if ((child.getStyle().isAvoidPageBreakInside() || child.getStyle().isKeepWithInline())
-                    && c.isMayCheckKeepTogether()) {
-                mayCheckKeepTogether = true;
-                c.setMayCheckKeepTogether(false);
-            }
-            layoutBlockChild(
-                    c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData.getLayoutState());
 
-            if (mayCheckKeepTogether) {
-                c.setMayCheckKeepTogether(true);
-                boolean tryToAvoidPageBreak =
-                    child.getStyle().isAvoidPageBreakInside() && child.crossesPageBreak(c);
-                boolean needPageClear = child.isNeedPageClear();
-                boolean keepWithInline = child.isNeedsKeepWithInline(c);
-                if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
-                    c.restoreStateForRelayout(relayoutData.getLayoutState());
+            int[] extent = extents[i - start];
+            if (extent != null && isLayoutStateEmpty(c) &&
+                    fitsOnPage(c, extent[0] + delta, extent[1] + delta)) {
+                // Laying the box out again would give the same result
+                child.setY(childOffset);
+                child.calcCanvasLocation();
+                child.calcChildLocations();
+                c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT_AVOIDED, 1);
+            } else {
+                if (extent != null) {
                     child.reset(c);
-                    layoutBlockChild(
-                            c, block, child, true, childOffset, pageCount, relayoutData.getLayoutState());
-
-                    if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
-                        c.restoreStateForRelayout(relayoutData.getLayoutState());
-                        child.reset(c);
-                        layoutBlockChild(
-                                c, block, child, false, childOffset, pageCount, relayoutData.getLayoutState());
-                    }
                 }
+                layoutRunChild(c, block, child, childOffset, pageCount, relayoutData);
             }
 
             c.getRootLayer().ensureHasPage(c, child);
@@ -293,18 +405,177 @@ public class BlockBoxing {
         return childOffset;
     }
 
+    private static void layoutRunChild(
+            LayoutContext c, BlockBox block, BlockBox child,
+            int childOffset, int pageCount, RelayoutData relayoutData) {
+        boolean mayCheckKeepTogether = false;
+        if ((child.getStyle().isAvoidPageBreakInside() || child.getStyle().isKeepWithInline())
+                && c.isMayCheckKeepTogether()) {
+            mayCheckKeepTogether = true;
+            c.setMayCheckKeepTogether(false);
+        }
+        layoutBlockChild(
+                c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData);
+
+        if (mayCheckKeepTogether) {
+            c.setMayCheckKeepTogether(true);
+            boolean tryToAvoidPageBreak =
+                child.getStyle().isAvoidPageBreakInside() && child.crossesPageBreak(c);
+            boolean needPageClear = child.isNeedPageClear();
+            boolean keepWithInline = child.isNeedsKeepWithInline(c);
+            if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
+                c.restoreStateForRelayout(relayoutData.getLayoutState());
+                child.reset(c);
+                c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT, 1);
+                layoutBlockChild(
+                        c, block, child, true, childOffset, pageCount, relayoutData);
+
+                if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
+                    c.restoreStateForRelayout(relayoutData.getLayoutState());
+                    child.reset(c);
+                    c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT, 1);
+                    layoutBlockChild(
+                            c, block, child, false, childOffset, pageCount, relayoutData);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the top and bottom of a child and its content if it was last
+     * laid out at its current position and may be moved elsewhere instead of
+     * being laid out again, or <code>null</code> if it must be laid out
+     * again. The first and last child may have had their margins collapsed
+     * with those of the parent, which laying them out again undoes, so they
+     * are always laid out again.
+     */
+    private static int[] getMovableExtent(
+            LayoutContext c, List localChildren, int index, RelayoutData relayoutData) {
+        BlockBox child = (BlockBox) localChildren.get(index);
+        // A box layout stopped in may have left out content it now needs
+        if (! relayoutData.isMovable() || c.getRootLayer().isIncomplete() || child.getX() != 0 ||
+                child.getY() != relayoutData.getChildOffset() ||
+                ! hasBlockChild(localChildren, 0, index) ||
+                ! hasBlockChild(localChildren, index + 1, localChildren.size()) ||
+                c.getBlockFormattingContext().getFloatManager().hasFloats()) {
+            return null;
+        }
+        int[] extent = new int[] { child.getAbsY(), child.getAbsY() };
+        if (! isMovable(child, extent) || ! fitsOnPage(c, extent[0], extent[1])) {
+            return null;
+        }
+        return extent;
+    }
+
+    private static boolean hasBlockChild(List localChildren, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (! (localChildren.get(i) instanceof AnonymousBlockBox)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether <code>box</code> can be moved up or down, onto another
+     * page even, without being laid out again: nothing in it depends on
+     * where page breaks fall and nothing outside of it depends on where it
+     * is. Inline blocks are not reset with the lines holding them, so laying
+     * them out again may differ from their first layout; boxes holding them
+     * are always laid out again. <code>extent</code> is widened to take in
+     * the top and bottom of the box and its content.
+     */
+    public static boolean isMovable(Box box, int[] extent) {
+        if (box.getLayer() != null || ! isMovable(box.getStyle())) {
+            return false;
+        }
+        extent[0] = Math.min(extent[0], box.getAbsY());
+        extent[1] = Math.max(extent[1], box.getAbsY() + box.getHeight());
+
+        if (box instanceof LineBox) {
+            if (((LineBox) box).getNonFlowContent().size() > 0) {
+                return false;
+            }
+        } else if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof BlockBox ||
+                        (child instanceof Box && ! isMovable((Box) child, extent))) {
+                    return false;
+                }
+            }
+        } else if (box instanceof BlockBox) {
+            BlockBox block = (BlockBox) box;
+            if (block.getChildrenContentType() == BlockBox.CONTENT_INLINE &&
+                    block.getInlineContent() != null) {
+                for (Iterator i = block.getInlineContent().iterator(); i.hasNext(); ) {
+                    Styleable child = (Styleable) i.next();
+                    if (child instanceof BlockBox || ! isMovable(child.getStyle())) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < box.getChildCount(); i++) {
+            if (! isMovable(box.getChild(i), extent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMovable(CalculatedStyle style) {
+        return ! style.requiresLayer() && ! style.isFloated() && ! style.isRunning() &&
+                ! style.isForcePageBreakBefore() && ! style.isForcePageBreakAfter() &&
+                ! style.isKeepWithInline() && ! style.isDynamicAutoWidth() &&
+                ! style.isPaginateTable() && ! style.isCollapseBorders() &&
+                style.isIdent(CSSName.PAGE, IdentValue.AUTO) &&
+                ! style.isIdent(CSSName.FS_PAGE_SEQUENCE, IdentValue.START);
+    }
+
+    /**
+     * Returns whether content from <code>top</code> to <code>bottom</code>
+     * fits on one page without touching its top edge, where a box would
+     * lose its top margin, or its bottom edge, where content is pushed to
+     * the next page.
+     */
+    private static boolean fitsOnPage(LayoutContext c, int top, int bottom) {
+        PageBox page = c.getRootLayer().getPage(c, top);
+        return page != null && top > page.getTop() + c.getExtraSpaceTop() &&
+                bottom < page.getBottom() - c.getExtraSpaceBottom();
+    }
+
+    /**
+     * Returns whether no list marker, first line or first letter style is
+     * pending and no named page is in effect, so laying out a box neither
+     * depends on nor changes the state saved for relayout.
+     */
+    private static boolean isLayoutStateEmpty(LayoutContext c) {
+        return c.getCurrentMarkerData() == null && c.getPageName() == null &&
+                ! c.getFirstLinesTracker().hasStyles() &&
+                ! c.getFirstLettersTracker().hasStyles();
+    }
+
     private static void layoutBlockChild(
             LayoutContext c, BlockBox parent, BlockBox child,
-            boolean needPageClear, int childOffset, int trimmedPageCount, LayoutState layoutState) {
+            boolean needPageClear, int childOffset, int trimmedPageCount, RelayoutData relayoutData) {
+        boolean movable = relayoutData != null && isLayoutStateEmpty(c);
         layoutBlockChild0(c, parent, child, needPageClear, childOffset, trimmedPageCount);
         BreakAtLineContext bContext = child.calcBreakAtLineContext(c);
         if (bContext != null) {
+            movable = false;
             c.setBreakAtLineContext(bContext);
-            c.restoreStateForRelayout(layoutState);
+            c.restoreStateForRelayout(relayoutData.getLayoutState());
             child.reset(c);
+            c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT, 1);
             layoutBlockChild0(c, parent, child, needPageClear, childOffset, trimmedPageCount);
             c.setBreakAtLineContext(null);
         }
+        if (relayoutData != null) {
+            relayoutData.setMovable(movable && isLayoutStateEmpty(c));
+        }
     }
 
     private static void layoutBlockChild0(LayoutContext c, BlockBox parent, BlockBox child,
@@ -438,6 +709,7 @@ public class BlockBoxing {
         private boolean _inRun;
 
         private int _childOffset;
+        private boolean _movable;
 
         public RelayoutData() {
         }
@@ -482,6 +754,18 @@ public class BlockBoxing {
             _childOffset = childOffset;
         }
 
+        /**
+         * Whether the box was last laid out with no state pending before
+         * or after, so that its layout may be moved.
+         */
+        public boolean isMovable() {
+            return _movable;
+        }
+
+        public void setMovable(boolean movable) {
+            _movable = movable;
+        }
+
         public int getListIndex() {
             return _listIndex;
         }
@@ -48,6 +48,7 @@ import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.dom.Node;
 import org.xhtmlrenderer.dom.TextNode;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.newtable.TableBox;
 import org.xhtmlrenderer.newtable.TableCellBox;
 import org.xhtmlrenderer.newtable.TableColumn;
@@ -108,6 +109,25 @@ public class BoxBuilder {
     }
 
     public static void createChildren(LayoutContext c, BlockBox parent) {
+        SharedContext sharedContext = c.getSharedContext();
+        if (sharedContext.getMetricsListener() == null) {
+            createChildren0(c, parent);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean outermost = c.enterBoxBuilding() == 0;
+        try {
+            createChildren0(c, parent);
+        } finally {
+            c.exitBoxBuilding();
+        }
+        if (outermost) {
+            sharedContext.phaseCompleted(MetricsListener.PHASE_BOX_BUILDING, start);
+        }
+    }
+
+    private static void createChildren0(LayoutContext c, BlockBox parent) {
         List children = new ArrayList();
 
         ChildBoxInfo info = new ChildBoxInfo();
@@ -45,6 +45,10 @@ public class BoxCollector {
     private final List<BoxRangeData> blockRangeData = new ArrayList();
     private final List<BoxRangeData> inlineRangeData = new ArrayList();
 
+    // Holds the clip edge of each box tested, so collecting allocates no
+    // rectangles
+    private final Rectangle scratchBounds = new Rectangle();
+
     public BoxCollector() {
 
     }
@@ -94,7 +98,7 @@ public class BoxCollector {
         for (int i = 0; i < content.size(); i++) {
             Box b = (Box)content.get(i);
 
-            if (b.intersects(c, clip)) {
+            if (intersects(c, clip, b)) {
                 if (b instanceof InlineLayoutBox) {
                     inlineContent.add(b);
                 } else {
@@ -123,6 +127,10 @@ public class BoxCollector {
         return clip.intersects(bounds);
     }
 
+    private boolean intersects(CssContext c, Shape clip, Box box) {
+        return clip == null || box.intersects(c, clip, scratchBounds);
+    }
+
     public void collect(CssContext c, Shape clip, Layer layer, Box container) {
 
         if (layer != container.getContainingLayer()) {
@@ -142,14 +150,14 @@ public class BoxCollector {
         boolean intersectsAggregateBounds = intersectsAggregateBounds(clip, container);
         if (container instanceof LineBox) {
             if (intersectsAggregateBounds ||
-                    (container.getPaintingInfo() == null && container.intersects(c, clip))) {
+                    (container.getPaintingInfo() == null && intersects(c, clip, container))) {
                 inlineContent.add(container);
                 ((LineBox)container).addAllChildren(inlineContent, layer);
             }
         } else {
             if (container.getLayer() == null || !(container instanceof BlockBox)) {
                 if (intersectsAggregateBounds ||
-                        (container.getPaintingInfo() == null && container.intersects(c, clip))) {
+                        (container.getPaintingInfo() == null && intersects(c, clip, container))) {
                     blockContent.add(container);
                     if (container.getStyle().isTable() && c instanceof RenderingContext) {  // HACK
                         TableBox table = (TableBox)container;
@@ -203,12 +211,12 @@ public class BoxCollector {
             Box master, Box container) {
 
         if (container instanceof LineBox) {
-            if (container.intersects(c, clip)) {
+            if (intersects(c, clip, container)) {
                 return true;
             }
         } else {
             if (container.getLayer() == null || !(container instanceof BlockBox)) {
-                if (container.intersects(c, clip)) {
+                if (intersects(c, clip, container)) {
                     return true;
                 }
             }
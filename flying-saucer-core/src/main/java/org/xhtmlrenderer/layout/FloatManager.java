@@ -44,6 +44,13 @@ public class FloatManager {
 
     private Box _master;
 
+    // Scratch state for the float queries, which are made for every line
+    // laid out beside a float and would otherwise allocate a few objects
+    // each time. Created on first use, as most block formatting contexts
+    // never hold a float, and kept in one object as float managers stay
+    // with the box tree.
+    private Scratch _scratch;
+
     public void floatBox(LayoutContext c, Layer layer, BlockFormattingContext bfc, BlockBox box) {
         if (box.getStyle().isFloatedLeft()) {
             position(c, bfc, box, LEFT);
@@ -103,6 +110,21 @@ public class FloatManager {
 
     }
 
+    private Scratch getScratch() {
+        if (_scratch == null) {
+            _scratch = new Scratch();
+        }
+        return _scratch;
+    }
+
+    private Rectangle getBounds() {
+        return getScratch().bounds;
+    }
+
+    private Rectangle getFloatBounds() {
+        return getScratch().floatBounds;
+    }
+
     private List getFloats(int direction) {
         return direction == LEFT ? _leftFloats : _rightFloats;
     }
@@ -193,7 +215,7 @@ public class FloatManager {
             BoxOffset floater = (BoxOffset) i.next();
 
             Rectangle bounds = floater.getBox().getMarginEdge(
-                    cssCtx, -floater.getX(), -floater.getY());
+                    cssCtx, -floater.getX(), -floater.getY(), getFloatBounds());
             if (bounds.y + bounds.height > result) {
                 result = bounds.y + bounds.height;
             }
@@ -214,12 +236,12 @@ public class FloatManager {
     private boolean overlaps(CssContext cssCtx, BlockFormattingContext bfc,
                              BlockBox current, List floats) {
         Point offset = bfc.getOffset();
-        Rectangle bounds = current.getMarginEdge(cssCtx, -offset.x, -offset.y);
+        Rectangle bounds = current.getMarginEdge(cssCtx, -offset.x, -offset.y, getBounds());
 
         for (Iterator i = floats.iterator(); i.hasNext();) {
             BoxOffset floater = (BoxOffset) i.next();
             Rectangle floaterBounds = floater.getBox().getMarginEdge(cssCtx,
-                    -floater.getX(), -floater.getY());
+                    -floater.getX(), -floater.getY(), getFloatBounds());
 
             if (floaterBounds.intersects(bounds)) {
                 return true;
@@ -268,6 +290,13 @@ public class FloatManager {
         }
     }
 
+    /**
+     * Returns whether any box has been floated in this formatting context.
+     */
+    public boolean hasFloats() {
+        return _leftFloats.size() > 0 || _rightFloats.size() > 0;
+    }
+
     public void removeFloat(BlockBox floater) {
         removeFloat(floater, getFloats(LEFT));
         removeFloat(floater, getFloats(RIGHT));
@@ -307,8 +336,10 @@ public class FloatManager {
 
     public int getNextLineBoxDelta(CssContext cssCtx, BlockFormattingContext bfc,
             LineBox line, int containingBlockContentWidth) {
-        BoxDistance left = getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth, _leftFloats, LEFT);
-        BoxDistance right = getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth, _rightFloats, RIGHT);
+        BoxDistance left = getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth,
+                _leftFloats, LEFT);
+        BoxDistance right = getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth,
+                _rightFloats, RIGHT);
 
         int leftDelta;
         int rightDelta;
@@ -330,30 +361,35 @@ public class FloatManager {
 
     private int calcDelta(CssContext cssCtx, LineBox line, BoxDistance boxDistance) {
         BlockBox floated = boxDistance.getBox();
-        Rectangle rect = floated.getBorderEdge(floated.getAbsX(), floated.getAbsY(), cssCtx);
+        Rectangle rect = floated.getBorderEdge(
+                floated.getAbsX(), floated.getAbsY(), cssCtx, getBounds());
         int bottom = rect.y + rect.height;
         return bottom - line.getAbsY();
     }
 
     public int getLeftFloatDistance(CssContext cssCtx, BlockFormattingContext bfc,
             LineBox line, int containingBlockContentWidth) {
-        return getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth, _leftFloats, LEFT).getDistance();
+        return getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth,
+                _leftFloats, LEFT).getDistance();
     }
 
     public int getRightFloatDistance(CssContext cssCtx, BlockFormattingContext bfc,
             LineBox line, int containingBlockContentWidth) {
-        return getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth, _rightFloats, RIGHT).getDistance();
+        return getFloatDistance(cssCtx, bfc, line, containingBlockContentWidth,
+                _rightFloats, RIGHT).getDistance();
     }
 
     private BoxDistance getFloatDistance(CssContext cssCtx, BlockFormattingContext bfc,
                                  LineBox line, int containingBlockContentWidth,
                                  List floatsList, int direction) {
         if (floatsList.size() == 0) {
-            return new BoxDistance(null, 0);
+            return BoxDistance.NONE;
         }
+        BoxDistance result = direction == LEFT ?
+                getScratch().leftDistance : getScratch().rightDistance;
 
         Point offset = bfc.getOffset();
-        Rectangle lineBounds = line.getMarginEdge(cssCtx, -offset.x, -offset.y);
+        Rectangle lineBounds = line.getMarginEdge(cssCtx, -offset.x, -offset.y, getBounds());
         lineBounds.width = containingBlockContentWidth;
 
         int farthestOver = direction == LEFT ? lineBounds.x : lineBounds.x + lineBounds.width;
@@ -362,7 +398,8 @@ public class FloatManager {
         BlockBox farthestOverBox = null;
         for (int i = 0; i < floatsList.size(); i++) {
             BoxOffset floater = (BoxOffset) floatsList.get(i);
-            Rectangle fr = floater.getBox().getMarginEdge(cssCtx, -floater.getX(), -floater.getY());
+            Rectangle fr = floater.getBox().getMarginEdge(
+                    cssCtx, -floater.getX(), -floater.getY(), getFloatBounds());
             if (lineBounds.intersects(fr)) {
                 if (direction == LEFT && fr.x + fr.width > farthestOver) {
                     farthestOver = fr.x + fr.width;
@@ -374,9 +411,9 @@ public class FloatManager {
         }
 
         if (direction == LEFT) {
-            return new BoxDistance(farthestOverBox, farthestOver - lineBounds.x);
+            return result.set(farthestOverBox, farthestOver - lineBounds.x);
         } else {
-            return new BoxDistance(farthestOverBox,lineBounds.x + lineBounds.width - farthestOver);
+            return result.set(farthestOverBox, lineBounds.x + lineBounds.width - farthestOver);
         }
     }
 
@@ -393,9 +430,10 @@ public class FloatManager {
         List<FloatBounds> intersectedAreas = new ArrayList(3);
         for (final BoxOffset floater : floatsList) {
             final Box box = floater.getBox();
-            final Rectangle marginEdge = box.getMarginEdge(cssCtx, -floater.getX(), -floater.getY());
+            final Rectangle marginEdge = box.getMarginEdge(
+                    cssCtx, -floater.getX(), -floater.getY(), getFloatBounds());
             if (bounds.intersects(marginEdge)) {
-                intersectedAreas.add(new FloatBounds(marginEdge));
+                intersectedAreas.add(new FloatBounds(new Rectangle(marginEdge)));
             }
         }
         return intersectedAreas;
@@ -528,7 +566,7 @@ public class FloatManager {
 
         final Point offset = bfc.getOffset();
         final Rectangle lineBounds =
-                            line.getMarginEdge(cssCtx, -offset.x, -offset.y);
+                            line.getMarginEdge(cssCtx, -offset.x, -offset.y, getBounds());
 
         applyLineHeightHack(cssCtx, line, lineBounds);
 
@@ -608,12 +646,15 @@ public class FloatManager {
     }
 
     private static class BoxDistance {
+        static final BoxDistance NONE = new BoxDistance();
+
         private BlockBox _box;
         private int _distance;
 
-        public BoxDistance(BlockBox box, int distance) {
+        BoxDistance set(BlockBox box, int distance) {
             _box = box;
             _distance = distance;
+            return this;
         }
 
         BlockBox getBox() {
@@ -625,6 +666,13 @@ public class FloatManager {
         }
     }
 
+    private static class Scratch {
+        final Rectangle bounds = new Rectangle();
+        final Rectangle floatBounds = new Rectangle();
+        final BoxDistance leftDistance = new BoxDistance();
+        final BoxDistance rightDistance = new BoxDistance();
+    }
+
     public interface FloatOperation {
         public void operate(Box floater);
     }
@@ -58,6 +58,9 @@ import org.xhtmlrenderer.render.ViewportBox;
  * rendering to a paged output device, the layer is also responsible for laying
  * out absolute content (which is layed out after its containing block has
  * completed layout).
+ * <p>
+ * Like the box tree, layers take no locks; see {@link Box} for handing a laid
+ * out tree to another thread.
  */
 public class Layer {
     public static final short PAGED_MODE_SCREEN = 1;
@@ -79,6 +82,8 @@ public class Layer {
 
     private List _pages;
     private PageBox _lastRequestedPage = null;
+    private boolean _incomplete;
+    private Box _firstDroppedBox;
 
     private Set _pageSequences;
     private List _sortedPageSequences;
@@ -128,7 +133,7 @@ public class Layer {
         return _master;
     }
 
-    public synchronized void addChild(Layer layer) {
+    public void addChild(Layer layer) {
         if (_children == null) {
             _children = new ArrayList();
         }
@@ -290,7 +295,10 @@ public class Layer {
     }
 
     public Dimension getPaintingDimension(LayoutContext c) {
-        return calcPaintingDimension(c).getOuterMarginCorner();
+        Dimension result = new Dimension(
+                getMaster().calcPaintingInfo(c, true).getOuterMarginCorner());
+        addPaintingDimension(c, result);
+        return result;
     }
 
     /**
@@ -602,10 +610,11 @@ public class Layer {
         }
     }
 
-    private PaintingInfo calcPaintingDimension(LayoutContext c) {
-        getMaster().calcPaintingInfo(c, true);
-        PaintingInfo result = (PaintingInfo)getMaster().getPaintingInfo().copyOf();
-
+    /**
+     * Grows <code>result</code> to take in the outer margin corners of the
+     * absolutely positioned layers below this one.
+     */
+    private void addPaintingDimension(LayoutContext c, Dimension result) {
         List children = getChildren();
         for (int i = 0; i < children.size(); i++) {
             Layer child = (Layer)children.get(i);
@@ -613,12 +622,11 @@ public class Layer {
             if (child.getMaster().getStyle().isFixed()) {
                 continue;
             } else if (child.getMaster().getStyle().isAbsolute()) {
-                PaintingInfo info = child.calcPaintingDimension(c);
-                moveIfGreater(result.getOuterMarginCorner(), info.getOuterMarginCorner());
+                PaintingInfo info = child.getMaster().calcPaintingInfo(c, true);
+                moveIfGreater(result, info.getOuterMarginCorner());
+                child.addPaintingDimension(c, result);
             }
         }
-
-        return result;
     }
 
     public void positionChildren(LayoutContext c) {
@@ -663,23 +671,20 @@ public class Layer {
         _fixedBackground = b;
     }
 
-    public synchronized List getChildren() {
+    public List getChildren() {
         return _children == null ? Collections.EMPTY_LIST : Collections.unmodifiableList(_children);
     }
 
     private void remove(Layer layer) {
         boolean removed = false;
 
-        // access to _children is synchronized
-        synchronized (this) {
-            if (_children != null) {
-                for (Iterator i = _children.iterator(); i.hasNext(); ) {
-                    Layer child = (Layer)i.next();
-                    if (child == layer) {
-                        removed = true;
-                        i.remove();
-                        break;
-                    }
+        if (_children != null) {
+            for (Iterator i = _children.iterator(); i.hasNext(); ) {
+                Layer child = (Layer)i.next();
+                if (child == layer) {
+                    removed = true;
+                    i.remove();
+                    break;
                 }
             }
         }
@@ -794,6 +799,32 @@ public class Layer {
         _pages = pages;
     }
 
+    /**
+     * Returns whether layout stopped at the page limit set by
+     * {@link LayoutContext#setMaxPages(int)}, or the height limit set by
+     * {@link LayoutContext#setMaxHeight(int)}, before the end of the
+     * document, or pages after it were dropped.
+     */
+    public boolean isIncomplete() {
+        return _incomplete;
+    }
+
+    public void setIncomplete(boolean incomplete) {
+        _incomplete = incomplete;
+    }
+
+    /**
+     * Returns the first box left out when layout stopped at its limit, or
+     * null if it didn't stop.
+     */
+    public Box getFirstDroppedBox() {
+        return _firstDroppedBox;
+    }
+
+    public void setFirstDroppedBox(Box firstDroppedBox) {
+        _firstDroppedBox = firstDroppedBox;
+    }
+
     public boolean isLastPage(PageBox pageBox) {
         return _pages.get(_pages.size()-1) == pageBox;
     }
@@ -954,6 +985,18 @@ public class Layer {
         }
     }
 
+    /**
+     * Drops the pages after the first <code>maxPages</code>, if layout was
+     * limited to them (0 means it wasn't), and notes that the document
+     * goes on if there were more.
+     */
+    public void limitPageCount(int maxPages) {
+        if (maxPages > 0 && getPages().size() > maxPages) {
+            trimPageCount(maxPages);
+            _incomplete = true;
+        }
+    }
+
     public void assignPagePaintingPositions(CssContext cssCtx, short mode) {
         assignPagePaintingPositions(cssCtx, mode, 0);
     }
@@ -1233,6 +1276,20 @@ public class Layer {
         }
     }
 
+    /**
+     * Returns whether {@link #getRelativePageCount(RenderingContext)} is the
+     * final page count, which it isn't for the last page sequence laid out
+     * when layout stopped early.
+     */
+    public boolean isRelativePageCountComplete(RenderingContext c) {
+        if (! _incomplete) {
+            return true;
+        }
+        List sequences = getSortedPageSequences();
+        return sequences != null &&
+                getPageSequenceStart(c, sequences, c.getPage()) < sequences.size() - 1;
+    }
+
     private int getPageSequenceStart(RenderingContext c, List sequences, PageBox page) {
         for (int i = sequences.size() - 1; i >= 0; i--) {
             BlockBox start = (BlockBox)sequences.get(i);
@@ -19,6 +19,7 @@
  */
 package org.xhtmlrenderer.layout;
 
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.text.BreakIterator;
 import java.util.ArrayList;
@@ -37,12 +38,16 @@ import org.xhtmlrenderer.css.parser.CounterData;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.extend.*;
+import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
 import org.xhtmlrenderer.render.MarkerData;
 import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
+import org.xhtmlrenderer.swing.Java2DFontContext;
 
 
 /**
@@ -77,6 +82,9 @@ public class LayoutContext implements CssContext {
 
     private int _noPageBreak = 0;
 
+    private int _maxPages;
+    private int _maxHeight;
+
     private Layer _rootDocumentLayer;
     private PageBox _page;
 
@@ -84,6 +92,18 @@ public class LayoutContext implements CssContext {
 
     private BreakAtLineContext _breakAtLineContext;
 
+    private int _boxBuildingDepth;
+
+    // Set on copies made by copyForParallelLayout()
+    private boolean _parallelCopy;
+    private ReplacedElementFactory _replacedElementFactory;
+    // Box ids added (with their box) and removed (with null) by such a copy,
+    // in order
+    private List _deferredBoxIds;
+    // Boxes registered (TRUE) and unregistered (FALSE) with resources by
+    // such a copy, in order
+    private List _deferredResourceBoxes;
+
     // Map of resource URI strings to boxes that contain those resources,
     private final Map<String, List<BoxLoadInfo>> _resourcesToBoxes =
                                                                 new HashMap();
@@ -116,6 +136,98 @@ public class LayoutContext implements CssContext {
 
         _firstLines = new StyleTracker();
         _firstLetters = new StyleTracker();
+
+        _maxPages = sharedContext.getMaxPages();
+    }
+
+    private LayoutContext(LayoutContext c) {
+        _sharedContext = c._sharedContext;
+        _rootLayer = c._rootLayer;
+        _rootDocumentLayer = c._rootDocumentLayer;
+        _page = c._page;
+
+        _firstLines = c._firstLines.copyOf();
+        _firstLetters = c._firstLetters.copyOf();
+        _currentMarkerData = c._currentMarkerData;
+
+        _bfcs = new LinkedList(c._bfcs);
+        _layers = new LinkedList(c._layers);
+
+        _fontContext = c._fontContext;
+        if (_fontContext instanceof Java2DFontContext) {
+            // Measuring text changes the rendering hints of the graphics
+            Graphics2D g = ((Java2DFontContext) _fontContext).getGraphics();
+            _fontContext = new Java2DFontContext((Graphics2D) g.create());
+        }
+
+        _extraSpaceTop = c._extraSpaceTop;
+        _extraSpaceBottom = c._extraSpaceBottom;
+        _counterContextMap = c._counterContextMap;
+        _pendingPageName = c._pendingPageName;
+        _pageName = c._pageName;
+        _noPageBreak = c._noPageBreak;
+        _maxPages = c._maxPages;
+        _maxHeight = c._maxHeight;
+        _mayCheckKeepTogether = c._mayCheckKeepTogether;
+        _breakAtLineContext = c._breakAtLineContext;
+
+        _parallelCopy = true;
+        _replacedElementFactory = new SynchronizedReplacedElementFactory(
+                _sharedContext.getReplacedElementFactory());
+        _deferredBoxIds = new ArrayList();
+        _deferredResourceBoxes = new ArrayList();
+    }
+
+    /**
+     * Returns a copy of this context to lay out boxes with on another thread,
+     * alongside boxes laid out with other copies, such as the cells of a
+     * table row. The boxes must already be built, and their layout must not
+     * depend on or change the layout of the other boxes: the copy has its
+     * own formatting context and layer stacks and its own font context, but
+     * shares everything else. Box ids and boxes registered with resources
+     * through the copy take effect when it is passed to
+     * {@link #mergeParallelCopy(LayoutContext)}.
+     */
+    public LayoutContext copyForParallelLayout() {
+        return new LayoutContext(this);
+    }
+
+    /**
+     * Applies the box ids and resource boxes registered with a copy made by
+     * {@link #copyForParallelLayout()} and releases the copy. Copies must be
+     * merged in the order the boxes they laid out would have been laid out
+     * in with this context.
+     */
+    public void mergeParallelCopy(LayoutContext copy) {
+        for (Iterator i = copy._deferredBoxIds.iterator(); i.hasNext(); ) {
+            Object[] entry = (Object[]) i.next();
+            if (entry[1] != null) {
+                addBoxId((String) entry[0], (Box) entry[1]);
+            } else {
+                removeBoxId((String) entry[0]);
+            }
+        }
+        copy._deferredBoxIds.clear();
+        for (Iterator i = copy._deferredResourceBoxes.iterator(); i.hasNext(); ) {
+            Object[] entry = (Object[]) i.next();
+            if (entry[2] == Boolean.TRUE) {
+                registerBoxWithResource((BoxLoadInfo) entry[1], (String) entry[0]);
+            } else {
+                unregisterBoxWithResource((BoxLoadInfo) entry[1], (String) entry[0]);
+            }
+        }
+        copy._deferredResourceBoxes.clear();
+        if (copy._fontContext != _fontContext && copy._fontContext instanceof Java2DFontContext) {
+            ((Java2DFontContext) copy._fontContext).getGraphics().dispose();
+        }
+    }
+
+    /**
+     * Returns whether this context is a copy made by
+     * {@link #copyForParallelLayout()}.
+     */
+    public boolean isParallelCopy() {
+        return _parallelCopy;
     }
 
     public void reInit(boolean keepLayers) {
@@ -169,6 +281,19 @@ public class LayoutContext implements CssContext {
         }
     }
 
+    /**
+     * Box building is recursive. Returns the nesting depth of box building
+     * runs before this one started, so the caller can tell whether it is the
+     * outermost run.
+     */
+    int enterBoxBuilding() {
+        return _boxBuildingDepth++;
+    }
+
+    void exitBoxBuilding() {
+        _boxBuildingDepth--;
+    }
+
     public LayoutState copyStateForRelayout() {
         LayoutState result = new LayoutState();
 
@@ -264,11 +389,19 @@ public class LayoutContext implements CssContext {
 
     /* code to keep track of all of the id'd boxes */
     public void addBoxId(String id, Box box) {
-        _sharedContext.addBoxId(id, box);
+        if (_parallelCopy) {
+            _deferredBoxIds.add(new Object[] { id, box });
+        } else {
+            _sharedContext.addBoxId(id, box);
+        }
     }
 
     public void removeBoxId(String id) {
-        _sharedContext.removeBoxId(id);
+        if (_parallelCopy) {
+            _deferredBoxIds.add(new Object[] { id, null });
+        } else {
+            _sharedContext.removeBoxId(id);
+        }
     }
 
     public boolean isInteractive() {
@@ -320,6 +453,9 @@ public class LayoutContext implements CssContext {
     }
 
     public ReplacedElementFactory getReplacedElementFactory() {
+        if (_replacedElementFactory != null) {
+            return _replacedElementFactory;
+        }
         return _sharedContext.getReplacedElementFactory();
     }
 
@@ -393,6 +529,10 @@ public class LayoutContext implements CssContext {
      * @param uri
      */
     public void registerBoxWithResource(BoxLoadInfo box, String uri) {
+        if (_parallelCopy) {
+            _deferredResourceBoxes.add(new Object[] { uri, box, Boolean.TRUE });
+            return;
+        }
         List<BoxLoadInfo> boxes = _resourcesToBoxes.get(uri);
         if (boxes == null) {
             boxes = new ArrayList(6);
@@ -409,6 +549,10 @@ public class LayoutContext implements CssContext {
      * @param uri
      */
     public void unregisterBoxWithResource(BoxLoadInfo box, String uri) {
+        if (_parallelCopy) {
+            _deferredResourceBoxes.add(new Object[] { uri, box, Boolean.FALSE });
+            return;
+        }
         List<BoxLoadInfo> boxes = _resourcesToBoxes.get(uri);
         if (boxes != null) {
             boxes.remove(box);
@@ -430,6 +574,45 @@ public class LayoutContext implements CssContext {
         return (boxes == null) ? Collections.EMPTY_LIST : new ArrayList(boxes);
     }
 
+    /**
+     * Lets the copies of a context used on several threads share a replaced
+     * element factory, which need not be safe to call from more than one
+     * thread at a time.
+     */
+    private static class SynchronizedReplacedElementFactory implements ReplacedElementFactory {
+        private final ReplacedElementFactory _factory;
+
+        public SynchronizedReplacedElementFactory(ReplacedElementFactory factory) {
+            _factory = factory;
+        }
+
+        public ReplacedElement createReplacedElement(
+                LayoutContext c, BlockBox box,
+                UserAgentCallback uac, int cssWidth, int cssHeight) {
+            synchronized (_factory) {
+                return _factory.createReplacedElement(c, box, uac, cssWidth, cssHeight);
+            }
+        }
+
+        public void reset() {
+            synchronized (_factory) {
+                _factory.reset();
+            }
+        }
+
+        public void remove(Element e) {
+            synchronized (_factory) {
+                _factory.remove(e);
+            }
+        }
+
+        public void setFormSubmissionListener(FormSubmissionListener listener) {
+            synchronized (_factory) {
+                _factory.setFormSubmissionListener(listener);
+            }
+        }
+    }
+
     public class CounterContext {
         private Map _counters = new HashMap();
         /**
@@ -551,6 +734,31 @@ public class LayoutContext implements CssContext {
         _pageName = currentPageName;
     }
 
+    public int getMaxPages() {
+        return _maxPages;
+    }
+
+    /**
+     * Sets the number of pages after which a paged layout stops; 0 lays out
+     * the whole document. Starts out as
+     * {@link SharedContext#getMaxPages()}.
+     */
+    public void setMaxPages(int maxPages) {
+        _maxPages = maxPages;
+    }
+
+    public int getMaxHeight() {
+        return _maxHeight;
+    }
+
+    /**
+     * Sets the height after which a continuous layout stops, at the first
+     * block that starts below it; 0 lays out the whole document.
+     */
+    public void setMaxHeight(int maxHeight) {
+        _maxHeight = maxHeight;
+    }
+
     public int getNoPageBreak() {
         return _noPageBreak;
     }
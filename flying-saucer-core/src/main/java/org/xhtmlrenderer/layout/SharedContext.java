@@ -30,9 +30,11 @@ import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.dom.Node;
 import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.newmatch.CascadedStyle;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.EmptyStyle;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.FontContext;
 import org.xhtmlrenderer.extend.FontResolver;
@@ -48,6 +50,7 @@ import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.swing.AWTFontResolver;
 import org.xhtmlrenderer.swing.Java2DTextRenderer;
 import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 
 /**
@@ -96,6 +99,13 @@ public class SharedContext {
     private ReplacedElementFactory replacedElementFactory;
     private Rectangle temp_canvas;
 
+    private MetricsListener metricsListener;
+
+    private int parallelTableThreads =
+            Configuration.valueAsInt("xr.layout.parallel-tables.threads", 0);
+
+    private int maxPages;
+
     public SharedContext() {
     }
 
@@ -604,20 +614,111 @@ public class SharedContext {
                 parentCalculatedStyle = getStyle((Element)parent, false);
             }
 
-            result = parentCalculatedStyle.deriveStyle(getCss().getCascadedStyle(e, restyle));
+            if (metricsListener != null) {
+                long start = System.nanoTime();
+                CascadedStyle cascaded = getCss().getCascadedStyle(e, restyle);
+                boolean cached = parentCalculatedStyle.isChildStyleCached(cascaded);
+                result = parentCalculatedStyle.deriveStyle(cascaded);
+                phaseCompleted(MetricsListener.PHASE_CASCADE, start);
+                count(MetricsListener.COUNT_ELEMENTS_STYLED, 1);
+                count(MetricsListener.COUNT_STYLE_CACHE_MISS, 1);
+                count(cached ? MetricsListener.COUNT_CHILD_STYLE_CACHE_HIT :
+                        MetricsListener.COUNT_CHILD_STYLE_CACHE_MISS, 1);
+            } else {
+                result = parentCalculatedStyle.deriveStyle(getCss().getCascadedStyle(e, restyle));
+            }
 
             styleMap.put(e, result);
+        } else if (metricsListener != null) {
+            count(MetricsListener.COUNT_STYLE_CACHE_HIT, 1);
         }
 
         return result;
     }
 
+    /**
+     * Clears the state which belongs to the current document (styles, ids,
+     * selection and replaced elements). Fonts, stylesheets and the user
+     * agent's caches are left alone so they stay warm for the next document.
+     */
     public void reset() {
        styleMap = null;
        idMap = null;
+       selection_start = null;
+       selection_end = null;
+       selection_start_x = 0;
+       selection_end_x = 0;
+       in_selection = false;
        replacedElementFactory.reset();
     }
 
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Installs a listener which receives timings and counts from the
+     * layout and rendering pipeline, or <code>null</code> (the default)
+     * to turn metrics off.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public int getParallelTableThreads() {
+        return parallelTableThreads;
+    }
+
+    /**
+     * Sets the number of threads, the calling thread included, that measure
+     * the cells of large tables and, on screen, lay out the cells of each
+     * table row. Tables whose cells can't be laid out independently of each
+     * other are always laid out on the calling thread, and the layout is the
+     * same either way. 0 or 1, the default unless
+     * <code>xr.layout.parallel-tables.threads</code> is set, lays out all
+     * tables on the calling thread.
+     */
+    public void setParallelTableThreads(int parallelTableThreads) {
+        this.parallelTableThreads = parallelTableThreads;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Sets the number of pages after which a paged layout stops, for
+     * instance to preview the first page of a long document: layout stops
+     * before the first block that would start after the last of these
+     * pages, so the content after it is neither built nor laid out, and
+     * the pages after it are dropped. <code>counter(pages)</code> then
+     * shows the number of pages laid out followed by "+". 0, the default,
+     * lays out the whole document.
+     */
+    public void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Reports the time elapsed since <code>start</code> (a value from
+     * {@link System#nanoTime()}) for the given phase to the metrics listener,
+     * if there is one.
+     */
+    public void phaseCompleted(String phase, long start) {
+        if (metricsListener != null) {
+            metricsListener.phaseCompleted(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Increments a counter on the metrics listener, if there is one.
+     */
+    public void count(String counter, long amount) {
+        if (metricsListener != null) {
+            metricsListener.count(counter, amount);
+        }
+    }
+
     public ReplacedElementFactory getReplacedElementFactory() {
         return replacedElementFactory;
     }
@@ -0,0 +1,284 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.newtable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.newmatch.CascadedStyle;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+/**
+ * Measures the cells of a table, and lays out the cells of each of its rows,
+ * on a shared pool of threads. Each thread works on a run of cells with its
+ * own copy of the layout context (see
+ * {@link LayoutContext#copyForParallelLayout()}); the calling thread takes
+ * the first run. The copies are merged in the order of the cells, so the
+ * layout is the same as when the cells are laid out one after another.
+ * <p>
+ * That only holds if no cell affects another, so a table qualifies only if
+ * none of its content is floated, positioned, a list item, in or containing
+ * a form, uses counters or generated content, and none of its cells is
+ * cleared or clips its content. All cell boxes are built before any work is
+ * handed out, as building boxes isn't safe on more than one thread. Cells
+ * holding tables are laid out whole by one thread.
+ */
+class ParallelCellLayout {
+    private static final int MIN_CELLS =
+            Configuration.valueAsInt("xr.layout.parallel-tables.min-cells", 64);
+
+    private static final String[] PSEUDO_ELEMENTS = {
+        "before", "after", "first-line", "first-letter"
+    };
+
+    private static ExecutorService _executor;
+
+    private ParallelCellLayout() {
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (_executor == null) {
+            // Each layout uses as many threads as its context asks for
+            _executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("Table Layout-" + threadNumber.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return _executor;
+    }
+
+    /**
+     * Returns whether the cells of <code>table</code> can be laid out in
+     * parallel and, if so, builds the boxes of their content.
+     */
+    public static boolean prepare(LayoutContext c, TableBox table) {
+        if (c.getSharedContext().getParallelTableThreads() < 2) {
+            return false;
+        }
+
+        Element e = table.getElement();
+        if (e == null) {
+            return false;
+        }
+        for (Node n = e.getParentNode(); n instanceof Element; n = n.getParentNode()) {
+            if (c.getNamespaceHandler().isFormElement((Element) n)) {
+                return false;
+            }
+        }
+        int[] cells = new int[1];
+        if (! isIndependent(c, e, cells) || cells[0] < MIN_CELLS) {
+            return false;
+        }
+
+        for (Iterator i = getCells(table).iterator(); i.hasNext(); ) {
+            ensureDescendants(c, (BlockBox) i.next());
+        }
+        return true;
+    }
+
+    private static boolean isIndependent(LayoutContext c, Element parent, int[] cells) {
+        for (Iterator i = parent.getChildNodes().iterator(); i.hasNext(); ) {
+            Node n = (Node) i.next();
+            if (! (n instanceof Element)) {
+                continue;
+            }
+            Element e = (Element) n;
+            CalculatedStyle style = c.getSharedContext().getStyle(e);
+            if (style.isDisplayNone()) {
+                continue;
+            }
+            if (style.isFloated() || style.requiresLayer() || style.isRunning() ||
+                    style.isListItem() || style.getCounterReset() != null ||
+                    style.getCounterIncrement() != null ||
+                    c.getNamespaceHandler().isFormElement(e)) {
+                return false;
+            }
+            if (style.isIdent(CSSName.DISPLAY, IdentValue.TABLE_CELL)) {
+                if (style.isCleared() || ! style.isOverflowVisible()) {
+                    return false;
+                }
+                cells[0]++;
+            }
+            for (int j = 0; j < PSEUDO_ELEMENTS.length; j++) {
+                CascadedStyle pe = c.getCss().getPseudoElementStyle(e, PSEUDO_ELEMENTS[j]);
+                if (pe != null && pe != CascadedStyle.emptyCascadedStyle) {
+                    return false;
+                }
+            }
+            if (! isIndependent(c, e, cells)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void ensureDescendants(LayoutContext c, BlockBox box) {
+        box.ensureChildren(c);
+        List children;
+        if (box.getChildrenContentType() == BlockBox.CONTENT_INLINE) {
+            children = box.getInlineContent();
+        } else if (box.getChildrenContentType() == BlockBox.CONTENT_BLOCK) {
+            children = box.getChildren();
+        } else {
+            return;
+        }
+        for (Iterator i = children.iterator(); i.hasNext(); ) {
+            Object child = i.next();
+            if (child instanceof BlockBox) {
+                ensureDescendants(c, (BlockBox) child);
+            }
+        }
+    }
+
+    private static List getCells(TableBox table) {
+        List result = new ArrayList();
+        for (Iterator i = table.getChildIterator(); i.hasNext(); ) {
+            TableSectionBox section = (TableSectionBox) i.next();
+            for (Iterator j = section.getChildIterator(); j.hasNext(); ) {
+                result.addAll(((TableRowBox) j.next()).getChildren());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the minimum and maximum widths of all cells of
+     * <code>table</code>.
+     */
+    public static void calcMinMaxWidths(LayoutContext c, TableBox table) {
+        run(c, getCells(table), new CellTask() {
+            public void run(LayoutContext c, TableCellBox cell) {
+                cell.calcMinMaxWidth(c);
+            }
+        });
+    }
+
+    /**
+     * Lays out the cells of <code>row</code>.
+     */
+    public static void layoutCells(LayoutContext c, final TableRowBox row) {
+        run(c, row.getChildren(), new CellTask() {
+            public void run(LayoutContext c, TableCellBox cell) {
+                row.layoutCell(c, cell, 0);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the state of <code>c</code> lets the cells of a row be
+     * laid out in parallel: the first cell would otherwise take a pending
+     * list marker or first line style from the others.
+     */
+    public static boolean isRowIndependent(LayoutContext c) {
+        return c.getCurrentMarkerData() == null &&
+                ! c.getFirstLinesTracker().hasStyles() &&
+                ! c.getFirstLettersTracker().hasStyles();
+    }
+
+    private static void run(LayoutContext c, List cells, final CellTask task) {
+        int parts = Math.min(c.getSharedContext().getParallelTableThreads(), cells.size());
+        if (parts < 2) {
+            for (Iterator i = cells.iterator(); i.hasNext(); ) {
+                task.run(c, (TableCellBox) i.next());
+            }
+            return;
+        }
+
+        LayoutContext[] copies = new LayoutContext[parts];
+        Future[] futures = new Future[parts];
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < parts; i++) {
+                final List run = cells.subList(
+                        i * cells.size() / parts, (i + 1) * cells.size() / parts);
+                final LayoutContext copy = c.copyForParallelLayout();
+                copies[i] = copy;
+                Runnable runnable = new Runnable() {
+                    public void run() {
+                        for (Iterator j = run.iterator(); j.hasNext(); ) {
+                            task.run(copy, (TableCellBox) j.next());
+                        }
+                    }
+                };
+                if (i > 0) {
+                    futures[i] = getExecutor().submit(runnable);
+                } else {
+                    futures[i] = new FutureTask(runnable, null);
+                }
+            }
+            ((FutureTask) futures[0]).run();
+        } finally {
+            boolean interrupted = false;
+            for (int i = 0; i < parts; i++) {
+                while (futures[i] != null) {
+                    try {
+                        futures[i].get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        continue;
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause();
+                        }
+                    }
+                    futures[i] = null;
+                }
+                if (copies[i] != null) {
+                    c.mergeParallelCopy(copies[i]);
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new XRRuntimeException(failure.getMessage(), failure);
+        }
+    }
+
+    private interface CellTask {
+        public void run(LayoutContext c, TableCellBox cell);
+    }
+}
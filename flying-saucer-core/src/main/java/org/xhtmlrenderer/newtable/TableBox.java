@@ -70,6 +70,9 @@ public class TableBox extends BlockBox {
     private int _extraSpaceTop;
     private int _extraSpaceBottom;
 
+    // Whether the cells are laid out in parallel, null until decided
+    private Boolean _parallelLayout;
+
     public boolean isMarginAreaRoot() {
         return _marginAreaRoot;
     }
@@ -826,10 +829,28 @@ public class TableBox extends BlockBox {
         super.reset(c);
 
         _contentLimitContainer = null;
+        _parallelLayout = null;
 
         _tableLayout.reset();
     }
 
+    /**
+     * Returns whether the cells of this table are measured, and outside of
+     * paged layout laid out, in parallel. Never so for a table laid out as
+     * part of a parallel layout already.
+     *
+     * @see ParallelCellLayout
+     */
+    boolean isParallelLayout(LayoutContext c) {
+        if (c.isParallelCopy()) {
+            return false;
+        }
+        if (_parallelLayout == null) {
+            _parallelLayout = Boolean.valueOf(ParallelCellLayout.prepare(c, this));
+        }
+        return _parallelLayout.booleanValue();
+    }
+
     protected int getCSSWidth(CssContext c) {
         if (getStyle().isAutoWidth()) {
             return -1;
@@ -1413,6 +1434,9 @@ public class TableBox extends BlockBox {
 
             }
 
+            if (table.isParallelLayout(c)) {
+                ParallelCellLayout.calcMinMaxWidths(c, table);
+            }
             for (int i = 0; i < nEffCols; i++) {
                 recalcColumn(c, i);
             }
@@ -328,7 +328,7 @@ public class TableCellBox extends BlockBox {
     
     public void paintCollapsedBorder(RenderingContext c, int side) {
         c.getOutputDevice().paintCollapsedBorder(
-                c, getCollapsedPaintingBorder(), getCollapsedBorderBounds(c), side);
+                c, getCollapsedPaintingBorder(), getCollapsedBorderBounds(c, new Rectangle()), side);
     }
     
     private Rectangle getContentLimitedBorderEdge(RenderingContext c) {
@@ -767,9 +767,9 @@ public class TableCellBox extends BlockBox {
         return result;
     }
     
-    private Rectangle getCollapsedBorderBounds(CssContext c) {
+    private Rectangle getCollapsedBorderBounds(CssContext c, Rectangle bounds) {
         BorderPropertySet border = getCollapsedPaintingBorder();
-        Rectangle bounds = getPaintingBorderEdge(c);
+        getBorderEdge(getAbsX(), getAbsY(), c, bounds);
         bounds.x -= (int) border.left() / 2;
         bounds.y -= (int) border.top() / 2;
         bounds.width += (int) border.left() / 2 + ((int) border.right() + 1) / 2;
@@ -778,11 +778,11 @@ public class TableCellBox extends BlockBox {
         return bounds;
     }
     
-    public Rectangle getPaintingClipEdge(CssContext c) {
+    public Rectangle getPaintingClipEdge(CssContext c, Rectangle result) {
         if (hasCollapsedPaintingBorder()) {
-            return getCollapsedBorderBounds(c);
+            return getCollapsedBorderBounds(c, result);
         } else {
-            return super.getPaintingClipEdge(c);
+            return super.getPaintingClipEdge(c, result);
         }
     }
     
@@ -197,7 +197,10 @@ public class TableRowBox extends BlockBox {
             section.setNeedCellWidthCalc(false);
         }
         
-        if (getChildrenContentType() != CONTENT_EMPTY) {
+        if (getChildrenContentType() != CONTENT_EMPTY && ! c.isPrint() &&
+                getTable().isParallelLayout(c) && ParallelCellLayout.isRowIndependent(c)) {
+            ParallelCellLayout.layoutCells(c, this);
+        } else if (getChildrenContentType() != CONTENT_EMPTY) {
             int cCol = 0;
             for (Iterator i = getChildIterator(); i.hasNext(); ) {
                 TableCellBox cell = (TableCellBox)i.next();
@@ -445,7 +448,7 @@ public class TableRowBox extends BlockBox {
         layoutCell(c, cell, contentStart);
     }
     
-    private void layoutCell(LayoutContext c, TableCellBox cell, int contentStart) {
+    void layoutCell(LayoutContext c, TableCellBox cell, int contentStart) {
         cell.initContainingLayer(c);
         cell.calcCanvasLocation();
         
@@ -105,6 +105,21 @@ public class TableSectionBox extends BlockBox {
         return (TableCellBox)rowData.getRow().get(col);
     }
     
+    /**
+     * Returns whether a cell of an earlier row spans into <code>row</code>.
+     */
+    public boolean isSpannedInto(int row) {
+        if (row >= _grid.size()) return false;
+        List cells = ((RowData)_grid.get(row)).getRow();
+        for (int i = 0; i < cells.size(); i++) {
+            TableCellBox cell = (TableCellBox)cells.get(i);
+            if (cell != null && cell != TableCellBox.SPANNING_CELL && cell.getRow() < row) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private void setCellAt(int row, int col, TableCellBox cell) {
         ((RowData)_grid.get(row)).getRow().set(col, cell);
     }
@@ -81,6 +81,20 @@ public class XHTMLJavaSAXParser implements Parser {
      * @throws java.io.IOException 
      */
     public Document createDocument(InputSource ins) throws IOException {
+        return createDocument(ins, new FSSAXHandler());
+    }
+
+    /**
+     * Parses an XML SAX InputSource into the document of the given handler,
+     * which may be a progressive handler read on another thread while this
+     * parses.
+     * 
+     * @param ins
+     * @param handler
+     * @return 
+     * @throws java.io.IOException 
+     */
+    public Document createDocument(InputSource ins, FSSAXHandler handler) throws IOException {
 
         XMLReader xmlReader = newXMLReader();
         addHandlers(xmlReader);
@@ -89,7 +103,7 @@ public class XHTMLJavaSAXParser implements Parser {
         SAXSource input = new SAXSource(xmlReader, ins);
 
         // Create a flying saucer DOM builder from the SAX input source,
-        Document fsDocument = createDocument(input);
+        Document fsDocument = createDocument(input, handler);
 
         return fsDocument;
     }
@@ -104,14 +118,17 @@ public class XHTMLJavaSAXParser implements Parser {
      * @throws java.io.IOException 
      */
     public Document createDocument(SAXSource saxSource) throws IOException {
+        return createDocument(saxSource, new FSSAXHandler());
+    }
+
+    private Document createDocument(SAXSource saxSource, FSSAXHandler handler)
+            throws IOException {
 
         // Create a flying saucer DOM builder from the SAX input source,
         InputSource source = saxSource.getInputSource();
         XMLReader xmlreader = saxSource.getXMLReader();
         try {
 
-            // Create the SAX handler,
-            FSSAXHandler handler = new FSSAXHandler();
             // Set the content handler in the XML reader,
             xmlreader.setContentHandler(handler);
             // Make sure we receive lexical information (comments)
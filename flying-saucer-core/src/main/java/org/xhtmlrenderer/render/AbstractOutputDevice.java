@@ -52,6 +52,10 @@ public abstract class AbstractOutputDevice implements OutputDevice {
 
     private FontSpecification _fontSpec;
 
+    // The border edge of the box whose border or background is being
+    // painted, kept to avoid allocating a rectangle per box
+    private final Rectangle _borderEdge = new Rectangle();
+
     protected abstract void drawLine(int x1, int y1, int x2, int y2);
     
     public void drawText(RenderingContext c, InlineText inlineText) {
@@ -162,7 +166,8 @@ public abstract class AbstractOutputDevice implements OutputDevice {
             return;
         }
 
-        Rectangle borderBounds = box.getPaintingBorderEdge(c);
+        Rectangle borderBounds = box.getBorderEdge(
+                box.getAbsX(), box.getAbsY(), c, _borderEdge);
 
         BorderPainter.paint(borderBounds, box.getBorderSides(), box.getBorder(c), c, 0, true);
     }
@@ -195,7 +200,8 @@ public abstract class AbstractOutputDevice implements OutputDevice {
             return;
         }
 
-        Rectangle backgroundBounds = box.getPaintingBorderEdge(c);
+        Rectangle backgroundBounds = box.getBorderEdge(
+                box.getAbsX(), box.getAbsY(), c, _borderEdge);
         BorderPropertySet border = box.getStyle().getBorder(c);
         paintBackground0(c, box.getStyle(), backgroundBounds, backgroundBounds, border);
     }
@@ -22,6 +22,7 @@ package org.xhtmlrenderer.render;
 
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,6 +37,7 @@ import org.xhtmlrenderer.css.style.FSDerivedValue;
 import org.xhtmlrenderer.css.style.derived.BorderPropertySet;
 import org.xhtmlrenderer.css.style.derived.LengthValue;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.extend.ReplacedElement;
 import org.xhtmlrenderer.layout.BlockBoxing;
@@ -109,6 +111,9 @@ public class BlockBox extends Box implements InlinePaintable {
 
     private boolean _fromCaptionedTable;
 
+    // Children left out when layout stopped at the page limit
+    private List _droppedChildren;
+
     public BlockBox() {
         super();
     }
@@ -267,8 +272,8 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
-    public Rectangle getPaintingClipEdge(CssContext cssCtx) {
-        Rectangle result = super.getPaintingClipEdge(cssCtx);
+    public Rectangle getPaintingClipEdge(CssContext cssCtx, Rectangle result) {
+        super.getPaintingClipEdge(cssCtx, result);
 
         // HACK Don't know how wide the list marker is (or even where it is)
         // so extend the bounding box all the way over to the left edge of
@@ -589,6 +594,10 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public void reset(LayoutContext c) {
+        if (_droppedChildren != null) {
+            addAllChildren(_droppedChildren);
+            _droppedChildren = null;
+        }
         super.reset(c);
         setTopMarginCalculated(false);
         setBottomMarginCalculated(false);
@@ -1123,6 +1132,18 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
+    /**
+     * Takes the children from <code>index</code> on out of this box, as
+     * layout stopped before them at the page limit (see
+     * {@link LayoutContext#setMaxPages(int)}). They are put back when the
+     * box is reset to be laid out again.
+     */
+    public void dropChildren(int index) {
+        List children = getChildren().subList(index, getChildCount());
+        _droppedChildren = new ArrayList(children);
+        children.clear();
+    }
+
     public void ensureChildren(LayoutContext c) {
         if (getChildrenContentType() == CONTENT_UNKNOWN) {
             BoxBuilder.createChildren(c, this);
@@ -1234,16 +1255,85 @@ public class BlockBox extends Box implements InlinePaintable {
                     } else if (tryAgain) {
                         int breakAtLine = cCount - 1 - widows;
 
-                        resetChildren(c);
-                        removeAllChildren();
+                        if (moveLinesToNextPage(c, breakAtLine)) {
+                            c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT_AVOIDED, 1);
+                            satisfyWidowsAndOrphans(c, contentStart, false);
+                        } else {
+                            resetChildren(c);
+                            removeAllChildren();
 
-                        layoutInlineChildren(c, contentStart, breakAtLine, false);
+                            c.getSharedContext().count(MetricsListener.COUNT_RELAYOUT, 1);
+                            layoutInlineChildren(c, contentStart, breakAtLine, false);
+                        }
                     }
                 }
             }
         }
     }
 
+    /**
+     * Moves the lines from <code>breakAtLine</code> on to the next page, as
+     * laying them out again with a page break before that line would, if
+     * none of them depends on where it falls. That is the case when there
+     * are no floats to flow around, no first line, first letter or list
+     * marker is carried over from the first layout, and no line that moves
+     * then crosses a page break itself. Returns false, leaving the lines to
+     * be laid out again, otherwise.
+     */
+    private boolean moveLinesToNextPage(LayoutContext c, int breakAtLine) {
+        int cCount = getChildCount();
+        if (breakAtLine <= 0 || breakAtLine >= cCount ||
+                c.getBlockFormattingContext().getFloatManager().hasFloats() ||
+                ((LineBox) getChild(0)).getMarkerData() != null) {
+            return false;
+        }
+        for (Box b = this; b instanceof BlockBox; b = b.getParent()) {
+            if (((BlockBox) b).getFirstLineStyle() != null ||
+                    ((BlockBox) b).getFirstLetterStyle() != null) {
+                return false;
+            }
+        }
+
+        LineBox lastLine = (LineBox) getChild(cCount - 1);
+        LineBox breakLine = (LineBox) getChild(breakAtLine);
+        LineBox previous = (LineBox) getChild(breakAtLine - 1);
+        if (getHeight() != lastLine.getY() + lastLine.getHeight() ||
+                breakLine.getY() != previous.getY() + previous.getHeight()) {
+            return false;
+        }
+        int[] extent = new int[2];
+        for (int i = 0; i < cCount; i++) {
+            if (! BlockBoxing.isMovable(getChild(i), extent)) {
+                return false;
+            }
+        }
+
+        PageBox page = c.getRootLayer().getFirstPage(c, breakLine);
+        if (page == null || page.getTop() == breakLine.getAbsY()) {
+            return false;
+        }
+        breakLine.forcePageBreakBefore(c, IdentValue.ALWAYS, false);
+        breakLine.calcCanvasLocation();
+        breakLine.calcChildLocations();
+
+        previous = breakLine;
+        for (int i = breakAtLine + 1; i < cCount; i++) {
+            LineBox line = (LineBox) getChild(i);
+            line.setY(previous.getY() + previous.getHeight());
+            line.calcCanvasLocation();
+            page = c.getRootLayer().getFirstPage(c, line);
+            if (line.getAbsY() + line.getHeight() >= page.getBottom() - c.getExtraSpaceBottom() ||
+                    page.getTop() + c.getExtraSpaceTop() > line.getAbsY()) {
+                return false;
+            }
+            line.calcChildLocations();
+            previous = line;
+        }
+        setHeight(lastLine.getY() + lastLine.getHeight());
+
+        return true;
+    }
+
     public int getChildrenContentType() {
         return _childrenContentType;
     }
@@ -47,6 +47,18 @@ import org.xhtmlrenderer.layout.PaintingInfo;
 import org.xhtmlrenderer.layout.Styleable;
 import org.xhtmlrenderer.util.XRLog;
 
+/**
+ * A node of the box tree built from a document and laid out, then painted,
+ * by a {@link LayoutContext} and a {@link RenderingContext}.
+ * <p>
+ * A box tree, with its {@link Layer layers}, is not thread safe and takes no
+ * locks: it belongs to the thread that builds and lays it out. To paint it,
+ * or otherwise read it, on another thread, hand over the finished tree
+ * through something that publishes it safely, such as a synchronized or
+ * volatile field (as {@link org.xhtmlrenderer.swing.RootPanel#getRootBox()}
+ * does), a <code>Future</code> or a concurrent queue, and don't lay it out
+ * again while it is in use there.
+ */
 public abstract class Box implements Styleable {
     protected static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
@@ -250,11 +262,11 @@ public abstract class Box implements Styleable {
 
     public static final int DUMP_LAYOUT = 1;
 
-    public synchronized int getState() {
+    public int getState() {
         return _state;
     }
 
-    public synchronized void setState(int state) {
+    public void setState(int state) {
         _state = state;
     }
 
@@ -290,15 +302,33 @@ public abstract class Box implements Styleable {
     }
 
     public Rectangle getMarginEdge(int left, int top, CssContext cssCtx, int tx, int ty) {
+        return getMarginEdge(left, top, cssCtx, tx, ty, new Rectangle());
+    }
+
+    /**
+     * Stores the margin edge in <code>result</code> rather than allocating a
+     * new rectangle, for loops that ask for the edges of many boxes.
+     * Subclasses with a different margin edge override this method.
+     *
+     * @return <code>result</code>
+     */
+    public Rectangle getMarginEdge(int left, int top, CssContext cssCtx, int tx, int ty,
+            Rectangle result) {
         // Note that negative margins can mean this rectangle is inside the border
         // edge, but that's the way it's supposed to work...
-        Rectangle result = new Rectangle(left, top, getWidth(), getHeight());
-        result.translate(tx, ty);
+        result.setBounds(left + tx, top + ty, getWidth(), getHeight());
         return result;
     }
 
     public Rectangle getMarginEdge(CssContext cssCtx, int tx, int ty) {
-        return getMarginEdge(getX(), getY(), cssCtx, tx, ty);
+        return getMarginEdge(cssCtx, tx, ty, new Rectangle());
+    }
+
+    /**
+     * @see #getMarginEdge(int, int, CssContext, int, int, Rectangle)
+     */
+    public Rectangle getMarginEdge(CssContext cssCtx, int tx, int ty, Rectangle result) {
+        return getMarginEdge(getX(), getY(), cssCtx, tx, ty, result);
     }
 
     /**
@@ -346,7 +376,18 @@ public abstract class Box implements Styleable {
     }
 
     public Rectangle getPaintingClipEdge(CssContext cssCtx) {
-        return getPaintingBorderEdge(cssCtx);
+        return getPaintingClipEdge(cssCtx, new Rectangle());
+    }
+
+    /**
+     * Stores the painting clip edge in <code>result</code> rather than
+     * allocating a new rectangle. Subclasses with a different clip edge
+     * override this method.
+     *
+     * @return <code>result</code>
+     */
+    public Rectangle getPaintingClipEdge(CssContext cssCtx, Rectangle result) {
+        return getBorderEdge(getAbsX(), getAbsY(), cssCtx, result);
     }
 
     public Rectangle getChildrenClipEdge(RenderingContext c) {
@@ -357,12 +398,33 @@ public abstract class Box implements Styleable {
      * <B>NOTE</B>: This method does not consider any children of this box
      */
     public boolean intersects(CssContext cssCtx, Shape clip) {
-        return clip == null || clip.intersects(getPaintingClipEdge(cssCtx));
+        return clip == null || intersects(cssCtx, clip, new Rectangle());
+    }
+
+    /**
+     * Like {@link #intersects(CssContext, Shape)}, working out the clip edge
+     * in <code>scratch</code> so that testing many boxes allocates nothing.
+     * <code>clip</code> must not be <code>null</code>.
+     */
+    public boolean intersects(CssContext cssCtx, Shape clip, Rectangle scratch) {
+        Rectangle edge = getPaintingClipEdge(cssCtx, scratch);
+        return clip.intersects(edge.x, edge.y, edge.width, edge.height);
     }
 
     public Rectangle getBorderEdge(int left, int top, CssContext cssCtx) {
+        return getBorderEdge(left, top, cssCtx, new Rectangle());
+    }
+
+    /**
+     * Stores the border edge in <code>result</code> rather than allocating a
+     * new rectangle. Subclasses with a different border edge override this
+     * method.
+     *
+     * @return <code>result</code>
+     */
+    public Rectangle getBorderEdge(int left, int top, CssContext cssCtx, Rectangle result) {
         RectPropertySet margin = getMargin(cssCtx);
-        Rectangle result = new Rectangle(left + (int) margin.left(),
+        result.setBounds(left + (int) margin.left(),
                 top + (int) margin.top(),
                 getWidth() - (int) margin.left() - (int) margin.right(),
                 getHeight() - (int) margin.top() - (int) margin.bottom());
@@ -844,11 +906,13 @@ public abstract class Box implements Styleable {
 
         final PaintingInfo result = new PaintingInfo();
 
-        Rectangle bounds = getMarginEdge(getAbsX(), getAbsY(), c, 0, 0);
+        // The margin edge is only needed for its corner, so the same
+        // rectangle goes on to hold the aggregate bounds
+        Rectangle bounds = getMarginEdge(getAbsX(), getAbsY(), c, 0, 0, new Rectangle());
         result.setOuterMarginCorner(
             new Dimension(bounds.x + bounds.width, bounds.y + bounds.height));
 
-        result.setAggregateBounds(getPaintingClipEdge(c));
+        result.setAggregateBounds(getPaintingClipEdge(c, bounds));
 
         if (!getStyle().isOverflowApplies() || getStyle().isOverflowVisible()) {
             calcChildPaintingInfo(c, result, useCache);
@@ -0,0 +1,492 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.render;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.newmatch.PageInfo;
+import org.xhtmlrenderer.css.parser.PropertyValue;
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.extend.FSImage;
+import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.FontResolver;
+import org.xhtmlrenderer.extend.OutputDevice;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.extend.TextRenderer;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+
+/**
+ * Estimates how much heap a laid out box tree retains. The tree is walked
+ * reflectively starting at the root box and every object reached is charged
+ * to a category: its box type, the computed styles, the text of inline
+ * content or the layers. For a paginated tree, boxes and the objects they
+ * own are charged to the page they start on as well.
+ * <p>
+ * Objects which outlive the document or are shared between documents (the
+ * DOM, fonts, images, parsed stylesheets and the contexts) are not counted.
+ * Sizes assume a 64 bit JVM with compressed references, which is close
+ * enough for capacity planning but is not an exact measurement.
+ * <p>
+ * Walking the tree is expensive; this is a diagnostic tool and should not
+ * be used while rendering in production.
+ */
+public class HeapFootprint {
+    public static final String STYLES = "styles";
+    public static final String TEXT = "text";
+    public static final String LAYERS = "layers";
+    public static final String PAGES = "pages";
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+    private static final int MAP_ENTRY = 32;
+
+    private static final Class[] EXCLUDED = new Class[] {
+        Node.class,
+        SharedContext.class,
+        LayoutContext.class,
+        RenderingContext.class,
+        UserAgentCallback.class,
+        FontResolver.class,
+        FontContext.class,
+        TextRenderer.class,
+        ReplacedElementFactory.class,
+        OutputDevice.class,
+        FSFont.class,
+        FSImage.class,
+        IdentValue.class,
+        CSSName.class,
+        PropertyValue.class,
+        PropertyDeclaration.class,
+        PageInfo.class,
+        java.awt.Font.class,
+        java.awt.Image.class,
+        java.lang.ref.Reference.class,
+        Class.class,
+        ClassLoader.class,
+        Thread.class,
+    };
+
+    private static final Map _classInfo = new HashMap();
+
+    private final Map _boxTypes = new TreeMap();
+    private final Entry _styles = new Entry(STYLES);
+    private final Entry _text = new Entry(TEXT);
+    private final Entry _layers = new Entry(LAYERS);
+    private final Entry _pageBoxes = new Entry(PAGES);
+    private final List _pages = new ArrayList();
+
+    private long _totalBytes;
+
+    private HeapFootprint() {
+    }
+
+    /**
+     * Walks the box tree which contains <code>root</code> and returns the
+     * estimated footprint. The tree must not be changed while it is walked.
+     */
+    public static HeapFootprint measure(Box root) {
+        HeapFootprint result = new HeapFootprint();
+        result.walk(root);
+        return result;
+    }
+
+    public long getTotalBytes() {
+        return _totalBytes;
+    }
+
+    /**
+     * Returns an {@link Entry} for each box class found in the tree, keyed
+     * by class name.
+     */
+    public Map getBoxTypes() {
+        return Collections.unmodifiableMap(_boxTypes);
+    }
+
+    public int getBoxCount() {
+        int result = 0;
+        for (Iterator i = _boxTypes.values().iterator(); i.hasNext(); ) {
+            result += ((Entry) i.next()).getCount();
+        }
+        return result;
+    }
+
+    public long getBoxBytes() {
+        long result = 0;
+        for (Iterator i = _boxTypes.values().iterator(); i.hasNext(); ) {
+            result += ((Entry) i.next()).getBytes();
+        }
+        return result;
+    }
+
+    /**
+     * The {@link CalculatedStyle} instances and the derived values they hold.
+     */
+    public Entry getStyles() {
+        return _styles;
+    }
+
+    /**
+     * The {@link InlineText} instances and the strings they hold.
+     */
+    public Entry getText() {
+        return _text;
+    }
+
+    public Entry getLayers() {
+        return _layers;
+    }
+
+    /**
+     * The {@link PageBox} instances themselves. Boxes laid out on a page
+     * are reported by {@link #getPages()}.
+     */
+    public Entry getPageBoxes() {
+        return _pageBoxes;
+    }
+
+    /**
+     * Returns an {@link Entry} per page, in page order, counting the boxes
+     * which start on the page. Empty unless the tree was laid out in paged
+     * mode.
+     */
+    public List getPages() {
+        return Collections.unmodifiableList(_pages);
+    }
+
+    private void walk(Box root) {
+        Box top = root;
+        while (top.getParent() != null) {
+            top = top.getParent();
+        }
+
+        List pages = top.getLayer() == null ? Collections.EMPTY_LIST : top.getLayer().getPages();
+        Map pageIndexes = new IdentityHashMap();
+        for (int i = 0; i < pages.size(); i++) {
+            PageBox page = (PageBox) pages.get(i);
+            pageIndexes.put(page, new Integer(i));
+            _pages.add(new Entry("page " + (i + 1)));
+        }
+
+        Map visited = new IdentityHashMap();
+        List stack = new ArrayList();
+        stack.add(new Item(top, null, -1));
+        visited.put(top, top);
+
+        while (! stack.isEmpty()) {
+            Item item = (Item) stack.remove(stack.size() - 1);
+            Object obj = item.obj;
+
+            Entry entry = item.entry;
+            int page = item.page;
+            boolean owner = true;
+            if (obj instanceof Box) {
+                String name = obj.getClass().getName();
+                entry = (Entry) _boxTypes.get(name);
+                if (entry == null) {
+                    entry = new Entry(name.substring(name.lastIndexOf('.') + 1));
+                    _boxTypes.put(name, entry);
+                }
+                page = findPage(pages, ((Box) obj).getAbsY());
+            } else if (obj instanceof CalculatedStyle) {
+                entry = _styles;
+                page = -1;
+            } else if (obj instanceof InlineText) {
+                entry = _text;
+            } else if (obj instanceof Layer) {
+                entry = _layers;
+                page = -1;
+            } else if (obj instanceof PageBox) {
+                entry = _pageBoxes;
+                page = ((Integer) pageIndexes.get(obj)).intValue();
+            } else {
+                owner = false;
+            }
+
+            long size = sizeOf(obj);
+            entry.add(owner, size);
+            if (page != -1) {
+                ((Entry) _pages.get(page)).add(obj instanceof Box, size);
+            }
+            _totalBytes += size;
+
+            pushReferences(obj, entry, page, visited, stack);
+        }
+    }
+
+    private static int findPage(List pages, int y) {
+        if (pages.isEmpty()) {
+            return -1;
+        }
+        int low = 0;
+        int high = pages.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (((PageBox) pages.get(mid)).getTop() <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static void pushReferences(
+            Object obj, Entry entry, int page, Map visited, List stack) {
+        Class cls = obj.getClass();
+        if (cls.isArray()) {
+            if (! cls.getComponentType().isPrimitive()) {
+                Object[] array = (Object[]) obj;
+                for (int i = 0; i < array.length; i++) {
+                    push(array[i], entry, page, visited, stack);
+                }
+            }
+            return;
+        }
+
+        ClassInfo info = getClassInfo(cls);
+        if (info.opaque) {
+            if (obj instanceof Collection) {
+                for (Iterator i = ((Collection) obj).iterator(); i.hasNext(); ) {
+                    push(i.next(), entry, page, visited, stack);
+                }
+            } else if (obj instanceof Map) {
+                for (Iterator i = ((Map) obj).entrySet().iterator(); i.hasNext(); ) {
+                    Map.Entry e = (Map.Entry) i.next();
+                    push(e.getKey(), entry, page, visited, stack);
+                    push(e.getValue(), entry, page, visited, stack);
+                }
+            }
+        }
+
+        Field[] fields = info.references;
+        for (int i = 0; i < fields.length; i++) {
+            try {
+                push(fields[i].get(obj), entry, page, visited, stack);
+            } catch (IllegalAccessException e) {
+                // Checked when the fields were collected
+            }
+        }
+    }
+
+    private static void push(Object obj, Entry entry, int page, Map visited, List stack) {
+        if (obj == null || visited.containsKey(obj) || isExcluded(obj)) {
+            return;
+        }
+        visited.put(obj, obj);
+        stack.add(new Item(obj, entry, page));
+    }
+
+    private static boolean isExcluded(Object obj) {
+        for (int i = 0; i < EXCLUDED.length; i++) {
+            if (EXCLUDED[i].isInstance(obj)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long sizeOf(Object obj) {
+        Class cls = obj.getClass();
+        if (cls.isArray()) {
+            Class component = cls.getComponentType();
+            int element = component.isPrimitive() ? primitiveSize(component) : REFERENCE;
+            return align(ARRAY_HEADER + (long) Array.getLength(obj) * element);
+        }
+
+        ClassInfo info = getClassInfo(cls);
+        if (info.opaque) {
+            // The backing storage can't be reached, estimate it from the size
+            if (obj instanceof String) {
+                return info.size + align(ARRAY_HEADER + (long) ((String) obj).length() * 2);
+            } else if (obj instanceof Collection) {
+                return info.size + align(ARRAY_HEADER + (long) ((Collection) obj).size() * REFERENCE);
+            } else if (obj instanceof Map) {
+                int size = ((Map) obj).size();
+                return info.size + align(ARRAY_HEADER + (long) size * REFERENCE) + (long) size * MAP_ENTRY;
+            }
+        }
+        return info.size;
+    }
+
+    private static ClassInfo getClassInfo(Class cls) {
+        synchronized (_classInfo) {
+            ClassInfo result = (ClassInfo) _classInfo.get(cls);
+            if (result == null) {
+                result = new ClassInfo(cls);
+                _classInfo.put(cls, result);
+            }
+            return result;
+        }
+    }
+
+    private static int primitiveSize(Class type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public String toString() {
+        StringBuffer result = new StringBuffer();
+        result.append("Estimated heap footprint (64 bit JVM, compressed references)\n");
+        result.append(format("type", "count", "bytes"));
+        for (Iterator i = _boxTypes.values().iterator(); i.hasNext(); ) {
+            result.append(((Entry) i.next()).toString());
+        }
+        result.append(format("all boxes", getBoxCount(), getBoxBytes()));
+        result.append(_styles.toString());
+        result.append(_text.toString());
+        result.append(_layers.toString());
+        if (_pages.size() > 0) {
+            result.append(_pageBoxes.toString());
+        }
+        result.append(format("total", "", String.valueOf(_totalBytes)));
+
+        if (_pages.size() > 0) {
+            result.append("\nBoxes by page\n");
+            result.append(format("page", "boxes", "bytes"));
+            for (Iterator i = _pages.iterator(); i.hasNext(); ) {
+                result.append(((Entry) i.next()).toString());
+            }
+        }
+        return result.toString();
+    }
+
+    private static String format(String name, long count, long bytes) {
+        return format(name, String.valueOf(count), String.valueOf(bytes));
+    }
+
+    private static String format(String name, String count, String bytes) {
+        return String.format("  %-32s %10s %14s%n", new Object[] { name, count, bytes });
+    }
+
+    /**
+     * The number of objects of one kind and the estimated bytes they retain.
+     */
+    public static class Entry {
+        private final String _name;
+        private int _count;
+        private long _bytes;
+
+        Entry(String name) {
+            _name = name;
+        }
+
+        void add(boolean owner, long bytes) {
+            if (owner) {
+                _count++;
+            }
+            _bytes += bytes;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public int getCount() {
+            return _count;
+        }
+
+        public long getBytes() {
+            return _bytes;
+        }
+
+        public String toString() {
+            return format(_name, _count, _bytes);
+        }
+    }
+
+    private static class Item {
+        final Object obj;
+        final Entry entry;
+        final int page;
+
+        Item(Object obj, Entry entry, int page) {
+            this.obj = obj;
+            this.entry = entry;
+            this.page = page;
+        }
+    }
+
+    private static class ClassInfo {
+        final long size;
+        final Field[] references;
+        final boolean opaque;
+
+        ClassInfo(Class cls) {
+            long fields = 0;
+            boolean opaque = false;
+            List references = new ArrayList();
+            for (Class c = cls; c != null; c = c.getSuperclass()) {
+                Field[] declared = c.getDeclaredFields();
+                for (int i = 0; i < declared.length; i++) {
+                    Field f = declared[i];
+                    if (Modifier.isStatic(f.getModifiers())) {
+                        continue;
+                    }
+                    Class type = f.getType();
+                    if (type.isPrimitive()) {
+                        fields += primitiveSize(type);
+                    } else {
+                        fields += REFERENCE;
+                        try {
+                            f.setAccessible(true);
+                            references.add(f);
+                        } catch (RuntimeException e) {
+                            // Not accessible (e.g. JDK internals on a modular
+                            // runtime)
+                            opaque = true;
+                        }
+                    }
+                }
+            }
+            this.size = align(OBJECT_HEADER + fields);
+            this.opaque = opaque;
+            this.references = (Field[]) references.toArray(new Field[references.size()]);
+        }
+    }
+}
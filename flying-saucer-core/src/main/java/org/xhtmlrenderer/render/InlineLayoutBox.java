@@ -301,7 +301,7 @@ public class InlineLayoutBox extends Box implements InlinePaintable {
         return result;
     }
     
-    public Rectangle getBorderEdge(int left, int top, CssContext cssCtx) {
+    public Rectangle getBorderEdge(int left, int top, CssContext cssCtx, Rectangle result) {
         // x, y pins the content area of the box so subtract off top border and padding
         // too
         
@@ -319,7 +319,7 @@ public class InlineLayoutBox extends Box implements InlinePaintable {
         BorderPropertySet border = getBorder(cssCtx);
         RectPropertySet padding = getPadding(cssCtx);
         
-        Rectangle result = new Rectangle(
+        result.setBounds(
                 (int)(left + marginLeft), 
                 (int)(top - border.top() - padding.top()), 
                 (int)(getInlineWidth(cssCtx) - marginLeft - marginRight), 
@@ -327,8 +327,9 @@ public class InlineLayoutBox extends Box implements InlinePaintable {
         return result;
     }
     
-    public Rectangle getMarginEdge(int left, int top, CssContext cssCtx, int tx, int ty) {
-        Rectangle result = getBorderEdge(left, top, cssCtx);
+    public Rectangle getMarginEdge(int left, int top, CssContext cssCtx, int tx, int ty,
+            Rectangle result) {
+        getBorderEdge(left, top, cssCtx, result);
         float marginLeft = 0;
         float marginRight = 0;
         if (_startsHere || _endsHere) {
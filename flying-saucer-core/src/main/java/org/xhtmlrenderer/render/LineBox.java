@@ -114,9 +114,8 @@ public class LineBox extends Box implements InlinePaintable {
         return "LineBox: (" + getAbsX() + "," + getAbsY() + ")->(" + getWidth() + "," + getHeight() + ")";
     }
 
-    public Rectangle getMarginEdge(CssContext cssCtx, int tx, int ty) {
-        Rectangle result = new Rectangle(getX(), getY(), getContentWidth(), getHeight());
-        result.translate(tx, ty);
+    public Rectangle getMarginEdge(CssContext cssCtx, int tx, int ty, Rectangle result) {
+        result.setBounds(getX() + tx, getY() + ty, getContentWidth(), getHeight());
         return result;
     }
 
@@ -303,28 +302,22 @@ public class LineBox extends Box implements InlinePaintable {
         _containsBlockLevelContent = containsBlockLevelContent;
     }
 
-    public boolean intersects(CssContext cssCtx, Shape clip) {
-        return clip == null || (intersectsLine(cssCtx, clip) ||
-            (isContainsBlockLevelContent() && intersectsInlineBlocks(cssCtx, clip)));
+    public boolean intersects(CssContext cssCtx, Shape clip, Rectangle scratch) {
+        return super.intersects(cssCtx, clip, scratch) ||
+            (isContainsBlockLevelContent() && intersectsInlineBlocks(cssCtx, clip));
     }
 
-    private boolean intersectsLine(CssContext cssCtx, Shape clip) {
-        Rectangle result = getPaintingClipEdge(cssCtx);
-        return clip.intersects(result);
-    }
-
-    public Rectangle getPaintingClipEdge(CssContext cssCtx) {
+    public Rectangle getPaintingClipEdge(CssContext cssCtx, Rectangle result) {
         Box parent = getParent();
-        Rectangle result = null;
         if (parent.getStyle().isIdent(
                 CSSName.FS_TEXT_DECORATION_EXTENT, IdentValue.BLOCK) ||
                     getJustificationInfo() != null) {
-            result = new Rectangle(
+            result.setBounds(
                     getAbsX(), getAbsY() + _paintingTop,
                     parent.getAbsX() + parent.getTx() + parent.getContentWidth() - getAbsX(),
                     _paintingHeight);
         } else {
-            result = new Rectangle(
+            result.setBounds(
                     getAbsX(), getAbsY() + _paintingTop, getContentWidth(), _paintingHeight);
         }
         return result;
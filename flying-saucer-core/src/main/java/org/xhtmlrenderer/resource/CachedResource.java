@@ -0,0 +1,148 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.resource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The body of a resource fetched over HTTP together with the headers needed
+ * to decide whether it may be reused. Instances are immutable; the body may
+ * be a memory-mapped file.
+ */
+public class CachedResource {
+    private final String _uri;
+    private final String _contentType;
+    private final String _etag;
+    private final long _lastModified;
+    private final long _expires;
+    private final ByteBuffer _body;
+
+    /**
+     * @param etag the <code>ETag</code> header, or <code>null</code>
+     * @param lastModified the <code>Last-Modified</code> header in
+     * milliseconds, or 0
+     * @param expires the time, in milliseconds, until which the resource
+     * may be used without revalidating it
+     */
+    public CachedResource(String uri, String contentType, String etag,
+            long lastModified, long expires, ByteBuffer body) {
+        _uri = uri;
+        _contentType = contentType;
+        _etag = etag;
+        _lastModified = lastModified;
+        _expires = expires;
+        _body = body.asReadOnlyBuffer();
+    }
+
+    public String getUri() {
+        return _uri;
+    }
+
+    public String getContentType() {
+        return _contentType;
+    }
+
+    public String getETag() {
+        return _etag;
+    }
+
+    public long getLastModified() {
+        return _lastModified;
+    }
+
+    public long getExpires() {
+        return _expires;
+    }
+
+    public boolean isFresh(long now) {
+        return now < _expires;
+    }
+
+    /**
+     * Returns true if the resource can be revalidated with a conditional
+     * request once it is no longer fresh.
+     */
+    public boolean hasValidator() {
+        return _etag != null || _lastModified > 0;
+    }
+
+    /**
+     * Returns a copy of this resource with a new expiry time, after a
+     * conditional request confirmed the body is unchanged.
+     */
+    public CachedResource revalidate(long expires) {
+        return new CachedResource(_uri, _contentType, _etag, _lastModified, expires, _body);
+    }
+
+    public int getLength() {
+        return _body.limit();
+    }
+
+    /**
+     * Returns the body, positioned at its start. The buffer is read-only
+     * and is not shared with other callers.
+     */
+    public ByteBuffer getBody() {
+        return _body.duplicate();
+    }
+
+    public byte[] getBytes() {
+        byte[] result = new byte[_body.limit()];
+        getBody().get(result);
+        return result;
+    }
+
+    public InputStream openStream() {
+        return new ByteBufferInputStream(getBody());
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer _buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        public int read() {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (! _buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, _buffer.remaining());
+            _buffer.get(b, off, len);
+            return len;
+        }
+
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, _buffer.remaining()));
+            _buffer.position(_buffer.position() + skipped);
+            return skipped;
+        }
+
+        public int available() {
+            return _buffer.remaining();
+        }
+    }
+}
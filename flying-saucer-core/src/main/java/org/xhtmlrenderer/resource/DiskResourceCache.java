@@ -0,0 +1,313 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.resource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * A {@link ResourceCache} which keeps resources in a directory, so they are
+ * reused across renderers and across restarts. Each resource is stored as a
+ * body file and a small properties file with its headers, named after a
+ * hash of its URI. Bodies are memory-mapped when read.
+ * <p>
+ * When the bodies take up more than the maximum size, the least recently
+ * used resources are deleted. The directory should not be shared between
+ * processes; within a process, use {@link #getInstance(File, long)}.
+ */
+public class DiskResourceCache implements ResourceCache {
+    private static final String BODY = ".body";
+    private static final String HEADERS = ".headers";
+
+    private static final Map _instances = new HashMap();
+
+    private final File _dir;
+    private final long _maxSize;
+    private long _size;
+
+    /**
+     * @param dir the directory to keep resources in; created if necessary
+     * @param maxSize the most bytes of resource bodies to keep
+     */
+    public DiskResourceCache(File dir, long maxSize) {
+        _dir = dir;
+        _maxSize = maxSize;
+        if (! dir.isDirectory() && ! dir.mkdirs()) {
+            XRLog.load(Level.WARNING, "Unable to create resource cache directory " + dir);
+        }
+        File[] bodies = listBodies();
+        for (int i = 0; i < bodies.length; i++) {
+            _size += bodies[i].length();
+        }
+    }
+
+    /**
+     * Returns the cache kept in a directory, creating it on first use. Caches
+     * in one directory must not be used side by side, as each keeps track of
+     * the size of the directory, so user agents share them through this
+     * method. The maximum size is taken from the first call for a directory.
+     *
+     * @param dir the directory to keep resources in; created if necessary
+     * @param maxSize the most bytes of resource bodies to keep
+     */
+    public static DiskResourceCache getInstance(File dir, long maxSize) {
+        File key;
+        try {
+            key = dir.getCanonicalFile();
+        } catch (IOException e) {
+            key = dir.getAbsoluteFile();
+        }
+        synchronized (_instances) {
+            DiskResourceCache cache = (DiskResourceCache) _instances.get(key);
+            if (cache == null) {
+                cache = new DiskResourceCache(key, maxSize);
+                _instances.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    public File getDirectory() {
+        return _dir;
+    }
+
+    public long getMaxSize() {
+        return _maxSize;
+    }
+
+    /**
+     * Returns the number of bytes of resource bodies currently stored.
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+
+    public synchronized CachedResource get(String uri) {
+        String key = getKey(uri);
+        File body = new File(_dir, key + BODY);
+        File headers = new File(_dir, key + HEADERS);
+        if (! body.isFile() || ! headers.isFile()) {
+            return null;
+        }
+        try {
+            Properties props = load(headers);
+            if (! uri.equals(props.getProperty("uri"))) {
+                return null;
+            }
+            CachedResource result = new CachedResource(
+                    uri,
+                    props.getProperty("content-type"),
+                    props.getProperty("etag"),
+                    Long.parseLong(props.getProperty("last-modified", "0")),
+                    Long.parseLong(props.getProperty("expires", "0")),
+                    map(body));
+            // Recently used resources are evicted last
+            body.setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (IOException e) {
+            XRLog.load(Level.WARNING, "Unable to read cached resource for " + uri + ": " + e.getMessage());
+            remove(uri);
+            return null;
+        } catch (NumberFormatException e) {
+            remove(uri);
+            return null;
+        }
+    }
+
+    public synchronized void put(CachedResource resource) {
+        remove(resource.getUri());
+        if (resource.getLength() > _maxSize) {
+            return;
+        }
+
+        String key = getKey(resource.getUri());
+        File body = new File(_dir, key + BODY);
+        File temp = new File(_dir, key + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                ByteBuffer data = resource.getBody();
+                FileChannel channel = out.getChannel();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } finally {
+                out.close();
+            }
+            if (! temp.renameTo(body)) {
+                throw new IOException("Unable to rename " + temp + " to " + body);
+            }
+            store(resource);
+            _size += resource.getLength();
+        } catch (IOException e) {
+            XRLog.load(Level.WARNING, "Unable to cache resource " + resource.getUri() + ": " + e.getMessage());
+            temp.delete();
+            remove(resource.getUri());
+            return;
+        }
+
+        evict();
+    }
+
+    public synchronized void update(CachedResource resource) {
+        File body = new File(_dir, getKey(resource.getUri()) + BODY);
+        if (body.isFile()) {
+            try {
+                store(resource);
+            } catch (IOException e) {
+                remove(resource.getUri());
+            }
+        }
+    }
+
+    public synchronized void remove(String uri) {
+        String key = getKey(uri);
+        File body = new File(_dir, key + BODY);
+        long length = body.length();
+        if (body.isFile() && body.delete()) {
+            _size -= length;
+        }
+        new File(_dir, key + HEADERS).delete();
+    }
+
+    /**
+     * Deletes all stored resources.
+     */
+    public synchronized void clear() {
+        File[] files = _dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                String name = files[i].getName();
+                if (name.endsWith(BODY) || name.endsWith(HEADERS)) {
+                    files[i].delete();
+                }
+            }
+        }
+        _size = 0;
+    }
+
+    private void evict() {
+        if (_size <= _maxSize) {
+            return;
+        }
+        File[] bodies = listBodies();
+        Arrays.sort(bodies, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long l1 = ((File) o1).lastModified();
+                long l2 = ((File) o2).lastModified();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < bodies.length && _size > _maxSize; i++) {
+            File body = bodies[i];
+            String name = body.getName();
+            long length = body.length();
+            if (body.delete()) {
+                _size -= length;
+                new File(_dir, name.substring(0, name.length() - BODY.length()) + HEADERS).delete();
+            }
+        }
+    }
+
+    private File[] listBodies() {
+        File[] result = _dir.listFiles(new java.io.FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(BODY);
+            }
+        });
+        return result == null ? new File[0] : result;
+    }
+
+    private void store(CachedResource resource) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("uri", resource.getUri());
+        if (resource.getContentType() != null) {
+            props.setProperty("content-type", resource.getContentType());
+        }
+        if (resource.getETag() != null) {
+            props.setProperty("etag", resource.getETag());
+        }
+        props.setProperty("last-modified", Long.toString(resource.getLastModified()));
+        props.setProperty("expires", Long.toString(resource.getExpires()));
+
+        File headers = new File(_dir, getKey(resource.getUri()) + HEADERS);
+        OutputStream out = new FileOutputStream(headers);
+        try {
+            props.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties result = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            result.load(in);
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String getKey(String uri) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(uri.getBytes("UTF-8"));
+            StringBuffer result = new StringBuffer(hash.length * 2);
+            for (int i = 0; i < hash.length; i++) {
+                result.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+                result.append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Fetches HTTP resources through a {@link ResourceCache}, following the
+ * caching rules of HTTP/1.1 for a private cache: fresh resources (per
+ * <code>Cache-Control: max-age</code>, <code>Expires</code> or, failing
+ * those, a heuristic based on <code>Last-Modified</code>) are returned
+ * without a request, stale ones are revalidated with a conditional GET
+ * using their <code>ETag</code> and <code>Last-Modified</code> headers, and
+ * responses marked <code>no-store</code> are never stored.
+ */
+public class HttpResourceLoader {
+    /** Longest time a resource without explicit freshness is used without revalidating it */
+    private static final long MAX_HEURISTIC_FRESHNESS = 24 * 60 * 60 * 1000L;
+
+    private final ResourceCache _cache;
+
+    public HttpResourceLoader(ResourceCache cache) {
+        _cache = cache;
+    }
+
+    public ResourceCache getCache() {
+        return _cache;
+    }
+
+    /**
+     * Returns true if <code>uri</code> is loaded through the cache; other
+     * schemes (files, jars and so on) are cheap to open again.
+     */
+    public static boolean isCacheable(String uri) {
+        String lower = uri.toLowerCase(Locale.ENGLISH);
+        return lower.startsWith("http:") || lower.startsWith("https:");
+    }
+
+    /**
+     * Returns the resource at <code>uri</code>, from the cache if it is
+     * still fresh or the server confirms it is unchanged.
+     *
+     * @throws java.io.FileNotFoundException if the server reports the
+     * resource does not exist
+     * @throws IOException if it could not be fetched
+     */
+    public CachedResource load(String uri) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedResource cached = _cache.get(uri);
+        if (cached != null && cached.isFresh(now)) {
+            return cached;
+        }
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(uri).openConnection();
+        conn.setUseCaches(false);
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                conn.setRequestProperty("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() > 0) {
+                conn.setIfModifiedSince(cached.getLastModified());
+            }
+        }
+
+        int code = conn.getResponseCode();
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            close(conn);
+            CachedResource result = cached.revalidate(getExpires(conn, now));
+            _cache.update(result);
+            return result;
+        }
+
+        byte[] body = read(conn);
+        CachedResource result = new CachedResource(
+                uri, conn.getContentType(), conn.getHeaderField("ETag"),
+                conn.getLastModified(), getExpires(conn, now), ByteBuffer.wrap(body));
+        if (code == HttpURLConnection.HTTP_OK && isStorable(conn)) {
+            _cache.put(result);
+        } else if (cached != null) {
+            _cache.remove(uri);
+        }
+        return result;
+    }
+
+    private static byte[] read(URLConnection conn) throws IOException {
+        InputStream is = conn.getInputStream();
+        try {
+            int length = conn.getContentLength();
+            ByteArrayOutputStream result = new ByteArrayOutputStream(length > 0 ? length : 10240);
+            byte[] buf = new byte[10240];
+            int i;
+            while ((i = is.read(buf)) != -1) {
+                result.write(buf, 0, i);
+            }
+            return result.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void close(HttpURLConnection conn) {
+        try {
+            conn.getInputStream().close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static boolean isStorable(URLConnection conn) {
+        String cacheControl = conn.getHeaderField("Cache-Control");
+        if (cacheControl != null && hasDirective(cacheControl, "no-store")) {
+            return false;
+        }
+        String vary = conn.getHeaderField("Vary");
+        return vary == null || ! vary.trim().equals("*");
+    }
+
+    /**
+     * Returns the time until which the response may be used without
+     * revalidating it.
+     */
+    static long getExpires(URLConnection conn, long now) {
+        String cacheControl = conn.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            if (hasDirective(cacheControl, "no-cache")) {
+                return 0;
+            }
+            String maxAge = getDirective(cacheControl, "max-age");
+            if (maxAge != null) {
+                try {
+                    return now + Long.parseLong(maxAge) * 1000;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        String pragma = conn.getHeaderField("Pragma");
+        if (pragma != null && hasDirective(pragma, "no-cache")) {
+            return 0;
+        }
+
+        long date = conn.getDate();
+        if (date <= 0) {
+            date = now;
+        }
+        if (conn.getHeaderField("Expires") != null) {
+            // An invalid date, such as "0", means already expired
+            long expires = conn.getHeaderFieldDate("Expires", 0);
+            return expires <= 0 ? 0 : now + (expires - date);
+        }
+
+        long lastModified = conn.getLastModified();
+        if (lastModified > 0 && lastModified < date) {
+            return now + Math.min((date - lastModified) / 10, MAX_HEURISTIC_FRESHNESS);
+        }
+        return 0;
+    }
+
+    private static boolean hasDirective(String header, String name) {
+        String[] directives = header.split(",");
+        for (int i = 0; i < directives.length; i++) {
+            String d = directives[i].trim().toLowerCase(Locale.ENGLISH);
+            if (d.equals(name) || d.startsWith(name + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getDirective(String header, String name) {
+        String[] directives = header.split(",");
+        for (int i = 0; i < directives.length; i++) {
+            String d = directives[i].trim();
+            if (d.toLowerCase(Locale.ENGLISH).startsWith(name + "=")) {
+                String value = d.substring(name.length() + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+}
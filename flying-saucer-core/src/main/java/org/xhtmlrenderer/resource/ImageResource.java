@@ -68,6 +68,7 @@ public class ImageResource extends AbstractResource {
 
     private final String _imageUri;
     private FSImage _img;
+    private volatile Dimension _intrinsicSize;
 
     // Lock when setting/accessing the image.
     private final Object IMG_LOCK = new Object();
@@ -135,6 +136,22 @@ public class ImageResource extends AbstractResource {
         }
     }
 
+    /**
+     * Sets the size of an image that is still loading, as read from its
+     * header, so that it can be laid out before it is decoded.
+     */
+    public void setIntrinsicSize(Dimension size) {
+        _intrinsicSize = size;
+    }
+
+    /**
+     * Returns true if the size of this image is known, either because it
+     * has loaded or because it was read from the image header.
+     */
+    public boolean hasIntrinsicSize() {
+        return isLoaded() || _intrinsicSize != null;
+    }
+
     public void setImage(FSImage loadedImage) {
         synchronized (IMG_LOCK) {
             _img = loadedImage;
@@ -156,6 +173,10 @@ public class ImageResource extends AbstractResource {
                             float dotsPerPixel, int cssWidth, int cssHeight) {
 
         FSImage img = getImage();
+        Dimension size = _intrinsicSize;
+        if (img == LOADING_IMG && size != null) {
+            img = img.createScaled(size.width, size.height);
+        }
         return AbstractOutputDevice.calculateAbsoluteImageSize(img, dotsPerPixel, cssWidth, cssHeight);
 
     }
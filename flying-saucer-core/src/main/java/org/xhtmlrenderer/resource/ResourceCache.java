@@ -0,0 +1,48 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.resource;
+
+/**
+ * Storage for resources fetched over HTTP, used by {@link HttpResourceLoader}.
+ * The loader decides what may be stored and when a stored resource has to
+ * be revalidated; implementations only keep the bytes and the headers.
+ * Implementations must be thread-safe, as resources are fetched from
+ * several threads when prefetching is turned on.
+ *
+ * @see DiskResourceCache
+ */
+public interface ResourceCache {
+    /**
+     * Returns the stored resource for <code>uri</code>, whether fresh or
+     * not, or <code>null</code> if there is none.
+     */
+    CachedResource get(String uri);
+
+    /**
+     * Stores a resource, replacing any stored for the same URI.
+     */
+    void put(CachedResource resource);
+
+    /**
+     * Replaces the headers of a stored resource after it was revalidated.
+     * The body is unchanged.
+     */
+    void update(CachedResource resource);
+
+    void remove(String uri);
+}
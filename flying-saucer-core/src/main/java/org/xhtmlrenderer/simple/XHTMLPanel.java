@@ -195,6 +195,19 @@ public class XHTMLPanel extends BasicPanel {
         setDocument(stream, url, new XhtmlNamespaceHandler());
     }
 
+    /**
+     * Renders a Document read from an InputStream as it is parsed, using a
+     * URL as a base URL for relative paths; see
+     * {@link org.xhtmlrenderer.swing.BasicPanel#setDocumentProgressively(InputStream, String, org.xhtmlrenderer.extend.NamespaceHandler)}.
+     *
+     * @param stream The stream to read the Document from.
+     * @param url    The URL used to resolve relative path references.
+     */
+    public void setDocumentProgressively(InputStream stream, String url) {
+        resetListeners();
+        setDocumentProgressively(stream, url, new XhtmlNamespaceHandler());
+    }
+
     /**
      * Renders a Document read from an InputStream using a URL
      * as a base URL for relative paths.
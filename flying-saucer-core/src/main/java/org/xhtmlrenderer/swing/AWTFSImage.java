@@ -43,6 +43,19 @@ public abstract class AWTFSImage implements FSImage {
         }
     }
 
+    /**
+     * Creates an image that is drawn at the given size by default, for an
+     * image decoded at reduced resolution; see
+     * {@link ImageUtil#readImage(java.io.InputStream, int, int, Dimension)}.
+     */
+    public static FSImage createImage(Image img, int width, int height) {
+        if (img == null) {
+            return NULL_FS_IMAGE;
+        }
+        FSImage result = createImage(img);
+        return new NewAWTFSImage(((AWTFSImage) result).getImage(), width, height);
+    }
+
     protected AWTFSImage() {
     }
 
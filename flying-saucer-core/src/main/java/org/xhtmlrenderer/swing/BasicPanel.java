@@ -28,8 +28,11 @@ import java.awt.LayoutManager;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.print.PrinterGraphics;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
@@ -39,15 +42,19 @@ import java.util.List;
 import java.util.logging.Level;
 
 import javax.swing.JOptionPane;
+import javax.swing.Timer;
 
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
 import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.dom.FSSAXHandler;
 import org.xhtmlrenderer.event.DocumentListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.layout.Layer;
 import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.parser.XHTMLJavaSAXParser;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
@@ -79,6 +86,12 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
     private boolean centeredPagedView;
     protected FormSubmissionListener formSubmissionListener;
 
+    // The document being parsed progressively, the thread parsing it and
+    // the timer showing what has been parsed
+    private FSSAXHandler parsingHandler;
+    private Thread parsingThread;
+    private Timer parsingTimer;
+
     public BasicPanel() {
         this(new NaiveUserAgent());
     }
@@ -137,6 +150,7 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
         }
 
         // if this is the first time painting this document, then calc layout
+        checkIncrementalLayout();
         Layer root = getRootLayer();
         if (root == null || isNeedRelayout()) {
             doDocumentLayout(g.create());
@@ -377,6 +391,114 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
         setDocument(dom, url, nsh);
     }
 
+    /**
+     * Parses the document in <code>stream</code> on another thread and shows
+     * it as it is parsed. Each child of the body is shown once it has been
+     * parsed whole, at intervals of <code>xr.load.progressive.interval</code>
+     * milliseconds; until parsing ends, only as much of the document as is
+     * scrolled to is laid out (see {@link #setIncrementalLayout(boolean)}).
+     * The stream is closed once parsed. Setting another document stops
+     * parsing.
+     */
+    public void setDocumentProgressively(final InputStream stream, final String url,
+            final NamespaceHandler nsh) {
+        stopParsing();
+        final FSSAXHandler handler = new FSSAXHandler(true);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    new XHTMLJavaSAXParser().createDocument(new InputSource(stream), handler);
+                } catch (Exception e) {
+                    if (! handler.isCancelled()) {
+                        XRLog.load(Level.WARNING, "Failed to parse " + url + ": " + e.getMessage());
+                    }
+                } finally {
+                    try {
+                        stream.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        }, "Document Parser");
+        thread.setDaemon(true);
+
+        parsingHandler = handler;
+        parsingThread = thread;
+        parsingTimer = new Timer(Configuration.valueAsInt("xr.load.progressive.interval", 250),
+                new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showParsedNodes(url, nsh);
+            }
+        });
+        thread.start();
+        parsingTimer.start();
+    }
+
+    /**
+     * Adds what has been parsed to the document being parsed progressively,
+     * and lays it out again.
+     */
+    private void showParsedNodes(String url, NamespaceHandler nsh) {
+        FSSAXHandler handler = parsingHandler;
+        // Checked first, so nothing parsed before it ended is left out
+        boolean ended = ! parsingThread.isAlive();
+        boolean changed = handler.appendParsedNodes();
+        if (ended) {
+            parsingTimer.stop();
+            parsingHandler = null;
+            parsingThread = null;
+            parsingTimer = null;
+        }
+        Document parsed = handler.getDocument();
+        if (doc != parsed) {
+            if (hasDocumentElement(parsed)) {
+                setDocument(parsed, url, nsh);
+            }
+        } else if (changed || ended) {
+            // Styles may depend on the elements that follow
+            resetBoxAndLayout();
+        }
+    }
+
+    private static boolean hasDocumentElement(Document doc) {
+        for (Iterator i = doc.getChildNodes().iterator(); i.hasNext(); ) {
+            if (i.next() instanceof Element) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void stopParsing() {
+        if (parsingHandler != null) {
+            parsingHandler.cancel();
+            parsingTimer.stop();
+            parsingHandler = null;
+            parsingThread = null;
+            parsingTimer = null;
+        }
+    }
+
+    /**
+     * Returns whether a document is being parsed progressively; see
+     * {@link #setDocumentProgressively(InputStream, String, NamespaceHandler)}.
+     */
+    public boolean isParsing() {
+        return parsingHandler != null;
+    }
+
+    public boolean isIncrementalLayout() {
+        return super.isIncrementalLayout() || isParsing();
+    }
+
+    public void setDocument(Document doc, String url, NamespaceHandler nsh) {
+        if (parsingHandler != null && doc != parsingHandler.getDocument()) {
+            stopParsing();
+        }
+        super.setDocument(doc, url, nsh);
+    }
+
     public void setDocument(Document doc, String url) {
         setDocument(doc, url, new NoNamespaceHandler());
     }
@@ -406,6 +528,10 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
         if (isAnchorInCurrentDocument(filename)) {
             String id = getAnchorId(filename);
             Box box = getSharedContext().getBoxById(id);
+            if (box == null) {
+                completeLayout();
+                box = getSharedContext().getBoxById(id);
+            }
             if (box != null) {
                 Point pt;
                 if (box.getStyle().isInline()) {
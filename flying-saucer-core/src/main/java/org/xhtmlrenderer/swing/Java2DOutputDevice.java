@@ -21,7 +21,6 @@ package org.xhtmlrenderer.swing;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
@@ -29,6 +28,7 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.RenderingHints.Key;
 import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
@@ -51,6 +51,7 @@ import org.xhtmlrenderer.render.RenderingContext;
 
 public class Java2DOutputDevice extends AbstractOutputDevice implements OutputDevice {
     private Graphics2D _graphics;
+    private ScaledImageCache _scaledImages = ScaledImageCache.getInstance();
 
     public Java2DOutputDevice(Graphics2D graphics) {
         _graphics = graphics;
@@ -286,9 +287,30 @@ public class Java2DOutputDevice extends AbstractOutputDevice implements OutputDe
     public void drawImage(FSImage image, int x, int y) {
         int actualWidth = image.getWidth();
         int actualHeight = image.getHeight();
-        Image awtImage = ((AWTFSImage)image).getImage();
+        BufferedImage awtImage = ((AWTFSImage)image).getImage();
+        if (_scaledImages != null &&
+                (awtImage.getWidth() != actualWidth || awtImage.getHeight() != actualHeight) &&
+                (_graphics.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            // Scale once, not on every paint
+            BufferedImage scaled = _scaledImages.getScaledImage(awtImage, actualWidth, actualHeight);
+            if (scaled != null) {
+                _graphics.drawImage(scaled, x, y, null);
+                return;
+            }
+        }
         _graphics.drawImage(awtImage, x, y, actualWidth, actualHeight, null);
     }
+
+    /**
+     * Sets the cache of scaled images used when drawing images at a size
+     * other than that of their bitmap, or <code>null</code> to scale images
+     * as they are drawn. The shared {@link ScaledImageCache#getInstance()
+     * instance} is used by default. Images are always scaled as they are
+     * drawn if the graphics are scaled or rotated.
+     */
+    public void setScaledImageCache(ScaledImageCache scaledImages) {
+        _scaledImages = scaledImages;
+    }
     
     public boolean isSupportsSelection() {
         return true;
@@ -27,6 +27,7 @@ import java.util.Map;
 
 import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
@@ -43,8 +44,8 @@ import org.xhtmlrenderer.util.ImageUtil;
 
 /**
  * <p>Renders an XML files, formatted with CSS, as an image. Input is a document in the form of file or URL,
- * and output is a BufferedImage. A Java2DRenderer is not intended to be re-used for multiple document
- * sources; just create new Java2DRenderers for each one you need. Java2DRenderer is not thread-safe.
+ * and output is a BufferedImage. To render several documents with one renderer, call
+ * {@link #reset(Document, String, int, int)} between them. Java2DRenderer is not thread-safe.
  * Standard usage pattern is</p>
  *
  * <pre>
@@ -54,7 +55,8 @@ import org.xhtmlrenderer.util.ImageUtil;
  * </pre>
  *
  * <p>The document is not loaded, and layout and render don't take place, until {@link #getImage(int)}  is called.
- * Subsequent calls to {@link #getImage()} don't result in a reload; create a new Java2DRenderer instance to do so.</p>
+ * Subsequent calls to {@link #getImage()} don't result in a reload; use {@link #reset(Document, String, int, int)}
+ * to render another document.</p>
  *
  * <p>As with {@link org.xhtmlrenderer.swing.RootPanel}, you can access the
  * {@link org.xhtmlrenderer.layout.SharedContext} instance that will be used by this renderer and change settings
@@ -266,6 +268,28 @@ public class Java2DRenderer {
 		return sharedContext;
 	}
 
+	/**
+	 * Prepares this renderer to render another document. The SharedContext, along with the fonts, stylesheets
+	 * and images it has already loaded, is kept, which makes this much cheaper than creating a new renderer
+	 * for each document when rendering many small documents. The document is laid out and rendered on the
+	 * next call to {@link #getImage()}.
+	 *
+	 * @param doc The document to be rendered.
+	 * @param baseUrl The base url for the document, against which  relative paths are resolved.
+	 * @param width Target width, in pixels, for the image; required to provide horizontal bounds for the layout.
+	 * @param height Target height, in pixels, for the image, or -1 to calculate it based on content.
+	 */
+	public void reset(Document doc, String baseUrl, int width, int height) {
+		this.doc = doc;
+		this.sourceDocument = null;
+		this.sourceDocumentBase = baseUrl;
+		this.width = width;
+		this.height = height;
+		this.root = null;
+		this.rendered = false;
+		initOutputDevice();
+	}
+
 	/**
 	 * Renders the XML document if necessary and returns the resulting image. If already rendered, same image
 	 * reference will be returned.
@@ -294,7 +318,9 @@ public class Java2DRenderer {
 			rc.setOutputDevice(outputDevice);
 			sharedContext.getTextRenderer().setup(rc.getFontContext());
 
+			long start = System.nanoTime();
 			root.getLayer().paint(rc);
+			sharedContext.phaseCompleted(MetricsListener.PHASE_PAINT, start);
 
 			newG.dispose();
 			rendered = true;
@@ -341,14 +367,19 @@ public class Java2DRenderer {
 		Rectangle rect = new Rectangle(0, 0, width, DEFAULT_HEIGHT);
 		sharedContext.set_TempCanvas(rect);
 		LayoutContext c = newLayoutContext();
+		long start = System.nanoTime();
 		BlockBox root = BoxBuilder.createRootBox(c, doc);
 		root.setContainingBlock(new ViewportBox(rect));
 		root.layout(c);
+		sharedContext.phaseCompleted(MetricsListener.PHASE_LAYOUT, start);
 		this.root = root;
 	}
 
 	private Document loadDocument(final String uri) {
-		return sharedContext.getUac().getDocumentResource(uri).getDocument();
+		long start = System.nanoTime();
+		Document result = sharedContext.getUac().getDocumentResource(uri).getDocument();
+		sharedContext.phaseCompleted(MetricsListener.PHASE_PARSE, start);
+		return result;
 	}
 
 	private LayoutContext newLayoutContext() {
@@ -366,9 +397,7 @@ public class Java2DRenderer {
 		UserAgentCallback userAgent = new NaiveUserAgent();
 		sharedContext = new SharedContext(userAgent);
 
-		outputImage = ImageUtil.createCompatibleBufferedImage(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_POINT);
-		outputDevice = new Java2DOutputDevice(outputImage);
-                outputDevice.setAntiAliasedShapesByDefault(sharedContext.isAntiAliasingShapes());
+		initOutputDevice();
 
 		AWTFontResolver fontResolver = new AWTFontResolver();
 		sharedContext.setFontResolver(fontResolver);
@@ -383,6 +412,16 @@ public class Java2DRenderer {
 		sharedContext.setInteractive(false);
 	}
 
+	/**
+	 * Sets up the small scratch image used for measuring text during layout; the real output
+	 * image is only created once the document height is known.
+	 */
+	private void initOutputDevice() {
+		outputImage = ImageUtil.createCompatibleBufferedImage(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_POINT);
+		outputDevice = new Java2DOutputDevice(outputImage);
+		outputDevice.setAntiAliasedShapesByDefault(sharedContext.isAntiAliasingShapes());
+	}
+
 	private static final class NullUserInterface implements UserInterface {
 
 		public boolean isHover(Element e) {
@@ -27,6 +27,7 @@ import java.awt.Toolkit;
 import java.awt.font.GlyphVector;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Collections;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -55,7 +56,8 @@ public class Java2DTextRenderer implements TextRenderer {
     protected Boolean defaultKerningHint = null;
     protected Boolean defaultLigaturesHint = null;
 
-    protected Map<CachedTextKey, Float> textWidthCache = new WeakHashMap(1024);
+    protected Map<CachedTextKey, Float> textWidthCache =
+            Collections.synchronizedMap(new WeakHashMap(1024));
 
     public Java2DTextRenderer() {
         scale = Configuration.valueAsFloat("xr.text.scale", 1.0f);
@@ -54,7 +54,9 @@ import org.xhtmlrenderer.css.style.derived.LengthValue;
 import org.xhtmlrenderer.css.style.derived.StringValue;
 import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
+import org.xhtmlrenderer.dom.Node;
 import org.xhtmlrenderer.event.DocumentListener;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
@@ -84,6 +86,11 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
 
     private boolean defaultFontFromComponent;
 
+    private boolean incrementalLayout = Configuration.isTrue("xr.layout.incremental", false);
+    // How far down incremental layout goes, and the elements in the document
+    private int layoutHeight;
+    private int elementCount = -1;
+
     public RootPanel() {
     }
 
@@ -106,6 +113,8 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
 		resetScrollPosition();
         setRootBox(null);
         this.doc = doc;
+        layoutHeight = 0;
+        elementCount = -1;
 
         //have to do this first
         if (Configuration.isTrue("xr.cache.stylesheets", true)) {
@@ -392,6 +401,7 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
             }
 
             long start = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
 
             BlockBox root = (BlockBox)getRootBox();
             if (root != null && isNeedRelayout()) {
@@ -406,9 +416,17 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
             Rectangle initialExtents = getInitialExtents(c);
             root.setContainingBlock(new ViewportBox(initialExtents));
 
+            if (isIncrementalLayout()) {
+                Rectangle visible = getVisibleRect();
+                layoutHeight = Math.max(layoutHeight,
+                        visible.y + visible.height + initialExtents.height);
+                c.setMaxHeight(layoutHeight);
+            }
+
             root.layout(c);
 
             long end = System.currentTimeMillis();
+            getSharedContext().phaseCompleted(MetricsListener.PHASE_LAYOUT, startNanos);
 
             XRLog.layout(Level.INFO, "Layout took " + (end - start) + "ms");
 
@@ -430,8 +448,14 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
             Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
 
             if (c.isPrint()) {
+                long paginationStart = System.nanoTime();
                 root.getLayer().trimEmptyPages(c, intrinsic_size.height);
+                root.getLayer().limitPageCount(c.getMaxPages());
                 root.getLayer().layoutPages(c);
+                getSharedContext().phaseCompleted(MetricsListener.PHASE_PAGINATION, paginationStart);
+                getSharedContext().count(MetricsListener.COUNT_PAGES, root.getLayer().getPages().size());
+            } else if (root.getLayer().isIncomplete()) {
+                intrinsic_size.height = estimateHeight(root.getLayer(), intrinsic_size.height);
             }
 
             // If the initial size we fed into the layout matches the width
@@ -485,6 +509,119 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
         }
     }
 
+    /**
+     * Returns whether a document is laid out only as far down as the panel
+     * has been scrolled to, and further as it is scrolled; see
+     * {@link #setIncrementalLayout(boolean)}.
+     */
+    public boolean isIncrementalLayout() {
+        return incrementalLayout;
+    }
+
+    /**
+     * Sets whether a document is laid out only as far down as the panel has
+     * been scrolled to, so a long document is shown as soon as its first
+     * screen is laid out. The rest is laid out as the panel is scrolled
+     * further, and the preferred height of the panel is estimated from the
+     * share of the document laid out. Floated or positioned content below
+     * shows up once it is reached. Starts out as
+     * <code>xr.layout.incremental</code>.
+     */
+    public void setIncrementalLayout(boolean incrementalLayout) {
+        this.incrementalLayout = incrementalLayout;
+        relayout();
+    }
+
+    /**
+     * Asks for the document to be laid out again further down if incremental
+     * layout stopped above the bottom of the visible area. Each layout goes
+     * at least twice as far as the last, so a document scrolled through is
+     * laid out a few times over at most.
+     */
+    protected void checkIncrementalLayout() {
+        Layer layer = getRootLayer();
+        if (layer == null || ! layer.isIncomplete() ||
+                layoutContext == null || layoutContext.isPrint()) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        int bottom = visible.y + visible.height;
+        if (bottom > layoutHeight) {
+            layoutHeight = (int) Math.max(
+                    Math.min(Integer.MAX_VALUE, 2L * layoutHeight), bottom + visible.height);
+            setNeedRelayout(true);
+        }
+    }
+
+    /**
+     * Lays out the rest of the document now if incremental layout left part
+     * of it out, so every box in it can be found.
+     */
+    protected void completeLayout() {
+        Layer layer = getRootLayer();
+        if (layer == null || ! layer.isIncomplete() ||
+                layoutContext == null || layoutContext.isPrint()) {
+            return;
+        }
+        Graphics g = getGraphics();
+        if (g == null) {
+            return;
+        }
+        try {
+            layoutHeight = Integer.MAX_VALUE;
+            setNeedRelayout(true);
+            doDocumentLayout(g);
+            setNeedRelayout(false);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Returns the height of the whole document, estimated from the
+     * <code>height</code> laid out and the share of the elements of the
+     * document before the first one left out.
+     */
+    private int estimateHeight(Layer layer, int height) {
+        Element stop = null;
+        for (Box b = layer.getFirstDroppedBox(); b != null && stop == null; b = b.getParent()) {
+            stop = b.getElement();
+        }
+        Element root = doc.getDocumentElement();
+        if (stop == null || root == null) {
+            return height;
+        }
+        int[] before = new int[1];
+        countElements(root, stop, before);
+        if (before[0] == 0) {
+            return height;
+        }
+        if (elementCount < 0) {
+            int[] count = new int[1];
+            countElements(root, null, count);
+            elementCount = count[0];
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) height * elementCount / before[0]);
+    }
+
+    /**
+     * Counts the elements from <code>e</code> on, in document order, up to
+     * <code>stop</code>, and returns whether <code>stop</code> was reached.
+     */
+    private static boolean countElements(Element e, Element stop, int[] count) {
+        if (e == stop) {
+            return true;
+        }
+        count[0]++;
+        for (Iterator i = e.getChildNodes().iterator(); i.hasNext(); ) {
+            Node n = (Node) i.next();
+            if (n instanceof Element && countElements((Element) n, stop, count)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void initFontFromComponent(BlockBox root) {
         if (isDefaultFontFromComponent()) {
             CalculatedStyle style = root.getStyle();
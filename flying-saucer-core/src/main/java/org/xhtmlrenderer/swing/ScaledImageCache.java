@@ -0,0 +1,231 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.DownscaleQuality;
+import org.xhtmlrenderer.util.ImageUtil;
+import org.xhtmlrenderer.util.ScalingOptions;
+
+/**
+ * Keeps images scaled ahead of time to the size they are drawn at, so that
+ * painting an image whose bitmap is larger or smaller than its drawn size
+ * (a thumbnail, or every tile of a scaled background) doesn't resample the
+ * whole bitmap on each paint. Each variant is made once with the
+ * {@link ImageUtil} scalers, converted to the screen's format unless running
+ * headless, and kept until the total size of the variants goes over a limit,
+ * least recently used first out. Variants of a bitmap that is no longer used
+ * elsewhere are dropped.
+ * <p>
+ * The limit is <code>xr.image.scaled-cache.max-size</code>, in megabytes,
+ * for the shared instance; variants larger than a quarter of it are never
+ * kept.
+ */
+public class ScaledImageCache {
+    private static ScaledImageCache _instance;
+
+    private final long _maxSize;
+    private final DownscaleQuality _quality;
+    private final Object _hint;
+
+    private final Map _variants = new LinkedHashMap(16, 0.75f, true);
+    private final ReferenceQueue _released = new ReferenceQueue();
+    private long _size;
+
+    /**
+     * Returns the instance shared by all Java2D output devices.
+     */
+    public static synchronized ScaledImageCache getInstance() {
+        if (_instance == null) {
+            _instance = new ScaledImageCache(
+                    Configuration.valueAsLong("xr.image.scaled-cache.max-size", 32L) * 1024L * 1024L);
+        }
+        return _instance;
+    }
+
+    /**
+     * Creates a cache scaling with the configured <code>xr.image.scale</code>
+     * and <code>xr.image.render-quality</code>.
+     *
+     * @param maxSize the most memory, in bytes, to use for scaled images
+     */
+    public ScaledImageCache(long maxSize) {
+        _maxSize = maxSize;
+        _quality = DownscaleQuality.forString(
+                Configuration.valueFor("xr.image.scale", DownscaleQuality.HIGH_QUALITY.asString()),
+                DownscaleQuality.HIGH_QUALITY);
+        _hint = Configuration.valueFromClassConstant("xr.image.render-quality",
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+
+    /**
+     * Returns <code>image</code> scaled to the given size with the configured
+     * quality.
+     *
+     * @return the scaled image, or <code>null</code> if it would be too large
+     *         to keep, in which case the caller should scale as it draws
+     */
+    public BufferedImage getScaledImage(BufferedImage image, int width, int height) {
+        return getScaledImage(image, width, height, _quality, _hint);
+    }
+
+    /**
+     * Returns <code>image</code> scaled to the given size.
+     *
+     * @param quality how to scale; see {@link ScalingOptions}
+     * @param hint the interpolation hint; see {@link ScalingOptions}
+     * @return the scaled image, or <code>null</code> if it would be too large
+     *         to keep, in which case the caller should scale as it draws
+     */
+    public BufferedImage getScaledImage(
+            BufferedImage image, int width, int height, DownscaleQuality quality, Object hint) {
+        if (image.getWidth() == width && image.getHeight() == height) {
+            return image;
+        }
+        if (width <= 0 || height <= 0 ||
+                (long) width * height * 4 > _maxSize / 4) {
+            return null;
+        }
+
+        Variant key = new Variant(image, width, height, quality, hint, null);
+        synchronized (this) {
+            expungeReleased();
+            BufferedImage result = (BufferedImage) _variants.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        // Scaling can take a while; don't hold up other painters meanwhile.
+        // Scaled into a plain RGB bitmap: the source type may be custom (a
+        // gray PNG with alpha) or indexed, whose palette would shift colors
+        int type = image.getColorModel().getTransparency() == Transparency.OPAQUE ?
+                BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        ScalingOptions opt = new ScalingOptions(
+                width, height, type, quality, hint);
+        BufferedImage result = ImageUtil.getScaledInstance(opt, image);
+        if (! GraphicsEnvironment.isHeadless()) {
+            // Converted once to the screen's format (with the same
+            // transparency), so painting it is a plain copy
+            result = ImageUtil.makeCompatible(result);
+        }
+
+        synchronized (this) {
+            if (! _variants.containsKey(key)) {
+                _variants.put(new Variant(image, width, height, quality, hint, _released), result);
+                _size += sizeOf(result);
+                shrink();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the memory, in bytes, used by the scaled images kept.
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+
+    public synchronized int getCount() {
+        return _variants.size();
+    }
+
+    public synchronized void clear() {
+        _variants.clear();
+        _size = 0;
+    }
+
+    private void shrink() {
+        Iterator i = _variants.values().iterator();
+        while (_size > _maxSize && i.hasNext()) {
+            BufferedImage image = (BufferedImage) i.next();
+            i.remove();
+            _size -= sizeOf(image);
+        }
+    }
+
+    private void expungeReleased() {
+        Variant released;
+        while ((released = (Variant) _released.poll()) != null) {
+            BufferedImage image = (BufferedImage) _variants.remove(released);
+            if (image != null) {
+                _size -= sizeOf(image);
+            }
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() *
+                DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Identifies a scaled variant. Refers to its source bitmap weakly, so the
+     * variant is released along with the bitmap.
+     */
+    private static class Variant extends WeakReference {
+        private final int _hash;
+        private final int _width;
+        private final int _height;
+        private final DownscaleQuality _quality;
+        private final Object _hint;
+
+        Variant(BufferedImage image, int width, int height,
+                DownscaleQuality quality, Object hint, ReferenceQueue queue) {
+            super(image, queue);
+            _width = width;
+            _height = height;
+            _quality = quality;
+            _hint = hint;
+            _hash = ((System.identityHashCode(image) * 31 + width) * 31 + height) * 31 +
+                    quality.hashCode();
+        }
+
+        public int hashCode() {
+            return _hash;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (! (o instanceof Variant)) {
+                return false;
+            }
+            Variant other = (Variant) o;
+            Object image = get();
+            return image != null && image == other.get() &&
+                    _width == other._width && _height == other._height &&
+                    _quality == other._quality &&
+                    (_hint == null ? other._hint == null : _hint.equals(other._hint));
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.xhtmlrenderer.swing;
 
 import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.extend.AbstractUserAgent;
 import org.xhtmlrenderer.extend.ReplacedElement;
 import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.UserAgentCallback;
@@ -87,7 +88,8 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
 
             // Register the Box with the image, so when the image loads we
             // know what to repaint.
-            boolean unknownDimensions = (cssWidth == -1 || cssHeight == -1);
+            boolean unknownDimensions = (cssWidth == -1 || cssHeight == -1) &&
+                                        ! ir.hasIntrinsicSize();
             // Need to relayout if the image isn't loaded and has unknown
             // dimensions. Otherwise we repaint when the image changes if
             // loaded or known dimensions.
@@ -156,7 +158,14 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
         } else {
             // Instantiate,
             String ruri = uac.resolveURI(imageSrc);
-            ImageResource imageResource = uac.getImageResource(ruri);
+            ImageResource imageResource;
+            if (uac instanceof AbstractUserAgent) {
+                // Only decode as much of the image as will be drawn
+                imageResource = ((AbstractUserAgent) uac).getImageResource(
+                                                    ruri, cssWidth, cssHeight);
+            } else {
+                imageResource = uac.getImageResource(ruri);
+            }
             Dimension dim = imageResource.calculateSizeFromCSS(
                                 context.getDotsPerPixel(), cssWidth, cssHeight);
             re = new ImageReplacedElement(imageResource, dim.width, dim.height);
@@ -0,0 +1,44 @@
+package org.xhtmlrenderer.tool;
+
+import java.io.File;
+
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.HeapFootprint;
+import org.xhtmlrenderer.swing.BoxRenderer;
+
+/**
+ * Lays out a document and prints the estimated heap footprint of the box
+ * tree, by box type, for the computed styles and for the text. See
+ * {@link HeapFootprint}.
+ * <p>
+ * Usage: <code>Footprint file [width]</code>
+ */
+public class Footprint {
+
+    private void run(String filen, int width) {
+        try {
+            File file = new File(filen);
+            if (!file.exists() || file.isDirectory()) {
+                throw new IllegalArgumentException(filen + " not a file, or is a directory. Give me a single file name.");
+            }
+
+            Box root = new BoxRenderer(file, width, 768).render();
+            System.out.println(HeapFootprint.measure(root));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public static void main(String args[]) {
+        try {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Give a file name");
+            }
+            int width = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+            new Footprint().run(args[0], width);
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.util;
+
+import java.io.InputStream;
+
+/**
+ * Decodes base 64 text as it is read, straight from the characters of a
+ * string such as a <code>data:</code> URI, without copying the text or
+ * holding all of the decoded bytes. Characters outside the base 64
+ * alphabet (line breaks and other white space) are skipped, and the first
+ * <code>=</code> ends the data.
+ */
+public class Base64InputStream extends InputStream {
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final CharSequence _text;
+    private final int _end;
+    private int _pos;
+
+    // Bytes decoded but not read yet
+    private final byte[] _pending = new byte[3];
+    private int _pendingPos;
+    private int _pendingLen;
+
+    public Base64InputStream(CharSequence text) {
+        this(text, 0, text.length());
+    }
+
+    /**
+     * @param text the text containing the base 64 data
+     * @param start the index of the first character of the data
+     * @param end the index after the last character of the data
+     */
+    public Base64InputStream(CharSequence text, int start, int end) {
+        _text = text;
+        _pos = start;
+        _end = end;
+    }
+
+    /**
+     * Decodes base 64 text into an array of exactly the decoded size.
+     */
+    public static byte[] decode(CharSequence text, int start, int end) {
+        byte[] result = new byte[decodedLength(text, start, end)];
+        Base64InputStream in = new Base64InputStream(text, start, end);
+        int off = 0;
+        while (off < result.length) {
+            off += in.read(result, off, result.length - off);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes the given base 64 text decodes to.
+     */
+    public static int decodedLength(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            if (c < 128 && DECODE[c] != -1) {
+                count++;
+            }
+        }
+        int result = count / 4 * 3;
+        switch (count % 4) {
+            case 2:
+                return result + 1;
+            case 3:
+                return result + 2;
+            default:
+                return result;
+        }
+    }
+
+    public int read() {
+        if (_pendingPos == _pendingLen && ! decodePending()) {
+            return -1;
+        }
+        return _pending[_pendingPos++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (_pendingPos == _pendingLen && ! decodePending()) {
+                break;
+            }
+            while (_pendingPos < _pendingLen && n < len) {
+                b[off + n++] = _pending[_pendingPos++];
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    public int available() {
+        return _pendingLen - _pendingPos;
+    }
+
+    /**
+     * Decodes the next quantum of up to four characters.
+     *
+     * @return false at the end of the data
+     */
+    private boolean decodePending() {
+        int bits = 0;
+        int count = 0;
+        while (count < 4 && _pos < _end) {
+            char c = _text.charAt(_pos++);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value != -1) {
+                bits = bits << 6 | value;
+                count++;
+            } else if (c == '=') {
+                _pos = _end;
+            }
+        }
+
+        _pendingPos = 0;
+        switch (count) {
+            case 4:
+                _pending[0] = (byte) (bits >> 16);
+                _pending[1] = (byte) (bits >> 8);
+                _pending[2] = (byte) bits;
+                _pendingLen = 3;
+                return true;
+            case 3:
+                _pending[0] = (byte) (bits >> 10);
+                _pending[1] = (byte) (bits >> 2);
+                _pendingLen = 2;
+                return true;
+            case 2:
+                _pending[0] = (byte) (bits >> 4);
+                _pendingLen = 1;
+                return true;
+            default:
+                _pendingLen = 0;
+                return false;
+        }
+    }
+}
@@ -21,15 +21,25 @@ package org.xhtmlrenderer.util;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import javax.imageio.ImageIO;
-import javax.xml.bind.DatatypeConverter;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * Static utility methods for working with images. Meant to suggest "best practices" for the most straightforward
@@ -41,6 +51,12 @@ public class ImageUtil {
 
     private static final Map qual;
 
+    // Embedded images decoded recently, by content, least recently used first
+    private static final Map EMBEDDED_IMAGES = new LinkedHashMap(16, 0.75f, true);
+    private static final long EMBEDDED_IMAGES_MAX_SIZE =
+            Configuration.valueAsLong("xr.image.embedded-cache.max-size", 16L) * 1024L * 1024L;
+    private static long _embeddedImagesSize;
+
     static {
         qual = new HashMap();
         qual.put(DownscaleQuality.FAST, new OldScaler());
@@ -289,32 +305,241 @@ public class ImageUtil {
     public static byte[] getEmbeddedBase64Image(String imageDataUri) {
         int b64Index = imageDataUri.indexOf("base64,");
         if (b64Index != -1) {
-            String b64encoded = imageDataUri.substring(b64Index + "base64,".length());
-            return DatatypeConverter.parseBase64Binary(b64encoded);
+            return Base64InputStream.decode(
+                    imageDataUri, b64Index + "base64,".length(), imageDataUri.length());
+        } else {
+            XRLog.load(Level.SEVERE, "Embedded XHTML images must be encoded in base 64.");
+        }
+        return null;
+    }
+
+    /**
+     * Opens a stream that decodes an embedded base 64 image as it is read,
+     * straight from the characters of the URI.
+     *
+     * @param imageDataUri URI of the embedded image
+     * @return The binary content, or <code>null</code> if the image is not
+     *         encoded in base 64
+     */
+    public static InputStream openEmbeddedBase64Image(String imageDataUri) {
+        int b64Index = imageDataUri.indexOf("base64,");
+        if (b64Index != -1) {
+            return new Base64InputStream(
+                    imageDataUri, b64Index + "base64,".length(), imageDataUri.length());
         } else {
             XRLog.load(Level.SEVERE, "Embedded XHTML images must be encoded in base 64.");
         }
         return null;
     }
+
+    /**
+     * Returns a key identifying the content of an embedded image, so that
+     * the same image embedded in several places, or in several documents,
+     * can be decoded once. The key is much shorter than the URI, which
+     * needn't be kept. The URI is digested a chunk at a time, without
+     * copying it whole.
+     *
+     * @param imageDataUri URI of the embedded image
+     * @return A SHA-1 digest of the URI's UTF-8 bytes, in hexadecimal
+     */
+    public static String getEmbeddedImageKey(String imageDataUri) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new XRRuntimeException("SHA-1 is not available", e);
+        }
+
+        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        char[] chars = new char[4096];
+        CharBuffer in = CharBuffer.wrap(chars);
+        // Room for any chunk, at most three bytes a char
+        ByteBuffer out = ByteBuffer.allocate(chars.length * 3);
+        int length = imageDataUri.length();
+        int pos = 0;
+        boolean last;
+        do {
+            // Appended after any high surrogate left over from the last chunk
+            int n = Math.min(in.remaining(), length - pos);
+            imageDataUri.getChars(pos, pos + n, chars, in.position());
+            pos += n;
+            in.position(in.position() + n);
+            in.flip();
+
+            last = pos == length;
+            encoder.encode(in, out, last);
+            if (last) {
+                encoder.flush(out);
+            }
+            digest.update(out.array(), 0, out.position());
+            out.clear();
+            in.compact();
+        } while (! last);
+        byte[] hash = digest.digest();
+
+        StringBuffer result = new StringBuffer(hash.length * 2);
+        for (int i = 0; i < hash.length; i++) {
+            result.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+            result.append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return result.toString();
+    }
     
     /**
-     * Get the BufferedImage of an embedded base 64 image.
+     * Get the BufferedImage of an embedded base 64 image. The image is
+     * decoded as the URI is read, and images decoded recently are shared by
+     * content; they must not be modified.
      *
      * @param imageDataUri URI of the embedded image
      * @return The BufferedImage
      */
     public static BufferedImage loadEmbeddedBase64Image(String imageDataUri) {
-        try {
-            byte[] buffer = getEmbeddedBase64Image(imageDataUri);
-            if (buffer != null) {
-                return ImageIO.read(new ByteArrayInputStream(buffer));
+        String key = getEmbeddedImageKey(imageDataUri);
+        synchronized (EMBEDDED_IMAGES) {
+            BufferedImage cached = (BufferedImage) EMBEDDED_IMAGES.get(key);
+            if (cached != null) {
+                return cached;
             }
+        }
+
+        InputStream in = openEmbeddedBase64Image(imageDataUri);
+        if (in == null) {
+            return null;
+        }
+        BufferedImage image;
+        try {
+            image = ImageIO.read(in);
         } catch (IOException ex) {
             XRLog.exception("Can't read XHTML embedded image", ex);
+            return null;
         }
-        return null;
+        if (image != null) {
+            synchronized (EMBEDDED_IMAGES) {
+                EMBEDDED_IMAGES.put(key, image);
+                _embeddedImagesSize += sizeOf(image);
+                Iterator i = EMBEDDED_IMAGES.values().iterator();
+                while (_embeddedImagesSize > EMBEDDED_IMAGES_MAX_SIZE && i.hasNext()) {
+                    _embeddedImagesSize -= sizeOf((BufferedImage) i.next());
+                    i.remove();
+                }
+            }
+        }
+        return image;
     }
-    
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() *
+                image.getColorModel().getPixelSize() / 8;
+    }
+
+    /**
+     * Reads the size of an image from its header, without decoding the
+     * pixels.
+     *
+     * @param is the encoded image; not closed
+     * @return The size in pixels, or <code>null</code> if no ImageIO reader
+     *         recognizes the format
+     */
+    public static Dimension readImageSize(InputStream is) throws IOException {
+        ImageInputStream iis = ImageIO.createImageInputStream(is);
+        if (iis == null) {
+            return null;
+        }
+        try {
+            ImageReader reader = getImageReader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+        }
+    }
+
+    /**
+     * Decodes an image that will be drawn no larger than the given size,
+     * skipping source rows and columns while decoding (ImageIO source
+     * subsampling) so that the result is the smallest image at least that
+     * large. A photograph shown as a thumbnail is never held in memory at
+     * full resolution. Either dimension may be -1 if it isn't known, in which
+     * case the other one decides; if both are unknown the image is decoded at
+     * full resolution.
+     *
+     * @param is the encoded image; not closed
+     * @param width the width the image will be drawn at, or -1
+     * @param height the height the image will be drawn at, or -1
+     * @param size if not <code>null</code>, receives the full size of the
+     *        image, which the result should be drawn at by default
+     * @return The decoded image, or <code>null</code> if no ImageIO reader
+     *         recognizes the format
+     */
+    public static BufferedImage readImage(InputStream is, int width, int height, Dimension size)
+            throws IOException {
+        ImageInputStream iis = ImageIO.createImageInputStream(is);
+        if (iis == null) {
+            return null;
+        }
+        try {
+            ImageReader reader = getImageReader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                int imageWidth = reader.getWidth(0);
+                int imageHeight = reader.getHeight(0);
+                if (size != null) {
+                    size.setSize(imageWidth, imageHeight);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = getSubsampling(imageWidth, imageHeight, width, height);
+                if (factor > 1) {
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+        }
+    }
+
+    /**
+     * Returns the largest subsampling factor which keeps an image of the
+     * given size at least <code>width</code> by <code>height</code> pixels,
+     * 1 if the image can't be reduced. Either target dimension may be -1 if
+     * it isn't known.
+     */
+    public static int getSubsampling(int imageWidth, int imageHeight, int width, int height) {
+        int factor = Integer.MAX_VALUE;
+        if (width > 0) {
+            factor = imageWidth / width;
+        }
+        if (height > 0) {
+            factor = Math.min(factor, imageHeight / height);
+        }
+        if (factor == Integer.MAX_VALUE || factor < 1) {
+            return 1;
+        }
+        return factor;
+    }
+
+    private static ImageReader getImageReader(ImageInputStream iis) {
+        Iterator readers = ImageIO.getImageReaders(iis);
+        if (! readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = (ImageReader) readers.next();
+        reader.setInput(iis, true, true);
+        return reader;
+    }
+
     interface Scaler {
         /**
          * Convenience method that returns a scaled instance of the
@@ -349,7 +574,7 @@ public class ImageUtil {
             // target is always >= 1
             Image scaled = img.getScaledInstance(opt.getTargetWidth(), opt.getTargetHeight(), getImageScalingMethod());
 
-            return ImageUtil.convertToBufferedImage(scaled, img.getType());
+            return ImageUtil.convertToBufferedImage(scaled, opt.getType());
         }
 
         abstract protected int getImageScalingMethod();
@@ -385,7 +610,7 @@ public class ImageUtil {
             w = opt.getTargetWidth();
             h = opt.getTargetHeight();
 
-            BufferedImage scaled = ImageUtil.createCompatibleBufferedImage(w, h, img.getType());
+            BufferedImage scaled = ImageUtil.createCompatibleBufferedImage(w, h, opt.getType());
             Graphics2D g2 = scaled.createGraphics();
             opt.applyRenderingHints(g2);
             g2.drawImage(img, 0, 0, w, h, null);
@@ -435,7 +660,7 @@ public class ImageUtil {
                     }
                 }
 
-                BufferedImage tmp = ImageUtil.createCompatibleBufferedImage(w, h, img.getType());
+                BufferedImage tmp = ImageUtil.createCompatibleBufferedImage(w, h, opt.getType());
                 Graphics2D g2 = tmp.createGraphics();
                 opt.applyRenderingHints(g2);
                 g2.drawImage(scaled, 0, 0, w, h, null);
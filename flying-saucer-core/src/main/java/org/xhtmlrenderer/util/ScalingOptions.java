@@ -20,6 +20,7 @@
 package org.xhtmlrenderer.util;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,6 +37,7 @@ public class ScalingOptions {
 	private Object renderingHint;
 	private int targetWidth;
 	private int targetHeight;
+	private int type = BufferedImage.TYPE_INT_ARGB;
 
 	/**
 	 * Constructor with all options.
@@ -74,6 +76,7 @@ public class ScalingOptions {
 	 */
 	public ScalingOptions(int targetWidth, int targetHeight, int type, DownscaleQuality downscalingHint, Object hint) {
 		this(downscalingHint, hint);
+		this.type = type;
 		this.setTargetHeight(Math.max(1, targetHeight));
 		this.setTargetWidth(Math.max(1, targetWidth));
 	}
@@ -92,6 +95,14 @@ public class ScalingOptions {
 		return renderingHint;
 	}
 
+	/**
+	 * @return the type of {@link java.awt.image.BufferedImage} to create for output;
+	 *         {@link java.awt.image.BufferedImage#TYPE_INT_ARGB} unless given to the constructor
+	 */
+	public int getType() {
+		return type;
+	}
+
 	/**
 	 * Applies any rendering hints configured for these ScalingOptions to a Graphics2D instance before image
 	 * operations are called on it. These might be
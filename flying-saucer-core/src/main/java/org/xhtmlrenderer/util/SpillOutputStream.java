@@ -0,0 +1,190 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Holds output, such as a PDF whose length must be known before it is sent,
+ * in memory up to a set size and in a temporary file past that, so the
+ * memory it takes is bounded however large the output grows. Once closed,
+ * the output can be copied to a stream or channel as often as needed;
+ * {@link #dispose()} deletes the temporary file.
+ */
+public class SpillOutputStream extends OutputStream {
+    private final int _threshold;
+    private final File _directory;
+
+    private byte[] _buffer = new byte[256];
+    private int _count;
+
+    private File _file;
+    private OutputStream _fileOut;
+
+    private long _size;
+    private boolean _closed;
+
+    /**
+     * @param threshold the most bytes held in memory
+     */
+    public SpillOutputStream(int threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * @param threshold the most bytes held in memory
+     * @param directory where the temporary file is created, or null for the
+     *        default temporary directory
+     */
+    public SpillOutputStream(int threshold, File directory) {
+        _threshold = threshold;
+        _directory = directory;
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (_closed) {
+            throw new IOException("Stream closed");
+        }
+        if (_file == null && _size + len > _threshold) {
+            spill();
+        }
+        if (_file == null) {
+            if (_count + len > _buffer.length) {
+                byte[] buffer = new byte[Math.min(_threshold, Math.max(_buffer.length * 2, _count + len))];
+                System.arraycopy(_buffer, 0, buffer, 0, _count);
+                _buffer = buffer;
+            }
+            System.arraycopy(b, off, _buffer, _count, len);
+            _count += len;
+        } else {
+            _fileOut.write(b, off, len);
+        }
+        _size += len;
+    }
+
+    private void spill() throws IOException {
+        _file = File.createTempFile("flyingsaucer", ".tmp", _directory);
+        _fileOut = new BufferedOutputStream(new FileOutputStream(_file));
+        _fileOut.write(_buffer, 0, _count);
+        _buffer = null;
+        _count = 0;
+    }
+
+    public void flush() throws IOException {
+        if (_fileOut != null) {
+            _fileOut.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (! _closed) {
+            _closed = true;
+            if (_fileOut != null) {
+                _fileOut.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    public long size() {
+        return _size;
+    }
+
+    /**
+     * Returns whether the output is still held in memory only.
+     */
+    public boolean isInMemory() {
+        return _file == null;
+    }
+
+    /**
+     * Copies the output, closing this stream first if it is open.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        close();
+        if (_file == null) {
+            out.write(_buffer, 0, _count);
+            return;
+        }
+        FileInputStream in = new FileInputStream(_file);
+        try {
+            byte[] buf = new byte[10240];
+            int i;
+            while ((i = in.read(buf)) != -1) {
+                out.write(buf, 0, i);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies the output, closing this stream first if it is open. Output
+     * held in a file is transferred by the file's channel, which may avoid
+     * copying it through memory.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        close();
+        if (_file == null) {
+            ByteBuffer buf = ByteBuffer.wrap(_buffer, 0, _count);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            return;
+        }
+        FileInputStream in = new FileInputStream(_file);
+        try {
+            FileChannel fc = in.getChannel();
+            long pos = 0;
+            while (pos < _size) {
+                pos += fc.transferTo(pos, _size - pos, channel);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Closes this stream and deletes the temporary file, if there is one.
+     */
+    public void dispose() {
+        try {
+            close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (_file != null && ! _file.delete()) {
+            _file.deleteOnExit();
+        }
+        _buffer = null;
+    }
+}
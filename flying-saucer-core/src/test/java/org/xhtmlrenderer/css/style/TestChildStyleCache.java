@@ -0,0 +1,54 @@
+package org.xhtmlrenderer.css.style;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.css.CSSPrimitiveValue;
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.newmatch.CascadedStyle;
+import org.xhtmlrenderer.css.parser.PropertyValue;
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+
+/**
+ * Checks that a style reuses the child styles derived from it, and keeps no
+ * more of them than <code>xr.css.child-style-cache.max-size</code>.
+ */
+public class TestChildStyleCache extends TestCase
+{
+    public void testChildStylesReused()
+    {
+        CalculatedStyle parent = new EmptyStyle();
+        CascadedStyle matched = widthStyle(10);
+
+        assertFalse(parent.isChildStyleCached(matched));
+        CalculatedStyle child = parent.deriveStyle(matched);
+        assertTrue(parent.isChildStyleCached(widthStyle(10)));
+        assertSame(child, parent.deriveStyle(widthStyle(10)));
+        assertEquals(1, parent.getChildStyleCount());
+    }
+
+    public void testChildStylesBounded()
+    {
+        CalculatedStyle parent = new EmptyStyle();
+        CalculatedStyle first = parent.deriveStyle(widthStyle(0));
+
+        // Restyled again and again, as on :hover
+        for (int i = 1; i < 1000; i++) {
+            parent.deriveStyle(widthStyle(i));
+            parent.deriveStyle(widthStyle(0));
+        }
+        assertEquals(64, parent.getChildStyleCount());
+
+        // Recently used styles stay
+        assertSame(first, parent.deriveStyle(widthStyle(0)));
+        assertFalse(parent.isChildStyleCached(widthStyle(1)));
+    }
+
+    private static CascadedStyle widthStyle(int width)
+    {
+        PropertyValue value = new PropertyValue(
+                CSSPrimitiveValue.CSS_PX, width, width + "px");
+        return CascadedStyle.createLayoutStyle(new PropertyDeclaration[] {
+                new PropertyDeclaration(CSSName.WIDTH, value, false, StylesheetInfo.AUTHOR) });
+    }
+}
@@ -0,0 +1,71 @@
+package org.xhtmlrenderer.dom;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Feeds a progressive handler part of a document at a time, and checks the
+ * document only gains whole children of the body, and ends up as it does
+ * when parsed in one go.
+ */
+public class TestProgressiveParsing extends TestCase
+{
+    public void testChildrenOfBodyAddedWhole() throws SAXException
+    {
+        FSSAXHandler handler = new FSSAXHandler(true);
+        handler.startDocument();
+        start(handler, "html");
+        start(handler, "body");
+        start(handler, "p");
+        handler.characters("first");
+        assertTrue(handler.appendParsedNodes());
+
+        Element body = body(handler.getDocument());
+        assertEquals(0, body.getChildNodes().size());
+
+        handler.endElement("", "p", "p");
+        start(handler, "div");
+        start(handler, "p");
+        handler.characters("second");
+        handler.endElement("", "p", "p");
+        assertTrue(handler.appendParsedNodes());
+        assertEquals(1, body.getChildNodes().size());
+        assertEquals("first", ((Element) body.getChildNodes().get(0)).getTextContent());
+        assertFalse(handler.appendParsedNodes());
+
+        handler.endElement("", "div", "div");
+        handler.endElement("", "body", "body");
+        handler.endElement("", "html", "html");
+        handler.endDocument();
+        handler.appendParsedNodes();
+        assertEquals(2, body.getChildNodes().size());
+        assertEquals("second", ((Element) body.getChildNodes().get(1)).getTextContent());
+        assertSame(body, body.getChildNodes().get(1).getParentNode());
+    }
+
+    public void testCancel() throws SAXException
+    {
+        FSSAXHandler handler = new FSSAXHandler(true);
+        handler.startDocument();
+        start(handler, "html");
+        handler.cancel();
+        try {
+            start(handler, "body");
+            fail("Parsing went on after it was cancelled");
+        } catch (SAXException e) {
+            // expected
+        }
+    }
+
+    private static void start(FSSAXHandler handler, String name) throws SAXException
+    {
+        handler.startElement("", name, name, new AttributesImpl());
+    }
+
+    private static Element body(Document doc)
+    {
+        return (Element) doc.getDocumentElement().getChildNodes().get(0);
+    }
+}
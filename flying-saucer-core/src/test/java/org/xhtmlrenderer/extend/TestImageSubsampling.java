@@ -0,0 +1,93 @@
+package org.xhtmlrenderer.extend;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.resource.ImageResource;
+import org.xhtmlrenderer.swing.AWTFSImage;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+/**
+ * Checks that images drawn smaller than their intrinsic size are decoded at
+ * reduced resolution, and that their size can be read without decoding.
+ */
+public class TestImageSubsampling extends TestCase
+{
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 800;
+
+    private File file;
+    private String uri;
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile("subsample", ".png");
+        ImageIO.write(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB), "png", file);
+        uri = file.toURI().toURL().toExternalForm();
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testSizeFromHeader()
+    {
+        Dimension size = new NaiveUserAgent().loadImageSize(uri);
+        assertEquals(new Dimension(WIDTH, HEIGHT), size);
+    }
+
+    public void testFullResolutionByDefault()
+    {
+        FSImage image = new NaiveUserAgent().getImageResource(uri, 100, -1).getImage();
+        assertEquals(WIDTH, ((AWTFSImage) image).getImage().getWidth());
+    }
+
+    public void testDecodeForBoxSize()
+    {
+        NaiveUserAgent uac = new NaiveUserAgent();
+        uac.setImageSubsamplingEnabled(true);
+
+        FSImage thumbnail = uac.getImageResource(uri, 100, -1).getImage();
+        assertEquals(WIDTH, thumbnail.getWidth());
+        assertEquals(HEIGHT, thumbnail.getHeight());
+        BufferedImage bitmap = ((AWTFSImage) thumbnail).getImage();
+        assertEquals(100, bitmap.getWidth());
+        assertTrue(bitmap.getHeight() >= 66);
+
+        // Shared while it has enough resolution
+        assertSame(thumbnail, uac.getImageResource(uri, 90, 60).getImage());
+
+        // Decoded again when drawn larger
+        FSImage full = uac.getImageResource(uri).getImage();
+        assertEquals(WIDTH, ((AWTFSImage) full).getImage().getWidth());
+        assertSame(full, uac.getImageResource(uri, 100, -1).getImage());
+    }
+
+    public void testDeferredLayoutSize()
+    {
+        final int[] opened = new int[1];
+        NaiveUserAgent uac = new NaiveUserAgent() {
+            protected InputStream resolveAndOpenStream(String uri) {
+                opened[0]++;
+                return super.resolveAndOpenStream(uri);
+            }
+        };
+        uac.setDeferredImageLoadingEnabled(true);
+
+        ImageResource ir = uac.getImageResource(uri, -1, 200);
+        assertTrue(ir.hasIntrinsicSize());
+        assertEquals(new Dimension(300, 200), ir.calculateSizeFromCSS(1.0f, -1, 200));
+        ir.blockUntilLoaded();
+        assertEquals(WIDTH, ir.getImage().getWidth());
+        // The size and the pixels are read from one fetch
+        assertEquals(1, opened[0]);
+    }
+}
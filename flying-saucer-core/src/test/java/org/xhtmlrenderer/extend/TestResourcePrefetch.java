@@ -0,0 +1,190 @@
+package org.xhtmlrenderer.extend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.resource.XMLDocumentResource;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a document's resources from an in-process HTTP server which
+ * answers every request slowly, and checks they are all fetched once,
+ * concurrently, and then served from memory.
+ */
+public class TestResourcePrefetch extends TestCase
+{
+    private static final int DELAY = 200;
+    private static final int IMAGES = 8;
+    private static final String LATIN_CSS = "p:before { content: \"\u00e9t\u00e9\"; background: url(images/latin.png); }";
+
+    private HttpServer server;
+    private String base;
+    private final Map requests = Collections.synchronizedMap(new HashMap());
+
+    protected void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                synchronized (requests) {
+                    Integer count = (Integer) requests.get(path);
+                    requests.put(path, new Integer(count == null ? 1 : count.intValue() + 1));
+                }
+                try {
+                    Thread.sleep(DELAY);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+
+                byte[] body;
+                if (path.equals("/main.css")) {
+                    body = "@import 'print.css'; body { background: url(images/bg.png); }".getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "text/css");
+                } else if (path.equals("/latin.css")) {
+                    body = LATIN_CSS.getBytes("ISO-8859-1");
+                    exchange.getResponseHeaders().set("Content-Type", "text/css; charset=ISO-8859-1");
+                } else if (path.equals("/print.css")) {
+                    body = "@font-face { src: url(fonts/face.ttf); }".getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "text/css");
+                } else {
+                    body = path.getBytes("UTF-8");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    protected void tearDown()
+    {
+        server.stop(0);
+    }
+
+    private Document createDocument()
+    {
+        StringBuffer xhtml = new StringBuffer();
+        xhtml.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head>");
+        xhtml.append("<link rel=\"stylesheet\" type=\"text/css\" href=\"main.css\"/>");
+        xhtml.append("<style>p { background-image: url('images/p.png'); }</style>");
+        xhtml.append("</head><body><div style=\"background: url(images/div.png)\">");
+        for (int i = 0; i < IMAGES; i++) {
+            xhtml.append("<img src=\"images/" + i + ".png\"/>");
+        }
+        // Neither fetches the document itself
+        xhtml.append("<img src=\"\"/><img src=\"#top\"/>");
+        xhtml.append("<img src=\"data:image/png;base64,AAAA\"/></div></body></html>");
+        return XMLDocumentResource.load(base + "doc.xhtml", new StringReader(xhtml.toString())).getDocument();
+    }
+
+    public void testPrefetchIsOffByDefault()
+    {
+        NaiveUserAgent userAgent = new NaiveUserAgent();
+        userAgent.setBaseURL(base + "doc.xhtml");
+        userAgent.prefetchResources(createDocument());
+        assertTrue(requests.isEmpty());
+    }
+
+    public void testPrefetchFetchesAllResourcesConcurrently() throws IOException
+    {
+        NaiveUserAgent userAgent = new NaiveUserAgent();
+        userAgent.setPrefetchThreadsCount(IMAGES);
+        userAgent.setBaseURL(base + "doc.xhtml");
+
+        // The time one request takes, fetching serially would take this
+        // long for every resource
+        long start = System.currentTimeMillis();
+        userAgent.getBinaryResource(base + "probe");
+        long single = System.currentTimeMillis() - start;
+        requests.clear();
+
+        start = System.currentTimeMillis();
+        userAgent.prefetchResources(createDocument());
+        long elapsed = System.currentTimeMillis() - start;
+
+        // main.css, images, bg.png, p.png, div.png, print.css, face.ttf
+        assertEquals(IMAGES + 6, requests.size());
+        assertNull(requests.get("/doc.xhtml"));
+        assertEquals(new Integer(1), requests.get("/fonts/face.ttf"));
+        // Three rounds: the document, main.css and print.css
+        assertTrue("Prefetch took " + elapsed + "ms, a single request " + single + "ms",
+                elapsed < single * requests.size() / 2);
+
+        // Served from memory from now on
+        start = System.currentTimeMillis();
+        byte[] image = userAgent.getBinaryResource("images/3.png");
+        assertEquals("/images/3.png", new String(image, "UTF-8"));
+        assertNotNull(userAgent.getCSSResource(base + "main.css", 0).getStylesheet());
+        assertTrue(System.currentTimeMillis() - start < DELAY);
+        assertEquals(new Integer(1), requests.get("/images/3.png"));
+        assertEquals(new Integer(1), requests.get("/main.css"));
+
+        userAgent.clearPrefetchedResources();
+        InputStream in = userAgent.resolveAndOpenStream("images/3.png");
+        in.close();
+        assertEquals(new Integer(2), requests.get("/images/3.png"));
+    }
+
+    public void testPrefetchOpensResourcesThroughUserAgent()
+    {
+        final List opened = Collections.synchronizedList(new ArrayList());
+        NaiveUserAgent userAgent = new NaiveUserAgent() {
+            protected InputStream resolveAndOpenStream(String uri) {
+                opened.add(uri);
+                return super.resolveAndOpenStream(uri);
+            }
+        };
+        userAgent.setPrefetchThreadsCount(IMAGES);
+        userAgent.setBaseURL(base + "doc.xhtml");
+        userAgent.prefetchResources(createDocument());
+
+        assertEquals(requests.size(), opened.size());
+        assertTrue(opened.contains(base + "fonts/face.ttf"));
+    }
+
+    public void testPrefetchKeepsCharset() throws IOException
+    {
+        NaiveUserAgent userAgent = new NaiveUserAgent();
+        userAgent.setPrefetchThreadsCount(IMAGES);
+        userAgent.setBaseURL(base + "doc.xhtml");
+        String xhtml = "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head>" +
+                "<link rel=\"stylesheet\" type=\"text/css\" href=\"latin.css\"/></head><body/></html>";
+        userAgent.prefetchResources(
+                XMLDocumentResource.load(base + "doc.xhtml", new StringReader(xhtml)).getDocument());
+        assertEquals(new Integer(1), requests.get("/latin.css"));
+        // Scanned for the resources it refers to
+        assertEquals(new Integer(1), requests.get("/images/latin.png"));
+
+        // Read from memory as it would be without prefetching
+        Reader reader = userAgent.resolveAndOpenReader(base + "latin.css");
+        StringBuffer css = new StringBuffer();
+        int c;
+        while ((c = reader.read()) != -1) {
+            css.append((char) c);
+        }
+        reader.close();
+        assertEquals(LATIN_CSS, css.toString());
+        assertEquals(new Integer(1), requests.get("/latin.css"));
+    }
+}
@@ -0,0 +1,102 @@
+package org.xhtmlrenderer.layout;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.swing.BoxRenderer;
+
+/**
+ * Lays out a long document only down to a given height, as the Swing panel
+ * does while it is scrolled, and checks every box above that height is
+ * where a full layout puts it.
+ */
+public class TestLayoutLimit extends TestCase
+{
+    private static final int LIMIT = 600;
+
+    private File file;
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile("limit", ".xhtml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style>");
+            out.write("p { margin: 0 0 1em 0; } td { border: 1px solid black; }");
+            out.write(" .rel { position: relative; top: 3px; } .float { float: right; width: 80px; }");
+            out.write("</style></head><body>");
+            for (int i = 0; i < 60; i++) {
+                out.write("<p>Paragraph " + i + " with text long enough to wrap onto another line.");
+                if (i % 7 == 0) {
+                    out.write("<span class=\"float\">floated " + i + "</span>");
+                }
+                out.write("</p>");
+                if (i % 10 == 5) {
+                    out.write("<div class=\"rel\"><p>Positioned " + i + "</p><p>block</p></div>");
+                    out.write("<table>");
+                    for (int r = 0; r < 8; r++) {
+                        out.write("<tr><td>" + r + "</td><td>cell</td></tr>");
+                    }
+                    out.write("</table>");
+                }
+            }
+            out.write("</body></html>");
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testBoxesAboveLimitMatchFullLayout() throws IOException
+    {
+        Box full = new BoxRenderer(file, 500, 400).render();
+        assertFalse(full.getLayer().isIncomplete());
+        assertTrue(full.getHeight() > LIMIT * 3);
+
+        BoxRenderer renderer = new BoxRenderer(file, 500, 400);
+        renderer.getLayoutContext().setMaxHeight(LIMIT);
+        Box partial = renderer.render();
+        assertTrue(partial.getLayer().isIncomplete());
+        assertTrue(partial.getHeight() < full.getHeight());
+
+        assertEquals(geometry(full, LIMIT), geometry(partial, LIMIT));
+    }
+
+    /**
+     * Returns the position and size of the boxes starting above
+     * <code>limit</code>, and the height of those that also end above it.
+     */
+    private static String geometry(Box box, int limit)
+    {
+        StringBuffer result = new StringBuffer();
+        geometry(box, limit, result);
+        return result.toString();
+    }
+
+    private static void geometry(Box box, int limit, StringBuffer result)
+    {
+        if (box.getAbsY() < limit) {
+            result.append(box.getClass().getName()).append(' ')
+                .append(box.getAbsX()).append(',').append(box.getAbsY()).append(' ')
+                .append(box.getWidth());
+            if (box.getAbsY() + box.getHeight() <= limit) {
+                result.append('x').append(box.getHeight());
+            }
+            result.append('\n');
+        }
+        for (Iterator i = box.getChildren().iterator(); i.hasNext(); ) {
+            geometry((Box) i.next(), limit, result);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.xhtmlrenderer.newtable;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.swing.BoxRenderer;
+
+/**
+ * Lays out large tables with their cells measured and laid out on several
+ * threads, and checks every box ends up where it does when the cells are
+ * laid out one after another.
+ */
+public class TestParallelTableLayout extends TestCase
+{
+    private static final String[] WORDS = {
+        "net", "revenue", "operating", "expenses", "consolidated", "quarter",
+        "amortization", "of", "and", "adjusted", "income", "per", "share"
+    };
+
+    private File file;
+    private File image;
+
+    protected void tearDown()
+    {
+        if (file != null) {
+            file.delete();
+        }
+        if (image != null) {
+            image.delete();
+        }
+    }
+
+    public void testSameLayout() throws IOException
+    {
+        write("");
+        assertSameLayout();
+        assertTrue(hasLayoutThread());
+    }
+
+    public void testTableWithFloats() throws IOException
+    {
+        // Laid out on one thread, as the floats share a formatting context
+        write("<span style=\"float: left; width: 20px\">f</span>");
+        assertSameLayout();
+    }
+
+    public void testImagesRegisteredWithResource() throws IOException
+    {
+        image = File.createTempFile("cell", ".png");
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "png", image);
+        String uri = image.toURI().toURL().toExternalForm();
+        write("<img src=\"" + uri + "\"/><img src=\"" + uri + "\"/>");
+
+        BoxRenderer serial = new BoxRenderer(file, 700);
+        serial.render();
+        BoxRenderer parallel = new BoxRenderer(file, 700);
+        parallel.getSharedContext().setParallelTableThreads(4);
+        parallel.render();
+
+        // Registered through the copies of the layout context, so the panel
+        // can repaint the images once they load
+        assertEquals(2, serial.getLayoutContext().getBoxesRegisteredWithResource(uri).size());
+        assertEquals(2, parallel.getLayoutContext().getBoxesRegisteredWithResource(uri).size());
+    }
+
+    private void assertSameLayout() throws IOException
+    {
+        BoxRenderer serial = new BoxRenderer(file, 700);
+        String expected = geometry(serial.render());
+
+        BoxRenderer parallel = new BoxRenderer(file, 700);
+        parallel.getSharedContext().setParallelTableThreads(4);
+        String actual = geometry(parallel.render());
+
+        assertEquals(expected, actual);
+        for (int i = 0; i < 40; i += 7) {
+            String id = "c" + i;
+            assertEquals(geometry(serial.getSharedContext().getBoxById(id)),
+                    geometry(parallel.getSharedContext().getBoxById(id)));
+        }
+    }
+
+    private void write(String extra) throws IOException
+    {
+        file = File.createTempFile("table", ".xhtml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style>");
+            out.write("td { border: 1px solid black; padding: 2px; vertical-align: top; }");
+            out.write(" td.n { text-align: right; } .b { font-weight: bold; }");
+            out.write("</style></head><body><table>");
+            int word = 0;
+            for (int r = 0; r < 40; r++) {
+                out.write("<tr>");
+                if (r % 9 == 4) {
+                    out.write("<td colspan=\"5\">Subtotal " + r + "</td><td rowspan=\"2\">spans</td>");
+                } else {
+                    for (int col = 0; col < 6; col++) {
+                        if (r % 9 == 5 && col == 5) {
+                            continue;
+                        }
+                        out.write(col == 0 ? "<td id=\"c" + r + "\">" : "<td class=\"n\">");
+                        for (int w = 0; w < (r * 7 + col * 3) % 11; w++) {
+                            out.write(w % 4 == 1 ? "<span class=\"b\">" + WORDS[word++ % WORDS.length] + "</span> " :
+                                WORDS[word++ % WORDS.length] + " ");
+                        }
+                        if (r == 12 && col == 2) {
+                            out.write("<table><tr><td>nested</td><td>table</td></tr></table>");
+                        }
+                        if (r == 20 && col == 3) {
+                            out.write(extra);
+                        }
+                        out.write("</td>");
+                    }
+                }
+                out.write("</tr>");
+            }
+            out.write("</table></body></html>");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean hasLayoutThread()
+    {
+        for (Iterator i = Thread.getAllStackTraces().keySet().iterator(); i.hasNext(); ) {
+            if (((Thread) i.next()).getName().startsWith("Table Layout-")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String geometry(Box box)
+    {
+        StringBuffer result = new StringBuffer();
+        geometry(box, result);
+        return result.toString();
+    }
+
+    private static void geometry(Box box, StringBuffer result)
+    {
+        result.append(box.getClass().getName()).append(' ')
+            .append(box.getAbsX()).append(',').append(box.getAbsY()).append(' ')
+            .append(box.getWidth()).append('x').append(box.getHeight()).append('\n');
+        for (Iterator i = box.getChildren().iterator(); i.hasNext(); ) {
+            geometry((Box) i.next(), result);
+        }
+        if (box instanceof BlockBox) {
+            result.append(((BlockBox) box).getMinWidth()).append('-')
+                .append(((BlockBox) box).getMaxWidth()).append('\n');
+        }
+    }
+}
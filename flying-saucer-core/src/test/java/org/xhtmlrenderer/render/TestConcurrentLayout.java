@@ -0,0 +1,127 @@
+package org.xhtmlrenderer.render;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.resource.XMLDocumentResource;
+import org.xhtmlrenderer.swing.BoxRenderer;
+import org.xhtmlrenderer.swing.Java2DRenderer;
+
+/**
+ * Lays out and paints one parsed document on many threads at once, each
+ * with its own renderer and box tree, and checks every result matches one
+ * rendered alone. This guards against state leaking between renderers
+ * through the document or through static caches. A box tree itself is never
+ * shared between threads while it is laid out (see {@link Box}), so no test
+ * can tell whether its methods lock.
+ */
+public class TestConcurrentLayout extends TestCase
+{
+    private static final int THREADS = 16;
+    private static final int RENDERS = 4;
+
+    private File file;
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile("concurrent", ".xhtml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style>");
+            out.write("p { margin: 0 0 1em 0; } td { border: 1px solid black; }");
+            out.write(" .pos { position: relative; left: 5px; } .float { float: right; width: 80px; }");
+            out.write("</style></head><body>");
+            for (int i = 0; i < 40; i++) {
+                out.write("<p>Paragraph " + i + " <span class=\"pos\">positioned</span> with");
+                out.write(" <em>emphasized</em> text, long enough to wrap onto another line.");
+                if (i % 5 == 0) {
+                    out.write("<span class=\"float\">floated " + i + "</span>");
+                }
+                out.write("</p>");
+            }
+            out.write("<table>");
+            for (int i = 0; i < 20; i++) {
+                out.write("<tr><td>" + i + "</td><td>cell</td><td>another cell</td></tr>");
+            }
+            out.write("</table></body></html>");
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testConcurrentRendering() throws Exception
+    {
+        final String uri = file.toURI().toURL().toExternalForm();
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        final Document doc;
+        try {
+            doc = XMLDocumentResource.load(uri, in).getDocument();
+        } finally {
+            in.close();
+        }
+        final int[] expected = pixels(new Java2DRenderer(file, 500, 400).getImage());
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List results = new ArrayList();
+            for (int i = 0; i < THREADS * RENDERS; i++) {
+                results.add(pool.submit(new Callable() {
+                    public Object call() throws Exception {
+                        return pixels(new Java2DRenderer(doc, uri, 500, 400).getImage());
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                int[] actual = (int[]) ((Future) results.get(i)).get();
+                assertTrue("Render " + i + " differs", Arrays.equals(expected, actual));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testHandOff() throws Exception
+    {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // Laid out on the pool thread, published through the Future
+            Future result = pool.submit(new Callable() {
+                public Object call() throws Exception {
+                    return new BoxRenderer(file, 500, 400).render();
+                }
+            });
+            Box root = (Box) result.get();
+            assertEquals(Box.DONE, ((Box) root.getChildren().get(0)).getState());
+            assertTrue(root.getLayer().getChildren().size() >= 40);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int[] pixels(BufferedImage image)
+    {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,68 @@
+package org.xhtmlrenderer.render;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.swing.BoxRenderer;
+
+/**
+ * Guards the memory retained by the box tree of a reference document. If
+ * a change pushes the footprint over the budget, either the change retains
+ * more than it should or the budget needs to be raised deliberately.
+ */
+public class TestHeapFootprint extends TestCase
+{
+    /** About one and a half times the footprint measured when the budget was set */
+    private static final long BUDGET = 800 * 1024;
+
+    private static final int PARAGRAPHS = 100;
+    private static final int ROWS = 50;
+
+    private File file;
+
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile("footprint", ".xhtml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style>");
+            out.write("p { margin: 0 0 1em 0; } td { border: 1px solid black; } .b { font-weight: bold; }");
+            out.write("</style></head><body>");
+            for (int i = 0; i < PARAGRAPHS; i++) {
+                out.write("<p>Paragraph " + i + " with <span class=\"b\">some bold</span> and");
+                out.write(" <em>some emphasized</em> text, long enough to wrap onto a second line");
+                out.write(" at the width the document is laid out with in this test.</p>");
+            }
+            out.write("<table>");
+            for (int i = 0; i < ROWS; i++) {
+                out.write("<tr><td>" + i + "</td><td>cell</td><td>another cell</td></tr>");
+            }
+            out.write("</table></body></html>");
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testReferenceDocumentWithinBudget() throws IOException
+    {
+        Box root = new BoxRenderer(file, 600, 400).render();
+        HeapFootprint footprint = HeapFootprint.measure(root);
+
+        assertTrue(footprint.getBoxCount() > PARAGRAPHS + ROWS);
+        assertTrue(footprint.getStyles().getCount() > 0);
+        assertTrue(footprint.getText().getCount() > PARAGRAPHS);
+        assertTrue(footprint.getPages().isEmpty());
+        assertTrue("Box tree retains " + footprint.getTotalBytes() + " bytes, over the budget of "
+                + BUDGET + "\n" + footprint, footprint.getTotalBytes() <= BUDGET);
+    }
+}
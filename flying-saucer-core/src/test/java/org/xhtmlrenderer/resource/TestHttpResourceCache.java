@@ -0,0 +1,191 @@
+package org.xhtmlrenderer.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks {@link HttpResourceLoader} and {@link DiskResourceCache} against an
+ * in-process HTTP server which counts full and conditional responses.
+ */
+public class TestHttpResourceCache extends TestCase
+{
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2001 00:00:00 GMT";
+
+    private HttpServer server;
+    private String base;
+    private File dir;
+    private final Map responses = Collections.synchronizedMap(new HashMap());
+
+    protected void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+
+                if (path.equals("/max-age")) {
+                    exchange.getResponseHeaders().set("Cache-Control", "public, max-age=3600");
+                } else if (path.equals("/etag")) {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                    if (ETAG.equals(ifNoneMatch)) {
+                        respond(exchange, path, 304, null);
+                        return;
+                    }
+                } else if (path.equals("/last-modified")) {
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=0");
+                    exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                    if (ifModifiedSince != null) {
+                        respond(exchange, path, 304, null);
+                        return;
+                    }
+                } else if (path.equals("/no-store")) {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                } else if (path.startsWith("/large")) {
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=3600");
+                    respond(exchange, path, 200, new byte[1000]);
+                    return;
+                } else {
+                    respond(exchange, path, 404, path.getBytes("UTF-8"));
+                    return;
+                }
+                respond(exchange, path, 200, path.getBytes("UTF-8"));
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        dir = File.createTempFile("resource-cache", "");
+        dir.delete();
+    }
+
+    private void respond(HttpExchange exchange, String path, int code, byte[] body) throws IOException
+    {
+        String key = path + " " + code;
+        synchronized (responses) {
+            Integer count = (Integer) responses.get(key);
+            responses.put(key, new Integer(count == null ? 1 : count.intValue() + 1));
+        }
+        exchange.sendResponseHeaders(code, body == null ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        if (body != null) {
+            out.write(body);
+        }
+        out.close();
+    }
+
+    private int count(String path, int code)
+    {
+        Integer result = (Integer) responses.get(path + " " + code);
+        return result == null ? 0 : result.intValue();
+    }
+
+    protected void tearDown()
+    {
+        server.stop(0);
+        new DiskResourceCache(dir, 0).clear();
+        dir.delete();
+    }
+
+    private String load(HttpResourceLoader loader, String path) throws IOException
+    {
+        return new String(loader.load(base + path).getBytes(), "UTF-8");
+    }
+
+    public void testFreshResourceIsNotRequestedAgain() throws IOException
+    {
+        HttpResourceLoader loader = new HttpResourceLoader(new DiskResourceCache(dir, 1024 * 1024));
+        assertEquals("/max-age", load(loader, "/max-age"));
+        assertEquals("/max-age", load(loader, "/max-age"));
+        assertEquals(1, count("/max-age", 200));
+
+        // Persisted: a new cache on the same directory still has it
+        loader = new HttpResourceLoader(new DiskResourceCache(dir, 1024 * 1024));
+        assertEquals("/max-age", load(loader, "/max-age"));
+        assertEquals(1, count("/max-age", 200));
+    }
+
+    public void testStaleResourceIsRevalidated() throws IOException
+    {
+        HttpResourceLoader loader = new HttpResourceLoader(new DiskResourceCache(dir, 1024 * 1024));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("/etag", load(loader, "/etag"));
+            assertEquals("/last-modified", load(loader, "/last-modified"));
+        }
+        assertEquals(1, count("/etag", 200));
+        assertEquals(2, count("/etag", 304));
+        assertEquals(1, count("/last-modified", 200));
+        assertEquals(2, count("/last-modified", 304));
+    }
+
+    public void testNoStoreIsNotCached() throws IOException
+    {
+        DiskResourceCache cache = new DiskResourceCache(dir, 1024 * 1024);
+        HttpResourceLoader loader = new HttpResourceLoader(cache);
+        load(loader, "/no-store");
+        load(loader, "/no-store");
+        assertEquals(2, count("/no-store", 200));
+        assertNull(cache.get(base + "/no-store"));
+        assertEquals(0, cache.getSize());
+
+        try {
+            load(loader, "/missing");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(cache.get(base + "/missing"));
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws IOException
+    {
+        DiskResourceCache cache = new DiskResourceCache(dir, 2500);
+        cache.put(new CachedResource("a", null, null, 0, Long.MAX_VALUE, ByteBuffer.wrap(new byte[1000])));
+        String[] names = dir.list();
+        for (int i = 0; i < names.length; i++) {
+            new File(dir, names[i]).setLastModified(System.currentTimeMillis() - 60000);
+        }
+        cache.put(new CachedResource("b", null, null, 0, Long.MAX_VALUE, ByteBuffer.wrap(new byte[1000])));
+        cache.put(new CachedResource("c", null, null, 0, Long.MAX_VALUE, ByteBuffer.wrap(new byte[1000])));
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(1000, cache.get("c").getLength());
+        assertEquals(2000, cache.getSize());
+    }
+
+    public void testOneInstancePerDirectory()
+    {
+        DiskResourceCache cache = DiskResourceCache.getInstance(dir, 1024 * 1024);
+        File alias = new File(new File(dir, ".."), dir.getName());
+        assertSame(cache, DiskResourceCache.getInstance(alias, 1024 * 1024));
+    }
+
+    public void testUserAgentLoadsThroughCache() throws IOException
+    {
+        NaiveUserAgent userAgent = new NaiveUserAgent();
+        userAgent.setResourceCache(new DiskResourceCache(dir, 1024 * 1024));
+        userAgent.setBaseURL(base + "/doc.xhtml");
+        assertEquals("/max-age", new String(userAgent.getBinaryResource("max-age"), "UTF-8"));
+        assertEquals("/max-age", new String(userAgent.getBinaryResource("/max-age"), "UTF-8"));
+        assertNotNull(userAgent.getCSSResource("max-age", 0));
+        assertEquals(1, count("/max-age", 200));
+    }
+}
@@ -0,0 +1,124 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that scaled images are made once, kept within their memory limit,
+ * and used when images are drawn at a size other than their bitmap.
+ */
+public class TestScaledImageCache extends TestCase
+{
+    public void testVariantsReused()
+    {
+        ScaledImageCache cache = new ScaledImageCache(1024 * 1024);
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage scaled = cache.getScaledImage(image, 40, 30);
+        assertEquals(40, scaled.getWidth());
+        assertEquals(30, scaled.getHeight());
+        assertSame(scaled, cache.getScaledImage(image, 40, 30));
+        assertSame(image, cache.getScaledImage(image, 400, 300));
+        assertEquals(1, cache.getCount());
+        assertEquals(40 * 30 * 4, cache.getSize());
+
+        // Too large to keep
+        assertNull(cache.getScaledImage(image, 800, 600));
+    }
+
+    public void testMemoryLimit()
+    {
+        ScaledImageCache cache = new ScaledImageCache(100 * 100 * 4 * 4);
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+
+        for (int size = 80; size <= 100; size++) {
+            cache.getScaledImage(image, size, size);
+            assertTrue(cache.getSize() <= 100 * 100 * 4 * 4);
+        }
+        assertTrue(cache.getCount() < 21);
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testDrawImage()
+    {
+        ScaledImageCache cache = new ScaledImageCache(1024 * 1024);
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        BufferedImage out = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        Java2DOutputDevice device = new Java2DOutputDevice(out);
+        device.setScaledImageCache(cache);
+
+        // Tiles of a scaled background
+        AWTFSImage tile = (AWTFSImage) AWTFSImage.createImage(image).createScaled(10, 10);
+        for (int x = 0; x < 100; x += 10) {
+            device.drawImage(tile, x, 0);
+        }
+        assertEquals(1, cache.getCount());
+    }
+
+    public void testGrayAlphaImage() throws IOException
+    {
+        ColorModel model = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), true, false,
+                Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        WritableRaster raster = model.createCompatibleWritableRaster(200, 200);
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 200; x++) {
+                raster.setPixel(x, y, new int[] { 255, 128 });
+            }
+        }
+        BufferedImage image = readPng(new BufferedImage(model, raster, false, null));
+        assertEquals(BufferedImage.TYPE_CUSTOM, image.getType());
+
+        ScaledImageCache cache = new ScaledImageCache(1024 * 1024);
+        BufferedImage scaled = cache.getScaledImage(image, 50, 50);
+        assertEquals(image.getRGB(100, 100), scaled.getRGB(25, 25));
+
+        BufferedImage out = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        Java2DOutputDevice device = new Java2DOutputDevice(out);
+        device.setScaledImageCache(cache);
+        device.drawImage(AWTFSImage.createImage(image).createScaled(50, 50), 0, 0);
+    }
+
+    public void testIndexedImage() throws IOException
+    {
+        IndexColorModel model = new IndexColorModel(8, 2,
+                new byte[] { 0, (byte) 0xc8 },
+                new byte[] { 0, (byte) 0x7b },
+                new byte[] { 0, (byte) 0x2d });
+        BufferedImage indexed = new BufferedImage(200, 200, BufferedImage.TYPE_BYTE_INDEXED, model);
+        WritableRaster raster = indexed.getRaster();
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 200; x++) {
+                raster.setSample(x, y, 0, 1);
+            }
+        }
+        BufferedImage image = readPng(indexed);
+        assertTrue(image.getColorModel() instanceof IndexColorModel);
+
+        ScaledImageCache cache = new ScaledImageCache(1024 * 1024);
+        BufferedImage scaled = cache.getScaledImage(image, 50, 50);
+        assertEquals(0xffc87b2d, scaled.getRGB(25, 25));
+    }
+
+    private static BufferedImage readPng(BufferedImage image) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
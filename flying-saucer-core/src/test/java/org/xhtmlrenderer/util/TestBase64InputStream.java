@@ -0,0 +1,122 @@
+package org.xhtmlrenderer.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks decoding base 64 as it is read, and that embedded images with the
+ * same content are decoded once.
+ */
+public class TestBase64InputStream extends TestCase
+{
+    private static final String ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    public void testPadding()
+    {
+        assertEquals("Man", decode("TWFu"));
+        assertEquals("Ma", decode("TWE="));
+        assertEquals("M", decode("TQ=="));
+        assertEquals("Man M", decode(" TWFu\r\n IE0=\n"));
+        assertEquals("", decode(""));
+    }
+
+    public void testStreaming() throws IOException
+    {
+        byte[] data = new byte[100000];
+        new Random(7).nextBytes(data);
+        String text = "xx" + encode(data) + "yy";
+
+        assertTrue(Arrays.equals(data, Base64InputStream.decode(text, 2, text.length() - 2)));
+
+        InputStream in = new Base64InputStream(text, 2, text.length() - 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        int i;
+        while ((i = in.read(buf, 0, 1 + out.size() % 997)) != -1) {
+            out.write(buf, 0, i);
+        }
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+    }
+
+    public void testEmbeddedImageDecodedOnce() throws IOException
+    {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", png);
+        String uri = "data:image/png;base64," + encode(png.toByteArray());
+
+        BufferedImage image = ImageUtil.loadEmbeddedBase64Image(uri);
+        assertEquals(20, image.getWidth());
+        assertSame(image, ImageUtil.loadEmbeddedBase64Image(new String(uri)));
+        assertTrue(Arrays.equals(png.toByteArray(), ImageUtil.getEmbeddedBase64Image(uri)));
+    }
+
+    private static String decode(String text)
+    {
+        try {
+            return new String(Base64InputStream.decode(text, 0, text.length()), "US-ASCII");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void testEmbeddedImageKeysDependOnEveryCharacter()
+    {
+        // Same bytes if characters were narrowed to their low and high bytes
+        String key = ImageUtil.getEmbeddedImageKey("data:image/png;base64,\u0141");
+        assertFalse(key.equals(ImageUtil.getEmbeddedImageKey("data:image/png;base64,A\u0001")));
+        assertEquals(key, ImageUtil.getEmbeddedImageKey("data:image/png;base64,\u0141"));
+    }
+
+    public void testEmbeddedImageKeysOfLongUris() throws Exception
+    {
+        StringBuffer uri = new StringBuffer("data:image/png;base64,");
+        while (uri.length() < 20000) {
+            // Surrogate pairs, one across the end of the first chunk
+            if (uri.length() % 1024 == 1023) {
+                uri.append("\ud83d\ude00");
+            } else {
+                uri.append(uri.length() % 2 == 0 ? 'A' : '\u0141');
+            }
+        }
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(uri.toString().getBytes("UTF-8"));
+        StringBuffer expected = new StringBuffer();
+        for (int i = 0; i < hash.length; i++) {
+            expected.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+            expected.append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        assertEquals(expected.toString(), ImageUtil.getEmbeddedImageKey(uri.toString()));
+        assertEquals(expected.toString(), ImageUtil.getEmbeddedImageKey(uri.toString()));
+    }
+
+    private static String encode(byte[] data)
+    {
+        StringBuffer result = new StringBuffer();
+        for (int i = 0; i < data.length; i += 3) {
+            int n = Math.min(3, data.length - i);
+            int bits = (data[i] & 0xff) << 16;
+            if (n > 1) {
+                bits |= (data[i + 1] & 0xff) << 8;
+            }
+            if (n > 2) {
+                bits |= data[i + 2] & 0xff;
+            }
+            for (int j = 0; j < 4; j++) {
+                result.append(j <= n ? ALPHABET.charAt((bits >> (18 - 6 * j)) & 0x3f) : '=');
+            }
+            if (i % 57 == 54) {
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+}
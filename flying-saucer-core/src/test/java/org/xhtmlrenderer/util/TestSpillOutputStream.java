@@ -0,0 +1,76 @@
+package org.xhtmlrenderer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that output is held in memory up to the threshold and in a
+ * temporary file past it, and is copied out whole either way.
+ */
+public class TestSpillOutputStream extends TestCase
+{
+    public void testInMemory() throws IOException
+    {
+        byte[] data = randomBytes(1000);
+        SpillOutputStream out = new SpillOutputStream(1000);
+        out.write(data, 0, 600);
+        out.write(data, 600, 400);
+
+        assertTrue(out.isInMemory());
+        assertEquals(1000, out.size());
+        assertTrue(Arrays.equals(data, copy(out)));
+        out.dispose();
+    }
+
+    public void testSpilled() throws IOException
+    {
+        byte[] data = randomBytes(100000);
+        SpillOutputStream out = new SpillOutputStream(1000);
+        for (int i = 0; i < 10; i++) {
+            out.write(data[i]);
+        }
+        out.write(data, 10, data.length - 10);
+
+        assertFalse(out.isInMemory());
+        assertEquals(data.length, out.size());
+        assertTrue(Arrays.equals(data, copy(out)));
+
+        ByteArrayOutputStream channelCopy = new ByteArrayOutputStream();
+        out.writeTo(Channels.newChannel(channelCopy));
+        assertTrue(Arrays.equals(data, channelCopy.toByteArray()));
+        out.dispose();
+    }
+
+    public void testClosed() throws IOException
+    {
+        SpillOutputStream out = new SpillOutputStream(10);
+        out.write(1);
+        out.close();
+        try {
+            out.write(2);
+            fail("Wrote to a closed stream");
+        } catch (IOException e) {
+            // expected
+        }
+        out.dispose();
+    }
+
+    private static byte[] copy(SpillOutputStream out) throws IOException
+    {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        out.writeTo(result);
+        return result.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length)
+    {
+        byte[] result = new byte[length];
+        new Random(11).nextBytes(result);
+        return result;
+    }
+}
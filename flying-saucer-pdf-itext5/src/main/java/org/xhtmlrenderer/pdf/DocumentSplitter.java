@@ -33,14 +33,35 @@ import javax.xml.transform.sax.SAXTransformerFactory;
 import javax.xml.transform.sax.TransformerHandler;
 
 import org.w3c.dom.Document;
+import org.xhtmlrenderer.dom.FSSAXHandler;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
+/**
+ * Splits a stream of documents, the children of the root element of one
+ * large XML document, into separate documents. A <code>head</code> element
+ * before the documents is added to each of them.
+ * <p>
+ * By default the documents are built as W3C DOMs and kept until the stream
+ * has been read; see {@link #getDocuments()}. Given a
+ * {@link DocumentListener}, each document is built as a Flying Saucer DOM
+ * and passed on as soon as it has been read, so only the document being
+ * read is held.
+ */
 public class DocumentSplitter implements ContentHandler {
     private static final String HEAD_ELEMENT_NAME = "head";
+
+    /**
+     * Receives the documents of a stream as they are read.
+     */
+    public interface DocumentListener {
+        public void documentRead(org.xhtmlrenderer.dom.Document doc) throws SAXException;
+    }
+
+    private final DocumentListener _listener;
     
     private List _processingInstructions = new LinkedList();
     private SAXEventRecorder _head = new SAXEventRecorder();
@@ -55,13 +76,22 @@ public class DocumentSplitter implements ContentHandler {
     
     private Locator _locator;
     
-    private TransformerHandler _handler;
+    private ContentHandler _handler;
+    private FSSAXHandler _fsHandler;
     private boolean _inDocument = false;
     
     private List _documents = new LinkedList();
     
     private boolean _replayedHead = false;
 
+    public DocumentSplitter() {
+        this(null);
+    }
+
+    public DocumentSplitter(DocumentListener listener) {
+        _listener = listener;
+    }
+
     public void characters(char[] ch, int start, int length) throws SAXException {
         if (_inHead) {
             _head.characters(ch, start, length);
@@ -145,15 +175,21 @@ public class DocumentSplitter implements ContentHandler {
                     try {
                         _inDocument = true;
                         _replayedHead = false;
-                        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                        factory.setNamespaceAware(true);
-                        factory.setValidating(false);
-                        
-                        Document doc = factory.newDocumentBuilder().newDocument();
-                        _documents.add(doc);
-                        _handler = 
-                            ((SAXTransformerFactory)SAXTransformerFactory.newInstance()).newTransformerHandler();
-                        _handler.setResult(new DOMResult(doc));
+                        if (_listener != null) {
+                            _fsHandler = new FSSAXHandler();
+                            _handler = _fsHandler;
+                        } else {
+                            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                            factory.setNamespaceAware(true);
+                            factory.setValidating(false);
+
+                            Document doc = factory.newDocumentBuilder().newDocument();
+                            _documents.add(doc);
+                            TransformerHandler handler =
+                                ((SAXTransformerFactory)SAXTransformerFactory.newInstance()).newTransformerHandler();
+                            handler.setResult(new DOMResult(doc));
+                            _handler = handler;
+                        }
                         
                         _handler.startDocument();
                         _handler.setDocumentLocator(_locator);
@@ -197,6 +233,12 @@ public class DocumentSplitter implements ContentHandler {
                 _handler.endElement(uri, localName, qName);
                 _handler.endDocument();
                 _inDocument = false;
+                if (_fsHandler != null) {
+                    org.xhtmlrenderer.dom.Document doc = _fsHandler.getDocument();
+                    _fsHandler = null;
+                    _handler = null;
+                    _listener.documentRead(doc);
+                }
             } else {
                 _handler.endElement(uri, localName, qName);
             }
@@ -214,6 +256,10 @@ public class DocumentSplitter implements ContentHandler {
         }
     }
     
+    /**
+     * Returns the documents read, as W3C DOMs, when no
+     * {@link DocumentListener} was given.
+     */
     public List getDocuments() {
         return _documents;
     }
@@ -0,0 +1,108 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import com.itextpdf.text.pdf.BaseFont;
+
+/**
+ * The advance widths of the characters of a font, in thousandths of the font
+ * size, so that measuring a string is a sum over an array instead of a
+ * call into the font, which for most fonts converts the string to bytes or
+ * looks up each character in a map. Widths are read from the font a block of
+ * 256 characters at a time, the first time a character of the block is
+ * measured, so a document in a single script only reads one or two blocks.
+ * <p>
+ * Only fonts whose string width is the sum of the widths of its characters
+ * (Type 1 and TrueType fonts) are measured from the table. Strings with
+ * characters outside the Basic Multilingual Plane, and other fonts, are
+ * measured by the font itself. Kerning is not applied, as the text is drawn
+ * without it.
+ */
+public class ITextAdvanceWidths {
+    private static final int BLOCK_SIZE = 256;
+
+    private final BaseFont _font;
+    private final boolean _additive;
+    private final Block[] _blocks = new Block[BLOCK_SIZE];
+
+    public ITextAdvanceWidths(BaseFont font) {
+        _font = font;
+        int type = font.getFontType();
+        _additive = type == BaseFont.FONT_TYPE_T1 ||
+                type == BaseFont.FONT_TYPE_TT || type == BaseFont.FONT_TYPE_TTUNI;
+    }
+
+    /**
+     * Returns the width of <code>string</code> in points, the same as
+     * {@link BaseFont#getWidthPoint(String, float)}.
+     */
+    public float getWidthPoint(String string, float size) {
+        int width = getWidth(string);
+        if (width == -1) {
+            return _font.getWidthPoint(string, size);
+        }
+        return width * 0.001f * size;
+    }
+
+    /**
+     * Returns the width of <code>string</code> in thousandths of the font
+     * size, or -1 if it can't be measured from the table.
+     */
+    private int getWidth(String string) {
+        if (! _additive) {
+            return -1;
+        }
+        int[] latin = getBlock(0).widths;
+        int total = 0;
+        for (int i = 0, len = string.length(); i < len; i++) {
+            char c = string.charAt(i);
+            if (c < BLOCK_SIZE) {
+                total += latin[c];
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                return -1;
+            } else {
+                total += getBlock(c >>> 8).widths[c & 0xff];
+            }
+        }
+        return total;
+    }
+
+    private Block getBlock(int block) {
+        Block result = _blocks[block];
+        if (result == null) {
+            int[] widths = new int[BLOCK_SIZE];
+            int first = block * BLOCK_SIZE;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                widths[i] = _font.getWidth(first + i);
+            }
+            // Measuring threads may fill a block at the same time; they
+            // read the same widths, and the final field publishes them
+            result = new Block(widths);
+            _blocks[block] = result;
+        }
+        return result;
+    }
+
+    private static final class Block {
+        private final int[] widths;
+
+        private Block(int[] widths) {
+            this.widths = widths;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.xhtmlrenderer.render.FSFont;
 public class ITextFSFont implements FSFont {
     private FontDescription _font;
     private float _size;
+    private ITextFSFontMetrics _metrics;
     
     public ITextFSFont(FontDescription font, float size) {
         _font = font;
@@ -43,6 +44,18 @@ public class ITextFSFont implements FSFont {
         return _font;
     }
 
+    /**
+     * The metrics of this font, kept once calculated by
+     * {@link ITextTextRenderer}.
+     */
+    ITextFSFontMetrics getFontMetrics() {
+        return _metrics;
+    }
+
+    void setFontMetrics(ITextFSFontMetrics metrics) {
+        _metrics = metrics;
+    }
+
     public int hashCode() {
         int hash = 5;
         hash = 97 * hash + (this._font != null ? this._font.hashCode() : 0);
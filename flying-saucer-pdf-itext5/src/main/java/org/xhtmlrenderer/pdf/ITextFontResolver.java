@@ -75,7 +75,7 @@ public class ITextFontResolver implements FontResolver {
         }
     }
 
-    public FSFont resolveFont(SharedContext renderingContext, FontSpecification spec) {
+    public synchronized FSFont resolveFont(SharedContext renderingContext, FontSpecification spec) {
         return resolveFont(renderingContext, spec.getFamilies(), spec.getSize(), spec.getFontWeight(), spec.getFontStyle(), spec.getVariant());
     }
 
@@ -188,27 +188,20 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         String lower = path.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            BaseFont font = BaseFont.createFont(path, encoding, embedded);
+            FontDescription font = FontProgramCache.getFont(path, encoding, embedded);
 
             String[] fontFamilyNames;
             if (fontFamilyNameOverride != null) {
                 fontFamilyNames = new String[] { fontFamilyNameOverride };
             } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+                fontFamilyNames = TrueTypeUtil.getFamilyNames(font.getFont());
             }
 
             for (int i = 0; i < fontFamilyNames.length; i++) {
                 String fontFamilyName = fontFamilyNames[i];
                 FontFamily fontFamily = getFontFamily(fontFamilyName);
 
-                FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(path, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
-                fontFamily.addFontDescription(descr);
+                fontFamily.addFontDescription(new FontDescription(font));
             }
         } else if (lower.endsWith(".ttc")) {
             String[] names = BaseFont.enumerateTTCNames(path);
@@ -247,25 +240,19 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         String lower = uri.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, afmttf, pfb);
+            FontDescription font = FontProgramCache.getFont(uri, encoding, embedded, afmttf);
 
             String[] fontFamilyNames;
             if (fontFamilyNameOverride != null) {
                 fontFamilyNames = new String[] { fontFamilyNameOverride };
             } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+                fontFamilyNames = TrueTypeUtil.getFamilyNames(font.getFont());
             }
 
             for (int i = 0; i < fontFamilyNames.length; i++) {
                 FontFamily fontFamily = getFontFamily(fontFamilyNames[i]);
 
                 FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(uri, afmttf, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
                 descr.setFromFontFace(true);
 
                 fontFamily.addFontDescription(descr);
@@ -293,7 +280,7 @@ public class ITextFontResolver implements FontResolver {
         }
     }
 
-    private byte[] readFile(String path) throws IOException {
+    static byte[] readFile(String path) throws IOException {
         File f = new File(path);
         if (f.exists()) {
             ByteArrayOutputStream result = new ByteArrayOutputStream((int)f.length());
@@ -715,6 +702,7 @@ public class ITextFontResolver implements FontResolver {
         private int _weight;
 
         private BaseFont _font;
+        private ITextAdvanceWidths _advanceWidths;
 
         private float _underlinePosition;
         private float _underlineThickness;
@@ -738,12 +726,39 @@ public class ITextFontResolver implements FontResolver {
             setMetricDefaults();
         }
 
+        /**
+         * Creates a description of the same font, sharing its advance width
+         * table.
+         */
+        public FontDescription(FontDescription other) {
+            _style = other._style;
+            _weight = other._weight;
+            _font = other._font;
+            _advanceWidths = other.getAdvanceWidths();
+            _underlinePosition = other._underlinePosition;
+            _underlineThickness = other._underlineThickness;
+            _yStrikeoutSize = other._yStrikeoutSize;
+            _yStrikeoutPosition = other._yStrikeoutPosition;
+            _isFromFontFace = other._isFromFontFace;
+        }
+
         public BaseFont getFont() {
             return _font;
         }
 
         public void setFont(BaseFont font) {
             _font = font;
+            _advanceWidths = null;
+        }
+
+        /**
+         * Returns the table used to measure text in this font.
+         */
+        public ITextAdvanceWidths getAdvanceWidths() {
+            if (_advanceWidths == null) {
+                _advanceWidths = new ITextAdvanceWidths(_font);
+            }
+            return _advanceWidths;
         }
 
         public int getWeight() {
@@ -22,6 +22,7 @@ package org.xhtmlrenderer.pdf;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -30,6 +31,8 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -44,6 +47,7 @@ import javax.xml.transform.stream.StreamResult;
 import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.context.StyleReference;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.extend.NamespaceHandler;
@@ -84,6 +88,10 @@ public class ITextRenderer {
 
     private PDFEncryption _pdfEncryption;
 
+    private PDFCompression _pdfCompression;
+
+    private boolean _flushPages;
+
     // note: not hard-coding a default version in the _pdfVersion field as this
     // may change between iText releases
     // check for null before calling writer.setPdfVersion()
@@ -133,7 +141,10 @@ public class ITextRenderer {
     }
 
     private Document loadDocument(final String uri) {
-        return _sharedContext.getUac().getDocumentResource(uri).getDocument();
+        long start = System.nanoTime();
+        Document result = _sharedContext.getUac().getDocumentResource(uri).getDocument();
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PARSE, start);
+        return result;
     }
 
     public void setDocument(String uri) {
@@ -155,8 +166,10 @@ public class ITextRenderer {
     }
 
     public void setDocumentFromString(String content, String baseUrl) {
+        long start = System.nanoTime();
         InputSource is = new InputSource(new BufferedReader(new StringReader(content)));
         Document dom = XMLDocumentResource.load(baseUrl, is).getDocument();
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PARSE, start);
 
         setDocument(dom, baseUrl);
     }
@@ -167,6 +180,7 @@ public class ITextRenderer {
         getFontResolver().flushFontFaceFonts();
 
         _sharedContext.reset();
+        _outputDevice.reset();
         if (Configuration.isTrue("xr.cache.stylesheets", true)) {
             _sharedContext.getCss().flushStyleSheets();
         } else {
@@ -178,6 +192,25 @@ public class ITextRenderer {
         getFontResolver().importFontFaces(_sharedContext.getCss().getFontFaceRules());
     }
 
+    /**
+     * Clears all state belonging to the previous document so this renderer
+     * can be used for an unrelated one. Fonts, cached stylesheets and images
+     * are kept, which makes reusing a renderer much cheaper than creating a
+     * new one per document. Call this after {@link #finishPDF()} (or after
+     * {@link #createPDF(OutputStream)} has finished the document) and before
+     * the next {@link #setDocument(Document, String)}.
+     */
+    public void reset() {
+        _doc = null;
+        _root = null;
+        _pdfDoc = null;
+        _writer = null;
+
+        getFontResolver().flushFontFaceFonts();
+        _sharedContext.reset();
+        _outputDevice.reset();
+    }
+
     public PDFEncryption getPDFEncryption() {
         return _pdfEncryption;
     }
@@ -186,6 +219,19 @@ public class ITextRenderer {
         _pdfEncryption = pdfEncryption;
     }
 
+    public PDFCompression getPDFCompression() {
+        return _pdfCompression;
+    }
+
+    /**
+     * Sets how the PDF is compressed; without this, content streams are
+     * compressed at the default level and objects are not packed into
+     * object streams.
+     */
+    public void setPDFCompression(PDFCompression pdfCompression) {
+        _pdfCompression = pdfCompression;
+    }
+
     public void setPDFVersion(char _v) {
         for (int i = 0; i < validPdfVersions.length; i++) {
             if (_v == validPdfVersions[i]) {
@@ -202,13 +248,31 @@ public class ITextRenderer {
     }
 
     public void layout() {
+        layout(_sharedContext.getMaxPages());
+    }
+
+    /**
+     * Lays out only as much of the document as fills its first
+     * <code>maxPages</code> pages, which is much faster for a preview of a
+     * long document; 0 lays out the whole document. See
+     * {@link SharedContext#setMaxPages(int)}.
+     */
+    public void layout(int maxPages) {
         LayoutContext c = newLayoutContext();
+        c.setMaxPages(maxPages);
+        long start = System.nanoTime();
         BlockBox root = BoxBuilder.createRootBox(c, _doc);
         root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
         root.layout(c);
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_LAYOUT, start);
+
+        start = System.nanoTime();
         Dimension dim = root.getLayer().getPaintingDimension(c);
         root.getLayer().trimEmptyPages(c, dim.height);
+        root.getLayer().limitPageCount(maxPages);
         root.getLayer().layoutPages(c);
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PAGINATION, start);
+        _sharedContext.count(MetricsListener.COUNT_PAGES, root.getLayer().getPages().size());
         _root = root;
     }
 
@@ -244,6 +308,39 @@ public class ITextRenderer {
         createPDF(os, true, 0);
     }
 
+    /**
+     * Writes the PDF to <code>channel</code>, sending each page as soon as
+     * it is complete, and leaves the channel open. Only the objects written
+     * when the document is closed (fonts, the outline and the
+     * cross-reference table) are sent at the end.
+     */
+    public void createPDF(WritableByteChannel channel) throws DocumentException, IOException {
+        OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+        boolean flushPages = _flushPages;
+        _flushPages = true;
+        try {
+            createPDF(os, false, 0);
+            _writer.setCloseStream(false);
+            finishPDF();
+            os.flush();
+        } finally {
+            _flushPages = flushPages;
+        }
+    }
+
+    /**
+     * Sets whether the output stream is flushed as each page is written, so
+     * pages reach a stream that buffers its output, such as a servlet
+     * response, as they are completed instead of when its buffer fills.
+     */
+    public void setFlushPages(boolean flushPages) {
+        _flushPages = flushPages;
+    }
+
+    public boolean isFlushPages() {
+        return _flushPages;
+    }
+
     public void writeNextDocument() throws DocumentException, IOException {
         writeNextDocument(0);
     }
@@ -268,10 +365,16 @@ public class ITextRenderer {
     public void finishPDF() {
         if (_pdfDoc != null) {
             fireOnClose();
-            _pdfDoc.close();
+            closeDocument(_pdfDoc);
         }
     }
 
+    private void closeDocument(com.itextpdf.text.Document doc) {
+        long start = System.nanoTime();
+        doc.close();
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PDF_WRITE, start);
+    }
+
     public void createPDF(OutputStream os, boolean finish) throws DocumentException, IOException {
         createPDF(os, finish, 0);
     }
@@ -300,6 +403,9 @@ public class ITextRenderer {
             writer.setEncryption(_pdfEncryption.getUserPassword(), _pdfEncryption.getOwnerPassword(),
                     _pdfEncryption.getAllowedPrivileges(), _pdfEncryption.getEncryptionType());
         }
+        if (_pdfCompression != null) {
+            _pdfCompression.configure(writer);
+        }
         _pdfDoc = doc;
         _writer = writer;
 
@@ -310,7 +416,7 @@ public class ITextRenderer {
 
         if (finish) {
             fireOnClose();
-            doc.close();
+            closeDocument(doc);
         }
     }
 
@@ -349,7 +455,9 @@ public class ITextRenderer {
         for (int i = 0; i < pageCount; i++) {
             PageBox currentPage = (PageBox) pages.get(i);
             c.setPage(i, currentPage);
+            long start = System.nanoTime();
             paintPage(c, writer, currentPage);
+            _sharedContext.phaseCompleted(MetricsListener.PHASE_PAINT, start);
             _outputDevice.finishPage();
             if (i != pageCount - 1) {
                 PageBox nextPage = (PageBox) pages.get(i + 1);
@@ -357,6 +465,9 @@ public class ITextRenderer {
                         nextPage.getHeight(c) / _dotsPerPoint);
                 doc.setPageSize(nextPageSize);
                 doc.newPage();
+                if (_flushPages) {
+                    writer.flush();
+                }
                 _outputDevice.initializePage(writer.getDirectContent(), nextPageSize.getHeight());
             }
         }
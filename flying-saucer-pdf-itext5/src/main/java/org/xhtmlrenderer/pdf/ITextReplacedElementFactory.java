@@ -56,7 +56,13 @@ public class ITextReplacedElementFactory implements ReplacedElementFactory {
         if (nodeName.equals("img")) {
             String srcAttr = e.getAttribute("src");
             if (srcAttr != null && srcAttr.length() > 0) {
-                FSImage fsImage = uac.getImageResource(srcAttr).getImage();
+                FSImage fsImage;
+                if (uac instanceof ITextUserAgent) {
+                    fsImage = ((ITextUserAgent) uac).getImageResource(
+                            srcAttr, cssWidth, cssHeight).getImage();
+                } else {
+                    fsImage = uac.getImageResource(srcAttr).getImage();
+                }
                 if (fsImage != null) {
                     if (cssWidth != -1 || cssHeight != -1) {
                         fsImage = fsImage.createScaled(cssWidth, cssHeight);
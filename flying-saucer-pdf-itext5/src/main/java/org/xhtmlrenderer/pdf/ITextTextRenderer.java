@@ -48,7 +48,17 @@ public class ITextTextRenderer implements TextRenderer {
     }
 
     public FSFontMetrics getFSFontMetrics(FontContext context, FSFont font, String string) {
-        FontDescription descr = ((ITextFSFont)font).getFontDescription();
+        ITextFSFont fsFont = (ITextFSFont)font;
+        ITextFSFontMetrics result = fsFont.getFontMetrics();
+        if (result == null) {
+            result = createFSFontMetrics(fsFont);
+            fsFont.setFontMetrics(result);
+        }
+        return result;
+    }
+
+    private ITextFSFontMetrics createFSFontMetrics(ITextFSFont font) {
+        FontDescription descr = font.getFontDescription();
         BaseFont bf = descr.getFont();
         float size = font.getSize2D();
         ITextFSFontMetrics result = new ITextFSFontMetrics();
@@ -69,8 +79,7 @@ public class ITextTextRenderer implements TextRenderer {
     }
 
     public int getWidth(FontContext context, FSFont font, String string) {
-        BaseFont bf = ((ITextFSFont)font).getFontDescription().getFont();
-        float result = bf.getWidthPoint(string, font.getSize2D());
+        float result = getLogicalGlyphsWidth(context, font, string);
         if (result - Math.floor(result) < TEXT_MEASURING_DELTA) {
             return (int)result;
         } else {
@@ -79,8 +88,8 @@ public class ITextTextRenderer implements TextRenderer {
     }
 
     public float getLogicalGlyphsWidth(FontContext fontContext, FSFont font, String string) {
-        BaseFont bf = ((ITextFSFont)font).getFontDescription().getFont();
-        return bf.getWidthPoint(string, font.getSize2D());
+        ITextAdvanceWidths widths = ((ITextFSFont)font).getFontDescription().getAdvanceWidths();
+        return widths.getWidthPoint(string, font.getSize2D());
     }
 
     public void setFontScale(float scale) {
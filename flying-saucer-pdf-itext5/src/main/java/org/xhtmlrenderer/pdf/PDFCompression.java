@@ -0,0 +1,99 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import com.itextpdf.text.pdf.PdfStream;
+import com.itextpdf.text.pdf.PdfWriter;
+
+/**
+ * How PDF output is compressed.
+ * <p>
+ * The compression level (0 to 9, as for {@link java.util.zip.Deflater}) is
+ * used for the content streams of the pages and for the fonts and images
+ * embedded in them. Full compression also packs the objects of the document
+ * into object streams, with a cross-reference stream in place of the
+ * cross-reference table; the two always go together, and need PDF 1.5, which
+ * the version of the output is raised to.
+ * <p>
+ * Within one document each font and each cached image is written once
+ * however many pages use it. Merging identical resources matters when
+ * documents are copied into one, as {@link ITextBatchRenderer} does: fonts
+ * and images that are the same in several documents are then written once.
+ */
+public class PDFCompression {
+    private int _compressionLevel = PdfStream.DEFAULT_COMPRESSION;
+    private boolean _fullCompression;
+    private boolean _mergeIdenticalResources;
+
+    public PDFCompression() {
+    }
+
+    public PDFCompression(int compressionLevel, boolean fullCompression) {
+        setCompressionLevel(compressionLevel);
+        _fullCompression = fullCompression;
+    }
+
+    public PDFCompression(int compressionLevel, boolean fullCompression, boolean mergeIdenticalResources) {
+        this(compressionLevel, fullCompression);
+        _mergeIdenticalResources = mergeIdenticalResources;
+    }
+
+    public int getCompressionLevel() {
+        return _compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel from {@link PdfStream#NO_COMPRESSION} to
+     *        {@link PdfStream#BEST_COMPRESSION}, or
+     *        {@link PdfStream#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < PdfStream.DEFAULT_COMPRESSION ||
+                compressionLevel > PdfStream.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        _compressionLevel = compressionLevel;
+    }
+
+    public boolean isFullCompression() {
+        return _fullCompression;
+    }
+
+    public void setFullCompression(boolean fullCompression) {
+        _fullCompression = fullCompression;
+    }
+
+    public boolean isMergeIdenticalResources() {
+        return _mergeIdenticalResources;
+    }
+
+    public void setMergeIdenticalResources(boolean mergeIdenticalResources) {
+        _mergeIdenticalResources = mergeIdenticalResources;
+    }
+
+    /**
+     * Sets up a writer, before its document is opened, to compress as set
+     * here.
+     */
+    void configure(PdfWriter writer) {
+        writer.setCompressionLevel(_compressionLevel);
+        if (_fullCompression) {
+            writer.setFullCompression();
+        }
+    }
+}
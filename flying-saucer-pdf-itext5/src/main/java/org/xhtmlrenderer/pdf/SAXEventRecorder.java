@@ -27,6 +27,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 public class SAXEventRecorder implements ContentHandler {
     private List _events = new LinkedList();
@@ -35,10 +36,13 @@ public class SAXEventRecorder implements ContentHandler {
         public void replay(ContentHandler handler) throws SAXException;
     }
     
-    public void characters(final char[] ch, final int start, final int length) throws SAXException {
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        // The parser reuses its buffer
+        final char[] copy = new char[length];
+        System.arraycopy(ch, start, copy, 0, length);
         _events.add(new Event() {
             public void replay(ContentHandler handler) throws SAXException {
-                handler.characters(ch, start, length);
+                handler.characters(copy, 0, copy.length);
             }
         });
     }
@@ -68,10 +72,13 @@ public class SAXEventRecorder implements ContentHandler {
         });
     }
 
-    public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        // The parser reuses its buffer
+        final char[] copy = new char[length];
+        System.arraycopy(ch, start, copy, 0, length);
         _events.add(new Event() {
             public void replay(ContentHandler handler) throws SAXException {
-                handler.ignorableWhitespace(ch, start, length);
+                handler.ignorableWhitespace(copy, 0, copy.length);
             }
         });
     }
@@ -104,10 +111,12 @@ public class SAXEventRecorder implements ContentHandler {
     }
 
     public void startElement(
-            final String uri, final String localName, final String qName, final Attributes atts) throws SAXException {
+            final String uri, final String localName, final String qName, Attributes atts) throws SAXException {
+        // The parser reuses its attributes too
+        final Attributes copy = new AttributesImpl(atts);
         _events.add(new Event() {
             public void replay(ContentHandler handler) throws SAXException {
-                handler.startElement(uri, localName, qName, atts);
+                handler.startElement(uri, localName, qName, copy);
             }
         });        
     }
@@ -68,7 +68,7 @@ public class TrueTypeUtil {
         throw new NoSuchFieldException("Could not find tables field");
     }
 
-    private static String getTTCName(String name) {
+    static String getTTCName(String name) {
         int idx = name.toLowerCase().indexOf(".ttc,");
         if (idx < 0) {
             return name;
@@ -0,0 +1,72 @@
+package org.xhtmlrenderer.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xml.sax.InputSource;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.SimpleBookmark;
+
+/**
+ * Renders a stream of documents on one worker, so every document goes
+ * through the same pooled renderer, and checks that each PDF only has the
+ * title and bookmarks of its own document.
+ */
+public class TestBatchRenderer extends TestCase
+{
+    private static final String[] TITLES = { "First", "Second", "Third" };
+
+    private String createStream()
+    {
+        StringBuffer xml = new StringBuffer("<documents>");
+        for (int i = 0; i < TITLES.length; i++) {
+            xml.append("<html><head><title>" + TITLES[i] + "</title><bookmarks>");
+            xml.append("<bookmark name=\"" + TITLES[i] + " chapter\" href=\"#c" + i + "\"/>");
+            xml.append("</bookmarks></head><body><p id=\"c" + i + "\">" + TITLES[i] + "</p>");
+            xml.append("</body></html>");
+        }
+        xml.append("</documents>");
+        return xml.toString();
+    }
+
+    public void testPooledRendererIsReset() throws Exception
+    {
+        final int[] created = new int[1];
+        final List pdfs = new ArrayList();
+        ITextBatchRenderer batch = new ITextBatchRenderer(1, 1);
+        batch.setRendererFactory(new ITextBatchRenderer.RendererFactory() {
+            public ITextRenderer createRenderer() {
+                created[0]++;
+                return new ITextRenderer();
+            }
+        });
+
+        int count = batch.renderEach(new InputSource(new StringReader(createStream())),
+                new ITextBatchRenderer.OutputFactory() {
+                    public OutputStream openOutput(int index, Document doc) throws IOException {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        pdfs.add(out);
+                        return out;
+                    }
+                });
+
+        assertEquals(TITLES.length, count);
+        assertEquals(1, created[0]);
+        for (int i = 0; i < TITLES.length; i++) {
+            PdfReader reader = new PdfReader(((ByteArrayOutputStream) pdfs.get(i)).toByteArray());
+            assertEquals(TITLES[i], reader.getInfo().get("Title"));
+            List bookmarks = SimpleBookmark.getBookmark(reader);
+            assertEquals(1, bookmarks.size());
+            assertEquals(TITLES[i] + " chapter", ((Map) bookmarks.get(0)).get("Title"));
+        }
+    }
+}
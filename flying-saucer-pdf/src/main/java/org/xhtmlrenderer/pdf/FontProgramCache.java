@@ -0,0 +1,163 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.BaseFont;
+
+/**
+ * TrueType and OpenType fonts parsed once and shared by every renderer, so
+ * adding the same fonts to a new renderer, or loading the same
+ * <code>@font-face</code> fonts for another document, reuses the parsed
+ * font, its metrics and its advance width table.
+ * <p>
+ * The program of an embedded font is kept in memory, so the subset of it
+ * written at the end of each PDF is read from memory instead of from the
+ * font file. The most memory used is set in megabytes by
+ * <code>xr.pdf.font-cache.max-size</code>; fonts used least recently are
+ * dropped first.
+ */
+class FontProgramCache {
+    // Fonts by source, least recently used first
+    private static final Map FONTS = new LinkedHashMap(16, 0.75f, true);
+    private static final long MAX_SIZE =
+            Configuration.valueAsLong("xr.pdf.font-cache.max-size", 64L) * 1024L * 1024L;
+    private static long _size;
+
+    private FontProgramCache() {
+    }
+
+    /**
+     * Returns the font in the TrueType or OpenType file at
+     * <code>path</code>, which may name a font of a collection as in
+     * <code>fonts.ttc,1</code>. A file that has changed since it was read
+     * is read again.
+     */
+    static FontDescription getFont(String path, String encoding, boolean embedded)
+            throws DocumentException, IOException {
+        File file = new File(TrueTypeUtil.getTTCName(path));
+        String key = path + '|' + encoding + '|' + embedded + '|' +
+                file.length() + '|' + file.lastModified();
+        Entry entry = get(key, null);
+        if (entry == null) {
+            // Fonts that are resources rather than files are read by iText
+            byte[] program = embedded && file.isFile() ?
+                    ITextFontResolver.readFile(file.getPath()) : null;
+            BaseFont font = BaseFont.createFont(path, encoding, embedded, false, program, null);
+            FontDescription descr = new FontDescription(font);
+            try {
+                if (program != null) {
+                    TrueTypeUtil.populateDescription(path, program, font, descr);
+                } else {
+                    TrueTypeUtil.populateDescription(path, font, descr);
+                }
+            } catch (Exception e) {
+                throw new XRRuntimeException(e.getMessage(), e);
+            }
+            entry = put(key, new Entry(descr, program, file.length()));
+        }
+        return new FontDescription(entry.description);
+    }
+
+    /**
+     * Returns the font in <code>program</code>, loaded from
+     * <code>uri</code> for a <code>@font-face</code> rule.
+     */
+    static FontDescription getFont(String uri, String encoding, boolean embedded, byte[] program)
+            throws DocumentException, IOException {
+        String key = uri + '|' + encoding + '|' + embedded + '|' +
+                program.length + '|' + Arrays.hashCode(program);
+        Entry entry = get(key, program);
+        if (entry == null) {
+            BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, program, null);
+            FontDescription descr = new FontDescription(font);
+            try {
+                TrueTypeUtil.populateDescription(uri, program, font, descr);
+            } catch (Exception e) {
+                throw new XRRuntimeException(e.getMessage(), e);
+            }
+            entry = put(key, new Entry(descr, program, program.length));
+        }
+        return new FontDescription(entry.description);
+    }
+
+    /**
+     * @param program if not null, the program the font must have been
+     *        read from
+     */
+    private static Entry get(String key, byte[] program) {
+        synchronized (FONTS) {
+            Entry entry = (Entry) FONTS.get(key);
+            if (entry != null && program != null && ! Arrays.equals(program, entry.program)) {
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Adds a font, unless another thread added it first, in which case
+     * that one is returned.
+     */
+    private static Entry put(String key, Entry entry) {
+        synchronized (FONTS) {
+            Entry current = (Entry) FONTS.get(key);
+            if (current != null &&
+                    (entry.program == null || Arrays.equals(entry.program, current.program))) {
+                return current;
+            }
+            if (entry.size > MAX_SIZE) {
+                return entry;
+            }
+            if (current != null) {
+                _size -= current.size;
+            }
+            FONTS.put(key, entry);
+            _size += entry.size;
+            Iterator i = FONTS.values().iterator();
+            while (_size > MAX_SIZE && i.hasNext()) {
+                _size -= ((Entry) i.next()).size;
+                i.remove();
+            }
+            return entry;
+        }
+    }
+
+    private static final class Entry {
+        private final FontDescription description;
+        private final byte[] program;
+        private final long size;
+
+        private Entry(FontDescription description, byte[] program, long size) {
+            this.description = description;
+            this.program = program;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.xhtmlrenderer.dom.Document;
+import org.xhtmlrenderer.parser.XHTMLJavaSAXParser;
+import org.xhtmlrenderer.util.XRRuntimeException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSmartCopy;
+
+/**
+ * Renders the documents of one large XML stream (for example an export of
+ * thousands of statements, each a child of the root element) to PDF on a
+ * pool of worker threads. The stream is read with a {@link DocumentSplitter},
+ * which builds each document as it is read, so the stream is never held as a
+ * whole; reading waits while the set number of documents are being laid
+ * out, written or, for a merged PDF, waiting for the documents before them.
+ * <p>
+ * Each worker keeps its own {@link ITextRenderer}, reset between documents,
+ * so fonts and cached stylesheets and images are set up once per worker.
+ * Renderers are made by a {@link RendererFactory}, which is where fonts are
+ * added to them.
+ */
+public class ITextBatchRenderer {
+    /**
+     * Creates the renderers the workers use.
+     */
+    public interface RendererFactory {
+        public ITextRenderer createRenderer();
+    }
+
+    /**
+     * Opens the stream each document's PDF is written to. Called on a worker
+     * thread; the stream is closed once the PDF has been written.
+     */
+    public interface OutputFactory {
+        /**
+         * @param index the position of the document in the stream, from 0
+         */
+        public OutputStream openOutput(int index, Document doc) throws IOException;
+    }
+
+    private static final RendererFactory DEFAULT_RENDERER_FACTORY = new RendererFactory() {
+        public ITextRenderer createRenderer() {
+            return new ITextRenderer();
+        }
+    };
+
+    private final int _threads;
+    private final int _maxPending;
+
+    private RendererFactory _rendererFactory = DEFAULT_RENDERER_FACTORY;
+    private String _baseURL;
+    private PDFCompression _pdfCompression;
+
+    /**
+     * Creates a batch renderer with a worker for each processor.
+     */
+    public ITextBatchRenderer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ITextBatchRenderer(int threads) {
+        this(threads, threads * 2);
+    }
+
+    /**
+     * @param threads the number of worker threads
+     * @param maxPending the most documents read but not written out yet,
+     *        which bounds the memory used
+     */
+    public ITextBatchRenderer(int threads, int maxPending) {
+        if (threads < 1 || maxPending < threads) {
+            throw new IllegalArgumentException(
+                    "Need at least one thread, and at least as many pending documents as threads");
+        }
+        _threads = threads;
+        _maxPending = maxPending;
+    }
+
+    public void setRendererFactory(RendererFactory rendererFactory) {
+        _rendererFactory = rendererFactory;
+    }
+
+    /**
+     * Sets the URL relative resources (stylesheets, images) of the documents
+     * are resolved against.
+     */
+    public void setBaseURL(String baseURL) {
+        _baseURL = baseURL;
+    }
+
+    /**
+     * Sets how the PDFs are compressed, overriding the setting of the
+     * renderers. With merged output, identical fonts and images of the
+     * documents are written once if
+     * {@link PDFCompression#isMergeIdenticalResources()} is set.
+     */
+    public void setPDFCompression(PDFCompression pdfCompression) {
+        _pdfCompression = pdfCompression;
+    }
+
+    /**
+     * Writes a PDF for each document of the stream.
+     *
+     * @return the number of documents written
+     */
+    public int renderEach(InputSource source, final OutputFactory outputs)
+            throws IOException, DocumentException {
+        Batch batch = new Batch() {
+            protected void render(ITextRenderer renderer, int index, Document doc)
+                    throws IOException, DocumentException {
+                OutputStream out = outputs.openOutput(index, doc);
+                try {
+                    renderer.createPDF(out);
+                } finally {
+                    out.close();
+                }
+                completed();
+            }
+        };
+        return batch.run(source);
+    }
+
+    /**
+     * Writes all documents of the stream into one PDF, in the order they
+     * appear. Each document is written on its own by a worker, then its pages
+     * are copied into <code>out</code>, which is closed at the end. Nothing
+     * is written if the stream has no documents.
+     *
+     * @return the number of documents written
+     */
+    public int renderMerged(InputSource source, OutputStream out)
+            throws IOException, DocumentException {
+        final Merger merger = new Merger(out, _pdfCompression);
+        Batch batch = new Batch() {
+            protected void render(ITextRenderer renderer, int index, Document doc)
+                    throws IOException, DocumentException {
+                ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+                renderer.createPDF(pdf);
+                merger.add(this, index, pdf.toByteArray());
+            }
+
+            protected void failed(int index) {
+                merger.add(this, index, null);
+            }
+        };
+        try {
+            return batch.run(source);
+        } finally {
+            merger.close();
+        }
+    }
+
+    /**
+     * A single run over a stream: reads the documents and hands each to a
+     * worker, at most <code>_maxPending</code> at a time.
+     */
+    private abstract class Batch implements DocumentSplitter.DocumentListener {
+        private final Semaphore _pending = new Semaphore(_maxPending);
+        private final LinkedBlockingQueue _renderers = new LinkedBlockingQueue();
+        private ExecutorService _executor;
+        private int _count;
+        private volatile Throwable _failure;
+
+        /**
+         * Renders one document; calls {@link #completed()} once its output is
+         * done with.
+         */
+        protected abstract void render(ITextRenderer renderer, int index, Document doc)
+                throws IOException, DocumentException;
+
+        protected void failed(int index) {
+            completed();
+        }
+
+        protected void completed() {
+            _pending.release();
+        }
+
+        protected boolean hasFailed() {
+            return _failure != null;
+        }
+
+        /**
+         * Records the first failure, which stops reading and is thrown from
+         * {@link #run(InputSource)}.
+         */
+        protected void fail(Throwable t) {
+            synchronized (this) {
+                if (_failure == null) {
+                    _failure = t;
+                }
+            }
+        }
+
+        public int run(InputSource source) throws IOException, DocumentException {
+            _executor = Executors.newFixedThreadPool(_threads);
+            try {
+                XMLReader reader = XHTMLJavaSAXParser.newXMLReader();
+                reader.setContentHandler(new DocumentSplitter(this));
+                reader.parse(source);
+            } catch (SAXException e) {
+                if (_failure == null) {
+                    throw new XRRuntimeException("Can't read the documents. " + e.getMessage(), e);
+                }
+            } finally {
+                _executor.shutdown();
+                try {
+                    while (! _executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    }
+                } catch (InterruptedException e) {
+                    _executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            Throwable failure = _failure;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof DocumentException) {
+                throw (DocumentException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return _count;
+        }
+
+        public void documentRead(final Document doc) throws SAXException {
+            try {
+                _pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SAXException("Interrupted");
+            }
+            if (_failure != null) {
+                _pending.release();
+                throw new SAXException("Stopped after a document failed");
+            }
+
+            final int index = _count++;
+            _executor.execute(new Runnable() {
+                public void run() {
+                    ITextRenderer renderer = null;
+                    try {
+                        renderer = takeRenderer();
+                        renderer.setDocument(doc, _baseURL);
+                        renderer.layout();
+                        render(renderer, index, doc);
+                    } catch (Throwable t) {
+                        fail(t);
+                        failed(index);
+                    } finally {
+                        if (renderer != null) {
+                            renderer.reset();
+                            _renderers.offer(renderer);
+                        }
+                    }
+                }
+            });
+        }
+
+        private ITextRenderer takeRenderer() {
+            ITextRenderer result = (ITextRenderer) _renderers.poll();
+            if (result == null) {
+                result = _rendererFactory.createRenderer();
+                if (_pdfCompression != null) {
+                    result.setPDFCompression(_pdfCompression);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Copies the PDFs of the documents into one, in the order of the
+     * documents, keeping those that are done early until it is their turn.
+     */
+    private static class Merger {
+        private final OutputStream _out;
+        private final PDFCompression _compression;
+        private final Map _waiting = new HashMap();
+        private int _next;
+
+        private com.lowagie.text.Document _pdfDoc;
+        private PdfCopy _copy;
+
+        public Merger(OutputStream out, PDFCompression compression) {
+            _out = out;
+            _compression = compression;
+        }
+
+        /**
+         * @param pdf the PDF of the document, or null if it failed
+         */
+        public synchronized void add(Batch batch, int index, byte[] pdf) {
+            _waiting.put(new Integer(index), pdf);
+            while (_waiting.containsKey(new Integer(_next))) {
+                byte[] next = (byte[]) _waiting.remove(new Integer(_next));
+                _next++;
+                try {
+                    if (next != null && ! batch.hasFailed()) {
+                        append(next);
+                    }
+                } catch (Throwable t) {
+                    batch.fail(t);
+                } finally {
+                    batch.completed();
+                }
+            }
+        }
+
+        private void append(byte[] pdf) throws IOException, DocumentException {
+            if (_copy == null) {
+                _pdfDoc = new com.lowagie.text.Document();
+                if (_compression != null && _compression.isMergeIdenticalResources()) {
+                    _copy = new PdfSmartCopy(_pdfDoc, _out);
+                } else {
+                    _copy = new PdfCopy(_pdfDoc, _out);
+                }
+                if (_compression != null) {
+                    _compression.configure(_copy);
+                }
+                _pdfDoc.open();
+            }
+            PdfReader reader = new PdfReader(pdf);
+            int pages = reader.getNumberOfPages();
+            for (int i = 1; i <= pages; i++) {
+                _copy.addPage(_copy.getImportedPage(reader, i));
+            }
+            _copy.freeReader(reader);
+        }
+
+        public synchronized void close() throws IOException {
+            if (_pdfDoc != null) {
+                _pdfDoc.close();
+            } else {
+                _out.close();
+            }
+        }
+    }
+}
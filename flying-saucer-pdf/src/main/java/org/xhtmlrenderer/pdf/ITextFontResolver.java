@@ -75,7 +75,7 @@ public class ITextFontResolver implements FontResolver {
         }
     }
 
-    public FSFont resolveFont(SharedContext renderingContext, FontSpecification spec) {
+    public synchronized FSFont resolveFont(SharedContext renderingContext, FontSpecification spec) {
         return resolveFont(renderingContext, spec.getFamilies(), spec.getSize(), spec.getFontWeight(), spec.getFontStyle(), spec.getVariant());
     }
 
@@ -84,21 +84,31 @@ public class ITextFontResolver implements FontResolver {
         _fontCache = new HashMap();
     }
 
+    /**
+     * Removes the fonts loaded from the current document's @font-face rules.
+     * Resolved fonts are only forgotten if a @font-face font was actually
+     * removed, so a renderer that is reused for documents without @font-face
+     * rules keeps its font cache warm.
+     */
     public void flushFontFaceFonts() {
-        _fontCache = new HashMap();
-
+        boolean removed = false;
         for (Iterator i = _fontFamilies.values().iterator(); i.hasNext(); ) {
             FontFamily family = (FontFamily)i.next();
             for (Iterator j = family.getFontDescriptions().iterator(); j.hasNext(); ) {
                 FontDescription d = (FontDescription)j.next();
                 if (d.isFromFontFace()) {
                     j.remove();
+                    removed = true;
                 }
             }
             if (family.getFontDescriptions().size() == 0) {
                 i.remove();
             }
         }
+
+        if (removed) {
+            _fontCache = new HashMap();
+        }
     }
 
     public void importFontFaces(List fontFaces) {
@@ -188,27 +198,20 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         String lower = path.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            BaseFont font = BaseFont.createFont(path, encoding, embedded);
+            FontDescription font = FontProgramCache.getFont(path, encoding, embedded);
 
             String[] fontFamilyNames;
             if (fontFamilyNameOverride != null) {
                 fontFamilyNames = new String[] { fontFamilyNameOverride };
             } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+                fontFamilyNames = TrueTypeUtil.getFamilyNames(font.getFont());
             }
 
             for (int i = 0; i < fontFamilyNames.length; i++) {
                 String fontFamilyName = fontFamilyNames[i];
                 FontFamily fontFamily = getFontFamily(fontFamilyName);
 
-                FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(path, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
-                fontFamily.addFontDescription(descr);
+                fontFamily.addFontDescription(new FontDescription(font));
             }
         } else if (lower.endsWith(".ttc")) {
             String[] names = BaseFont.enumerateTTCNames(path);
@@ -247,25 +250,19 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         String lower = uri.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, afmttf, pfb);
+            FontDescription font = FontProgramCache.getFont(uri, encoding, embedded, afmttf);
 
             String[] fontFamilyNames;
             if (fontFamilyNameOverride != null) {
                 fontFamilyNames = new String[] { fontFamilyNameOverride };
             } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+                fontFamilyNames = TrueTypeUtil.getFamilyNames(font.getFont());
             }
 
             for (int i = 0; i < fontFamilyNames.length; i++) {
                 FontFamily fontFamily = getFontFamily(fontFamilyNames[i]);
 
                 FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(uri, afmttf, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
                 descr.setFromFontFace(true);
 
                 fontFamily.addFontDescription(descr);
@@ -293,7 +290,7 @@ public class ITextFontResolver implements FontResolver {
         }
     }
 
-    private byte[] readFile(String path) throws IOException {
+    static byte[] readFile(String path) throws IOException {
         File f = new File(path);
         if (f.exists()) {
             ByteArrayOutputStream result = new ByteArrayOutputStream((int)f.length());
@@ -324,6 +321,10 @@ public class ITextFontResolver implements FontResolver {
     }
 
     public FontFamily getFontFamily(String fontFamilyName) {
+        // Callers use this to add fonts to the family, so any earlier
+        // matches may no longer be the best ones
+        _fontCache = new HashMap();
+
         FontFamily fontFamily = (FontFamily)_fontFamilies.get(fontFamilyName);
         if (fontFamily == null) {
             fontFamily = new FontFamily();
@@ -715,6 +716,7 @@ public class ITextFontResolver implements FontResolver {
         private int _weight;
 
         private BaseFont _font;
+        private ITextAdvanceWidths _advanceWidths;
 
         private float _underlinePosition;
         private float _underlineThickness;
@@ -738,12 +740,39 @@ public class ITextFontResolver implements FontResolver {
             setMetricDefaults();
         }
 
+        /**
+         * Creates a description of the same font, sharing its advance width
+         * table.
+         */
+        public FontDescription(FontDescription other) {
+            _style = other._style;
+            _weight = other._weight;
+            _font = other._font;
+            _advanceWidths = other.getAdvanceWidths();
+            _underlinePosition = other._underlinePosition;
+            _underlineThickness = other._underlineThickness;
+            _yStrikeoutSize = other._yStrikeoutSize;
+            _yStrikeoutPosition = other._yStrikeoutPosition;
+            _isFromFontFace = other._isFromFontFace;
+        }
+
         public BaseFont getFont() {
             return _font;
         }
 
         public void setFont(BaseFont font) {
             _font = font;
+            _advanceWidths = null;
+        }
+
+        /**
+         * Returns the table used to measure text in this font.
+         */
+        public ITextAdvanceWidths getAdvanceWidths() {
+            if (_advanceWidths == null) {
+                _advanceWidths = new ITextAdvanceWidths(_font);
+            }
+            return _advanceWidths;
         }
 
         public int getWeight() {
@@ -0,0 +1,194 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2006 Wisconsin Court System
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+
+import javax.imageio.ImageIO;
+
+import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.extend.FSImage;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.FSFont;
+import org.xhtmlrenderer.render.JustificationInfo;
+import org.xhtmlrenderer.render.RenderingContext;
+import org.xhtmlrenderer.swing.Java2DOutputDevice;
+import org.xhtmlrenderer.util.XRLog;
+
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.BaseFont;
+
+/**
+ * A Java2D output device which paints a box tree laid out by
+ * {@link ITextRenderer}. Fonts are mapped from their iText descriptions to
+ * the closest AWT font, but every glyph is placed using the iText advance
+ * widths so the raster matches the PDF output line for line.
+ */
+public class ITextJava2DOutputDevice extends Java2DOutputDevice {
+    private final Map _awtFonts = new HashMap();
+    private final Map _awtImages = new WeakHashMap();
+
+    private ITextFSFont _font;
+
+    public ITextJava2DOutputDevice(Graphics2D graphics) {
+        super(graphics);
+    }
+
+    public ITextJava2DOutputDevice(BufferedImage outputImage) {
+        super(outputImage);
+    }
+
+    public void setFont(FSFont font) {
+        _font = (ITextFSFont) font;
+    }
+
+    public void drawString(String s, float x, float y, JustificationInfo info) {
+        if (s.length() == 0) {
+            return;
+        }
+        Graphics2D graphics = getGraphics();
+        Font awtFont = getAWTFont(_font);
+        graphics.setFont(awtFont);
+
+        GlyphVector vector = awtFont.createGlyphVector(graphics.getFontRenderContext(), s);
+        if (vector.getNumGlyphs() != s.length()) {
+            // Complex shaping, fall back to the AWT positions
+            graphics.drawString(s, x, y);
+            return;
+        }
+
+        BaseFont bf = _font.getFontDescription().getFont();
+        float size = _font.getSize2D();
+        float advance = 0.0f;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            vector.setGlyphPosition(i, new Point2D.Float(advance, 0.0f));
+            advance += bf.getWidthPoint(c, size);
+            if (info != null && i != len - 1) {
+                if (c == ' ' || c == '\u00a0' || c == '\u3000') {
+                    advance += info.getSpaceAdjust();
+                } else {
+                    advance += info.getNonSpaceAdjust();
+                }
+            }
+        }
+        graphics.drawGlyphVector(vector, x, y);
+    }
+
+    public void drawImage(FSImage image, int x, int y) {
+        if (image instanceof ITextFSImage) {
+            java.awt.Image awtImage = getAWTImage(((ITextFSImage) image).getImage());
+            if (awtImage != null) {
+                getGraphics().drawImage(awtImage, x, y, image.getWidth(), image.getHeight(), null);
+            }
+        } else if (!(image instanceof PDFAsImage)) {
+            super.drawImage(image, x, y);
+        }
+    }
+
+    public void paintReplacedElement(RenderingContext c, BlockBox box) {
+        ReplacedElement replaced = box.getReplacedElement();
+        if (replaced instanceof ITextImageElement) {
+            Rectangle contentBounds = box.getContentAreaEdge(box.getAbsX(), box.getAbsY(), c);
+            drawImage(((ITextImageElement) replaced).getImage(), contentBounds.x, contentBounds.y);
+        } else if (!(replaced instanceof ITextReplacedElement)) {
+            super.paintReplacedElement(c, box);
+        }
+    }
+
+    private Font getAWTFont(ITextFSFont font) {
+        FontDescription desc = font.getFontDescription();
+        int style = Font.PLAIN;
+        FontSpecification spec = getFontSpecification();
+        int weight = spec != null ?
+                ITextFontResolver.convertWeightToInt(spec.getFontWeight()) : desc.getWeight();
+        if (weight >= 600) {
+            style |= Font.BOLD;
+        }
+        IdentValue fontStyle = spec != null ? spec.getFontStyle() : desc.getStyle();
+        if (fontStyle == IdentValue.ITALIC || fontStyle == IdentValue.OBLIQUE) {
+            style |= Font.ITALIC;
+        }
+
+        String key = desc.getFont().getPostscriptFontName() + "-" + style;
+        Font base = (Font) _awtFonts.get(key);
+        if (base == null) {
+            base = new Font(toAWTFamily(desc.getFont()), style, 1);
+            _awtFonts.put(key, base);
+        }
+        return base.deriveFont(font.getSize2D());
+    }
+
+    private static String toAWTFamily(BaseFont bf) {
+        String name = bf.getPostscriptFontName();
+        if (name.startsWith("Helvetica")) {
+            return "SansSerif";
+        } else if (name.startsWith("Times")) {
+            return "Serif";
+        } else if (name.startsWith("Courier")) {
+            return "Monospaced";
+        }
+
+        String[][] names = bf.getFamilyFontName();
+        if (names != null && names.length > 0) {
+            String family = names[0][3];
+            if (new Font(family, Font.PLAIN, 1).getFamily().equals(family)) {
+                return family;
+            }
+        }
+        return "SansSerif";
+    }
+
+    private java.awt.Image getAWTImage(Image image) {
+        byte[] data = image.getOriginalData();
+        if (data == null) {
+            data = image.getRawData();
+        }
+        if (data == null) {
+            return null;
+        }
+
+        BufferedImage result = (BufferedImage) _awtImages.get(data);
+        if (result == null && !_awtImages.containsKey(data)) {
+            try {
+                result = ImageIO.read(new ByteArrayInputStream(data));
+            } catch (IOException e) {
+                XRLog.render(Level.WARNING, "Unable to decode image for raster output: " + e.getMessage());
+            }
+            _awtImages.put(data, result);
+        }
+        return result;
+    }
+}
@@ -159,6 +159,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void setWriter(PdfWriter writer) {
+        if (writer != _writer) {
+            // Form field names and the default destination belong to a PDF
+            _defaultDestination = null;
+            _nextFormFieldIndex = 0;
+        }
         _writer = writer;
     }
 
@@ -897,6 +902,22 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         return _dotsPerPoint;
     }
 
+    /**
+     * Clears the state collected for the previous document (bookmarks,
+     * metadata, link targets and the like) so this output device can be
+     * reused. State belonging to the whole PDF, such as the names given to
+     * form fields, is kept until a new writer is set, so documents appended
+     * with {@link ITextRenderer#writeNextDocument()} don't clash. Cached
+     * {@link PdfReader}s are kept.
+     */
+    public void reset() {
+        _bookmarks = new ArrayList();
+        _metadata = new ArrayList();
+        _root = null;
+        _startPageNo = 0;
+        _linkTargetAreas = null;
+    }
+
     public void start(Document doc) {
         loadBookmarks(doc);
         loadMetadata(doc);
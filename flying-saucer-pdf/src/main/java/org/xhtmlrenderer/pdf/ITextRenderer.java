@@ -19,9 +19,14 @@
  */
 package org.xhtmlrenderer.pdf;
 
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -29,6 +34,8 @@ import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -37,7 +44,9 @@ import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.dom.Document;
 import org.xhtmlrenderer.dom.Element;
 import org.xhtmlrenderer.dom.Node;
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.OutputDevice;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.Layer;
@@ -49,6 +58,7 @@ import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
 import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
 import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.ImageUtil;
 import org.xml.sax.InputSource;
 
 import com.lowagie.text.DocumentException;
@@ -74,6 +84,10 @@ public class ITextRenderer {
 
     private PDFEncryption _pdfEncryption;
 
+    private PDFCompression _pdfCompression;
+
+    private boolean _flushPages;
+
     // note: not hard-coding a default version in the _pdfVersion field as this
     // may change between iText releases
     // check for null before calling writer.setPdfVersion()
@@ -123,7 +137,10 @@ public class ITextRenderer {
     }
 
     private Document loadDocument(final String uri) {
-        return _sharedContext.getUac().getDocumentResource(uri).getDocument();
+        long start = System.nanoTime();
+        Document result = _sharedContext.getUac().getDocumentResource(uri).getDocument();
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PARSE, start);
+        return result;
     }
 
     public void setDocument(String uri) {
@@ -145,8 +162,10 @@ public class ITextRenderer {
     }
 
     public void setDocumentFromString(String content, String baseUrl) {
+        long start = System.nanoTime();
         InputSource is = new InputSource(new BufferedReader(new StringReader(content)));
         Document dom = XMLDocumentResource.load(baseUrl, is).getDocument();
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PARSE, start);
 
         setDocument(dom, baseUrl);
     }
@@ -157,6 +176,7 @@ public class ITextRenderer {
         getFontResolver().flushFontFaceFonts();
 
         _sharedContext.reset();
+        _outputDevice.reset();
         if (Configuration.isTrue("xr.cache.stylesheets", true)) {
             _sharedContext.getCss().flushStyleSheets();
         } else {
@@ -168,6 +188,25 @@ public class ITextRenderer {
         getFontResolver().importFontFaces(_sharedContext.getCss().getFontFaceRules());
     }
 
+    /**
+     * Clears all state belonging to the previous document so this renderer
+     * can be used for an unrelated one. Fonts, cached stylesheets and images
+     * are kept, which makes reusing a renderer much cheaper than creating a
+     * new one per document. Call this after {@link #finishPDF()} (or after
+     * {@link #createPDF(OutputStream)} has finished the document) and before
+     * the next {@link #setDocument(Document, String)}.
+     */
+    public void reset() {
+        _doc = null;
+        _root = null;
+        _pdfDoc = null;
+        _writer = null;
+
+        getFontResolver().flushFontFaceFonts();
+        _sharedContext.reset();
+        _outputDevice.reset();
+    }
+
     public PDFEncryption getPDFEncryption() {
         return _pdfEncryption;
     }
@@ -176,6 +215,19 @@ public class ITextRenderer {
         _pdfEncryption = pdfEncryption;
     }
 
+    public PDFCompression getPDFCompression() {
+        return _pdfCompression;
+    }
+
+    /**
+     * Sets how the PDF is compressed; without this, content streams are
+     * compressed at the default level and objects are not packed into
+     * object streams.
+     */
+    public void setPDFCompression(PDFCompression pdfCompression) {
+        _pdfCompression = pdfCompression;
+    }
+
     public void setPDFVersion(char _v) {
         for (int i = 0; i < validPdfVersions.length; i++) {
             if (_v == validPdfVersions[i]) {
@@ -192,13 +244,31 @@ public class ITextRenderer {
     }
 
     public void layout() {
+        layout(_sharedContext.getMaxPages());
+    }
+
+    /**
+     * Lays out only as much of the document as fills its first
+     * <code>maxPages</code> pages, which is much faster for a preview of a
+     * long document; 0 lays out the whole document. See
+     * {@link SharedContext#setMaxPages(int)}.
+     */
+    public void layout(int maxPages) {
         LayoutContext c = newLayoutContext();
+        c.setMaxPages(maxPages);
+        long start = System.nanoTime();
         BlockBox root = BoxBuilder.createRootBox(c, _doc);
         root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
         root.layout(c);
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_LAYOUT, start);
+
+        start = System.nanoTime();
         Dimension dim = root.getLayer().getPaintingDimension(c);
         root.getLayer().trimEmptyPages(c, dim.height);
+        root.getLayer().limitPageCount(maxPages);
         root.getLayer().layoutPages(c);
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PAGINATION, start);
+        _sharedContext.count(MetricsListener.COUNT_PAGES, root.getLayer().getPages().size());
         _root = root;
     }
 
@@ -234,6 +304,39 @@ public class ITextRenderer {
         createPDF(os, true, 0);
     }
 
+    /**
+     * Writes the PDF to <code>channel</code>, sending each page as soon as
+     * it is complete, and leaves the channel open. Only the objects written
+     * when the document is closed (fonts, the outline and the
+     * cross-reference table) are sent at the end.
+     */
+    public void createPDF(WritableByteChannel channel) throws DocumentException, IOException {
+        OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+        boolean flushPages = _flushPages;
+        _flushPages = true;
+        try {
+            createPDF(os, false, 0);
+            _writer.setCloseStream(false);
+            finishPDF();
+            os.flush();
+        } finally {
+            _flushPages = flushPages;
+        }
+    }
+
+    /**
+     * Sets whether the output stream is flushed as each page is written, so
+     * pages reach a stream that buffers its output, such as a servlet
+     * response, as they are completed instead of when its buffer fills.
+     */
+    public void setFlushPages(boolean flushPages) {
+        _flushPages = flushPages;
+    }
+
+    public boolean isFlushPages() {
+        return _flushPages;
+    }
+
     public void writeNextDocument() throws DocumentException {
         writeNextDocument(0);
     }
@@ -258,10 +361,16 @@ public class ITextRenderer {
     public void finishPDF() {
         if (_pdfDoc != null) {
             fireOnClose();
-            _pdfDoc.close();
+            closeDocument(_pdfDoc);
         }
     }
 
+    private void closeDocument(com.lowagie.text.Document doc) {
+        long start = System.nanoTime();
+        doc.close();
+        _sharedContext.phaseCompleted(MetricsListener.PHASE_PDF_WRITE, start);
+    }
+
     public void createPDF(OutputStream os, boolean finish) throws DocumentException {
         createPDF(os, finish, 0);
     }
@@ -288,6 +397,9 @@ public class ITextRenderer {
             writer.setEncryption(_pdfEncryption.getUserPassword(), _pdfEncryption.getOwnerPassword(),
                     _pdfEncryption.getAllowedPrivileges(), _pdfEncryption.getEncryptionType());
         }
+        if (_pdfCompression != null) {
+            _pdfCompression.configure(writer);
+        }
         _pdfDoc = doc;
         _writer = writer;
 
@@ -298,7 +410,7 @@ public class ITextRenderer {
 
         if (finish) {
             fireOnClose();
-            doc.close();
+            closeDocument(doc);
         }
     }
 
@@ -337,7 +449,9 @@ public class ITextRenderer {
         for (int i = 0; i < pageCount; i++) {
             PageBox currentPage = (PageBox) pages.get(i);
             c.setPage(i, currentPage);
+            long start = System.nanoTime();
             paintPage(c, writer, currentPage);
+            _sharedContext.phaseCompleted(MetricsListener.PHASE_PAINT, start);
             _outputDevice.finishPage();
             if (i != pageCount - 1) {
                 PageBox nextPage = (PageBox) pages.get(i + 1);
@@ -345,6 +459,9 @@ public class ITextRenderer {
                         nextPage.getHeight(c) / _dotsPerPoint);
                 doc.setPageSize(nextPageSize);
                 doc.newPage();
+                if (_flushPages) {
+                    writer.flush();
+                }
                 _outputDevice.initializePage(writer.getDirectContent(), nextPageSize.getHeight());
             }
         }
@@ -375,24 +492,92 @@ public class ITextRenderer {
     private void paintPage(RenderingContext c, PdfWriter writer, PageBox page) {
         provideMetadataToPage(writer, page);
 
+        paintPage(c, _outputDevice, page);
+    }
+
+    private void paintPage(RenderingContext c, OutputDevice outputDevice, PageBox page) {
         page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
         page.paintMarginAreas(c, 0, Layer.PAGED_MODE_PRINT);
         page.paintBorder(c, 0, Layer.PAGED_MODE_PRINT);
 
-        Shape working = _outputDevice.getClip();
+        Shape working = outputDevice.getClip();
 
         Rectangle content = page.getPrintClippingBounds(c);
-        _outputDevice.clip(content);
+        outputDevice.clip(content);
 
         int top = -page.getPaintingTop() + page.getMarginBorderPadding(c, CalculatedStyle.TOP);
 
         int left = page.getMarginBorderPadding(c, CalculatedStyle.LEFT);
 
-        _outputDevice.translate(left, top);
+        outputDevice.translate(left, top);
         _root.getLayer().paint(c);
-        _outputDevice.translate(-left, -top);
+        outputDevice.translate(-left, -top);
 
-        _outputDevice.setClip(working);
+        outputDevice.setClip(working);
+    }
+
+    /**
+     * Returns the number of pages produced by the last call to {@link #layout()}.
+     */
+    public int getPageCount() {
+        return _root.getLayer().getPages().size();
+    }
+
+    /**
+     * Renders one page of the current layout to an RGB image. The box tree
+     * built by {@link #layout()} is painted as is, so this may be called
+     * before or after {@link #createPDF(OutputStream)} without laying the
+     * document out again. Text is placed using the same font metrics as the
+     * PDF output.
+     *
+     * @param pageNo zero based index of the page to render
+     * @param scale image pixels per CSS pixel (1.0 gives 96 DPI)
+     * @return the rendered page
+     */
+    public BufferedImage createPageImage(int pageNo, float scale) {
+        return createPageImage(pageNo, scale, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Renders one page of the current layout to an image of the given
+     * {@link BufferedImage} type.
+     *
+     * @see #createPageImage(int, float)
+     */
+    public BufferedImage createPageImage(int pageNo, float scale, int imageType) {
+        List pages = _root.getLayer().getPages();
+        PageBox page = (PageBox) pages.get(pageNo);
+
+        RenderingContext c = newRenderingContext();
+        float factor = scale / _sharedContext.getDotsPerPixel();
+        int width = (int) Math.ceil(page.getWidth(c) * factor);
+        int height = (int) Math.ceil(page.getHeight(c) * factor);
+
+        BufferedImage image = ImageUtil.createCompatibleBufferedImage(width, height, imageType);
+        Graphics2D g = image.createGraphics();
+        try {
+            if (!image.getColorModel().hasAlpha()) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.scale(factor, factor);
+
+            ITextJava2DOutputDevice outputDevice = new ITextJava2DOutputDevice(g);
+            c.setOutputDevice(outputDevice);
+
+            _root.getLayer().assignPagePaintingPositions(c, Layer.PAGED_MODE_PRINT);
+            c.setPageCount(pages.size());
+            c.setPage(pageNo, page);
+            long start = System.nanoTime();
+            paintPage(c, outputDevice, page);
+            _sharedContext.phaseCompleted(MetricsListener.PHASE_PAINT, start);
+        } finally {
+            g.dispose();
+        }
+        return image;
     }
 
     private void provideMetadataToPage(PdfWriter writer, PageBox page) {
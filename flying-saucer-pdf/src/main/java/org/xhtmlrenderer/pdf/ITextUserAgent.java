@@ -20,16 +20,23 @@
  */
 package org.xhtmlrenderer.pdf;
 
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 
+import javax.imageio.ImageIO;
+
+import org.xhtmlrenderer.event.MetricsListener;
 import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.XRLog;
 
@@ -44,6 +51,8 @@ public class ITextUserAgent extends NaiveUserAgent {
 
     private final ITextOutputDevice _outputDevice;
 
+    private int _imageMaxDPI = Configuration.valueAsInt("xr.pdf.image.max-dpi", 0);
+
     public ITextUserAgent(ITextOutputDevice outputDevice) {
         super(IMAGE_CACHE_CAPACITY);
         _outputDevice = outputDevice;
@@ -67,6 +76,8 @@ public class ITextUserAgent extends NaiveUserAgent {
         } else {
             uriStr = resolveURI(uriStr);
             resource = (ImageResource) _imageCache.get(uriStr);
+            _sharedContext.count(resource != null ?
+                    MetricsListener.COUNT_IMAGE_CACHE_HIT : MetricsListener.COUNT_IMAGE_CACHE_MISS, 1);
             if (resource == null) {
                 InputStream is = resolveAndOpenStream(uriStr);
                 if (is != null) {
@@ -97,29 +108,129 @@ public class ITextUserAgent extends NaiveUserAgent {
                 }
             }
 
-            if (resource != null) {
-                FSImage image=resource.getImage();
-                if (image instanceof ITextFSImage) {
-                    image=(FSImage) ((ITextFSImage) resource.getImage()).clone();
+            resource = copyOf(resource, uriStr);
+        }
+        return resource;
+    }
+
+    /**
+     * Retrieves an image that will be drawn no larger than the given size,
+     * in dots. If a {@link #setImageMaxDPI(int) maximum resolution} is set,
+     * images with more detail than that at the given size are downsampled
+     * before they are embedded; otherwise, and for PDF and embedded images,
+     * this is the same as {@link #getImageResource(String)}. Downsampled
+     * images keep their full intrinsic size.
+     */
+    public ImageResource getImageResource(String uriStr, int width, int height) {
+        if (_imageMaxDPI <= 0 || (width <= 0 && height <= 0) ||
+                ImageUtil.isEmbeddedBase64Image(uriStr)) {
+            return getImageResource(uriStr);
+        }
+        uriStr = resolveURI(uriStr);
+        if (uriStr == null || uriStr.toLowerCase().endsWith(".pdf")) {
+            return getImageResource(uriStr);
+        }
+
+        // The most pixels worth embedding for a box of this size
+        float dotsPerInch = _outputDevice.getDotsPerPoint() * 72f;
+        int maxWidth = width > 0 ? (int) Math.ceil(width * _imageMaxDPI / dotsPerInch) : -1;
+        int maxHeight = height > 0 ? (int) Math.ceil(height * _imageMaxDPI / dotsPerInch) : -1;
+
+        String key = uriStr + "#" + maxWidth + "x" + maxHeight;
+        ImageResource resource = (ImageResource) _imageCache.get(key);
+        _sharedContext.count(resource != null ?
+                MetricsListener.COUNT_IMAGE_CACHE_HIT : MetricsListener.COUNT_IMAGE_CACHE_MISS, 1);
+        if (resource == null) {
+            byte[] data = getBinaryResource(uriStr);
+            if (data != null) {
+                try {
+                    Image image = loadDownsampledImage(data, maxWidth, maxHeight);
+                    resource = new ImageResource(uriStr, new ITextFSImage(image));
+                    _imageCache.put(key, resource);
+                } catch (Exception e) {
+                    XRLog.exception("Can't read image file; unexpected problem for URI '" + uriStr + "'", e);
                 }
-                resource = new ImageResource(resource.getImageUri(), image);
-            } else {
-                resource = new ImageResource(uriStr, null);
             }
         }
-        return resource;
+        return copyOf(resource, uriStr);
+    }
+
+    /**
+     * Decodes an image, reducing it toward the given size in pixels if it
+     * is larger, and sized to its full intrinsic size at the output
+     * resolution.
+     */
+    private Image loadDownsampledImage(byte[] data, int maxWidth, int maxHeight) throws Exception {
+        Dimension size = new Dimension();
+        BufferedImage bitmap = ImageUtil.readImage(
+                new ByteArrayInputStream(data), maxWidth, maxHeight, size);
+        if (bitmap == null ||
+                (bitmap.getWidth() == size.width && bitmap.getHeight() == size.height)) {
+            Image image = Image.getInstance(data);
+            scaleToOutputResolution(image);
+            return image;
+        }
+
+        Image image;
+        boolean jpeg = data.length > 1 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8;
+        if (jpeg && ! bitmap.getColorModel().hasAlpha()) {
+            // Keep photographs JPEG compressed
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(bitmap, "jpeg", out);
+            image = Image.getInstance(out.toByteArray());
+        } else {
+            image = Image.getInstance(bitmap, null);
+        }
+        float factor = _sharedContext.getDotsPerPixel();
+        image.scaleAbsolute(size.width * factor, size.height * factor);
+        return image;
+    }
+
+    private ImageResource copyOf(ImageResource resource, String uriStr) {
+        if (resource != null) {
+            FSImage image=resource.getImage();
+            if (image instanceof ITextFSImage) {
+                image=(FSImage) ((ITextFSImage) resource.getImage()).clone();
+            }
+            return new ImageResource(resource.getImageUri(), image);
+        } else {
+            return new ImageResource(uriStr, null);
+        }
+    }
+
+    /**
+     * Sets the highest resolution, in dots per inch at the size they are
+     * drawn, at which images sized by their box are embedded; images with
+     * more detail are downsampled first. 0, the default unless configured
+     * with <code>xr.pdf.image.max-dpi</code>, embeds every image as it is.
+     */
+    public void setImageMaxDPI(int dpi) {
+        _imageMaxDPI = dpi;
+    }
+
+    public int getImageMaxDPI() {
+        return _imageMaxDPI;
     }
     
     private ImageResource loadEmbeddedBase64ImageResource(final String uri) {
-        try {
-            byte[] buffer = ImageUtil.getEmbeddedBase64Image(uri);
-            Image image = Image.getInstance(buffer);
-            scaleToOutputResolution(image);
-            return new ImageResource(null, new ITextFSImage(image));
-        } catch (Exception e) {
-            XRLog.exception("Can't read XHTML embedded image.", e);
+        // Cached by content, so the same image embedded again is decoded once
+        String key = "data:sha1," + ImageUtil.getEmbeddedImageKey(uri);
+        ImageResource resource = (ImageResource) _imageCache.get(key);
+        _sharedContext.count(resource != null ?
+                MetricsListener.COUNT_IMAGE_CACHE_HIT : MetricsListener.COUNT_IMAGE_CACHE_MISS, 1);
+        if (resource == null) {
+            try {
+                byte[] buffer = ImageUtil.getEmbeddedBase64Image(uri);
+                Image image = Image.getInstance(buffer);
+                scaleToOutputResolution(image);
+                resource = new ImageResource(null, new ITextFSImage(image));
+                _imageCache.put(key, resource);
+            } catch (Exception e) {
+                XRLog.exception("Can't read XHTML embedded image.", e);
+                return new ImageResource(null, null);
+            }
         }
-        return new ImageResource(null, null);
+        return copyOf(resource, null);
     }
 
     private void scaleToOutputResolution(Image image) {
@@ -0,0 +1,125 @@
+package org.xhtmlrenderer.pdf;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.event.MetricsCollector;
+import org.xhtmlrenderer.event.MetricsListener;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.InlineText;
+import org.xhtmlrenderer.render.PageBox;
+
+/**
+ * Checks shortcuts taken by paged layout against layouts which don't take
+ * them.
+ */
+public class TestPagedLayout extends TestCase
+{
+    private static final String STYLE =
+        "@page { size: 400px 300px; margin: 0; } body { margin: 0; font-size: 12px; }" +
+        " p { margin: 0 0 4px 0; } .avoid { page-break-after: avoid; }" +
+        " .break { page-break-before: always; }";
+
+    private static String document(String body)
+    {
+        return "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style>" + STYLE +
+            "</style></head><body>" + body + "</body></html>";
+    }
+
+    private static String paragraphs(int count, String firstClass, String otherClass)
+    {
+        StringBuffer result = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            String cls = i == 0 ? firstClass : otherClass;
+            result.append("<p class=\"" + cls + "\">Paragraph " + i +
+                    " with text long enough to wrap onto a second line of the page.</p>");
+        }
+        return result.toString();
+    }
+
+    private static ITextRenderer layout(String xhtml, MetricsListener listener)
+    {
+        ITextRenderer renderer = new ITextRenderer();
+        renderer.getSharedContext().setMetricsListener(listener);
+        renderer.setDocumentFromString(xhtml);
+        renderer.layout();
+        return renderer;
+    }
+
+    public void testMovedBoxesMatchFreshLayout()
+    {
+        // A run kept together by page-break-after: avoid straddles the first
+        // page break, so it is moved to the second page as a whole
+        String filler = "<div style=\"height: 280px\"></div>";
+        String end = paragraphs(2, "", "") + "<div style=\"height: 10px\"></div>";
+        MetricsCollector metrics = new MetricsCollector();
+        ITextRenderer moved = layout(document(filler + paragraphs(2, "avoid", "avoid") + end), metrics);
+        assertTrue(metrics.getCount(MetricsListener.COUNT_RELAYOUT_AVOIDED) > 0);
+
+        // The same run laid out on the second page in the first place
+        ITextRenderer fresh = layout(document(filler + paragraphs(2, "break", "") + end), null);
+
+        assertEquals(2, moved.getPageCount());
+        assertEquals(geometry(fresh.getRootBox(), Integer.MAX_VALUE),
+                geometry(moved.getRootBox(), Integer.MAX_VALUE));
+    }
+
+    public void testLayoutStopsAfterPages()
+    {
+        String xhtml = document(paragraphs(60, "", ""));
+        ITextRenderer full = layout(xhtml, null);
+        assertTrue(full.getPageCount() > 3);
+        assertFalse(full.getRootBox().getLayer().isIncomplete());
+
+        ITextRenderer preview = new ITextRenderer();
+        preview.setDocumentFromString(xhtml);
+        preview.layout(2);
+        assertEquals(2, preview.getPageCount());
+        assertTrue(preview.getRootBox().getLayer().isIncomplete());
+
+        // The boxes on those pages are where a full layout puts them
+        int bottom = ((PageBox) full.getRootBox().getLayer().getPages().get(1)).getBottom();
+        assertEquals(geometry(full.getRootBox(), bottom), geometry(preview.getRootBox(), bottom));
+    }
+
+    /**
+     * Returns the position and size of the boxes starting above
+     * <code>limit</code>, and the height of those that also end above it.
+     */
+    private static String geometry(Box box, int limit)
+    {
+        StringBuffer result = new StringBuffer();
+        geometry(box, limit, result);
+        return result.toString();
+    }
+
+    private static void geometry(Box box, int limit, StringBuffer result)
+    {
+        if (box.getAbsY() < limit) {
+            result.append(box.getClass().getName()).append(' ')
+                .append(box.getAbsX()).append(',').append(box.getAbsY()).append(' ')
+                .append(box.getWidth());
+            if (box.getAbsY() + box.getHeight() <= limit) {
+                result.append('x').append(box.getHeight());
+            }
+            result.append('\n');
+        }
+        for (Iterator i = box.getChildren().iterator(); i.hasNext(); ) {
+            geometry((Box) i.next(), limit, result);
+        }
+        if (box instanceof InlineLayoutBox && box.getAbsY() < limit) {
+            InlineLayoutBox inline = (InlineLayoutBox) box;
+            for (int i = 0; i < inline.getInlineChildCount(); i++) {
+                Object child = inline.getInlineChild(i);
+                if (child instanceof Box) {
+                    geometry((Box) child, limit, result);
+                } else if (child instanceof InlineText) {
+                    result.append(((InlineText) child).getX()).append(' ')
+                        .append(((InlineText) child).getSubstring()).append('\n');
+                }
+            }
+        }
+    }
+}